@@ -0,0 +1,104 @@
+package com.hc.wx.mp.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hc.wx.mp.config.ApiConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 空结果缓存
+ * <p>
+ * 乱码、错别字之类搜不到东西的关键词会被用户反复发送，每次都打满所有上游。这里分两层记住它们：
+ * <ul>
+ *     <li>短期精确缓存：TTL很短（默认60秒），命中时直接返回上次的"未找到"回复，不再请求上游</li>
+ *     <li>{@link RecentKeywordFilter}：只存位图的布隆过滤器，记住更长时间内（默认30分钟）搜不到的关键词，
+ *     命中时调用方降级为少量数据源、较短预算的搜索；由于可能误判，不直接跳过</li>
+ * </ul>
+ * 同一关键词之后搜到了结果会从精确缓存中移除，布隆过滤器则等待轮换自然遗忘。
+ */
+@Slf4j
+@Component
+public class NegativeResultCache {
+
+    private final Cache<String, String> recent;
+    private final RecentKeywordFilter filter;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder downgraded = new LongAdder();
+
+    public NegativeResultCache(ApiConfig apiConfig) {
+        ApiConfig.CacheConfig config = apiConfig.getCache();
+        this.recent = Caffeine.newBuilder()
+                .maximumSize(config.getNegativeMaxEntries())
+                .expireAfterWrite(config.getNegativeTtlSeconds(), TimeUnit.SECONDS)
+                .build();
+        this.filter = new RecentKeywordFilter(config.getEmptyFilterExpectedKeywords(),
+                config.getEmptyFilterFalsePositiveRate(), TimeUnit.MINUTES.toMillis(config.getEmptyFilterWindowMinutes()));
+        log.info("空结果缓存初始化完成 - 精确缓存有效期: {} 秒, 过滤器窗口: {} 分钟, 过滤器占用: {} 字节",
+                config.getNegativeTtlSeconds(), config.getEmptyFilterWindowMinutes(), filter.sizeInBytes());
+    }
+
+    /**
+     * 最近确认为空的回复，没有返回 null
+     */
+    public String get(String namespace, String keyword) {
+        String value = recent.getIfPresent(key(namespace, keyword));
+        if (value != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return value;
+    }
+
+    /**
+     * 关键词最近是否搜不到结果（可能误判），为 true 时应降级搜索
+     */
+    public boolean isRecentlyEmpty(String namespace, String keyword) {
+        boolean recentlyEmpty = filter.mightContain(key(namespace, keyword));
+        if (recentlyEmpty) {
+            downgraded.increment();
+        }
+        return recentlyEmpty;
+    }
+
+    /**
+     * 记录一次空结果
+     *
+     * @param reply 返回给用户的回复（如"未找到相关资源"），可以为空字符串
+     */
+    public void put(String namespace, String keyword, String reply) {
+        String key = key(namespace, keyword);
+        recent.put(key, reply);
+        filter.add(key);
+    }
+
+    /**
+     * 搜到了结果，移除精确缓存中的空结果记录
+     */
+    public void invalidate(String namespace, String keyword) {
+        recent.invalidate(key(namespace, keyword));
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("entries", recent.estimatedSize());
+        map.put("hits", hits.sum());
+        map.put("misses", misses.sum());
+        map.put("downgraded", downgraded.sum());
+        map.put("filterBytes", filter.sizeInBytes());
+        map.put("filterHashCount", filter.getHashCount());
+        return map;
+    }
+
+    private static String key(String namespace, String keyword) {
+        return namespace + ":" + keyword;
+    }
+}
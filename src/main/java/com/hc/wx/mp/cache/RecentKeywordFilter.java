@@ -0,0 +1,146 @@
+package com.hc.wx.mp.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * 最近出现过的关键词过滤器（布隆过滤器）
+ * <p>
+ * 只记录位图、不保存关键词本身，5万个关键词、1%误判率约占 60KB。
+ * 维护新旧两代位图，每个时间窗口轮换一次：查询同时看两代，写入只写新一代，
+ * 因此一个关键词会被记住一到两个窗口，之后自然遗忘。
+ * 只会误判"出现过"，不会漏判；调用方应据此降级处理，而不是直接拒绝。
+ */
+public final class RecentKeywordFilter {
+
+    private final int bitCount;
+    private final int hashCount;
+    private final long windowMillis;
+    private final LongSupplier clock;
+
+    private volatile Generation current;
+    private volatile Generation previous;
+
+    /**
+     * @param expectedKeywords 一个窗口内预计写入的关键词数
+     * @param falsePositiveRate 期望误判率
+     * @param windowMillis 轮换周期(毫秒)
+     */
+    public RecentKeywordFilter(int expectedKeywords, double falsePositiveRate, long windowMillis) {
+        this(expectedKeywords, falsePositiveRate, windowMillis, System::currentTimeMillis);
+    }
+
+    RecentKeywordFilter(int expectedKeywords, double falsePositiveRate, long windowMillis, LongSupplier clock) {
+        int n = Math.max(1, expectedKeywords);
+        double ln2 = Math.log(2);
+        long bits = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (ln2 * ln2));
+        this.bitCount = (int) Math.max(64, Math.min(Integer.MAX_VALUE - 63, bits));
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / n * ln2));
+        this.windowMillis = windowMillis;
+        this.clock = clock;
+        this.current = new Generation(bitCount, clock.getAsLong());
+        this.previous = new Generation(bitCount, clock.getAsLong());
+    }
+
+    public void add(String keyword) {
+        rotateIfNeeded();
+        long hash = hash(keyword);
+        Generation generation = current;
+        for (int i = 0; i < hashCount; i++) {
+            generation.set(index(hash, i));
+        }
+    }
+
+    public boolean mightContain(String keyword) {
+        rotateIfNeeded();
+        long hash = hash(keyword);
+        return contains(current, hash) || contains(previous, hash);
+    }
+
+    /**
+     * 位图总字节数（两代）
+     */
+    public long sizeInBytes() {
+        return 2L * current.words.length() * Long.BYTES;
+    }
+
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    private boolean contains(Generation generation, long hash) {
+        for (int i = 0; i < hashCount; i++) {
+            if (!generation.get(index(hash, i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rotateIfNeeded() {
+        long now = clock.getAsLong();
+        if (now - current.createdAtMillis < windowMillis) {
+            return;
+        }
+        synchronized (this) {
+            if (now - current.createdAtMillis >= windowMillis) {
+                // 停用超过两个窗口时旧一代也已过期，直接清空
+                previous = now - current.createdAtMillis >= 2 * windowMillis ? new Generation(bitCount, now) : current;
+                current = new Generation(bitCount, now);
+            }
+        }
+    }
+
+    /**
+     * 双重哈希：第 i 个位置取 h1 + i * h2
+     */
+    private int index(long hash, int i) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        return Math.floorMod(h1 + i * h2, bitCount);
+    }
+
+    /**
+     * UTF-8 字节上的 FNV-1a 64位哈希，再做一次混淆让高低位分布均匀
+     */
+    private static long hash(String keyword) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : keyword.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static final class Generation {
+        private final AtomicLongArray words;
+        private final long createdAtMillis;
+
+        Generation(int bitCount, long createdAtMillis) {
+            this.words = new AtomicLongArray((bitCount + 63) / 64);
+            this.createdAtMillis = createdAtMillis;
+        }
+
+        void set(int bit) {
+            int word = bit >>> 6;
+            long mask = 1L << bit;
+            long old;
+            do {
+                old = words.get(word);
+                if ((old & mask) != 0) {
+                    return;
+                }
+            } while (!words.compareAndSet(word, old, old | mask));
+        }
+
+        boolean get(int bit) {
+            return (words.get(bit >>> 6) & (1L << bit)) != 0;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.hc.wx.mp.cache;
+
+import com.hc.wx.mp.concurrent.BoundedExecutor;
+import com.hc.wx.mp.config.ApiConfig;
+import com.hc.wx.mp.http.CircuitBreaker;
+import com.hc.wx.mp.http.CircuitBreakerRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 搜索结果缓存的 Redis 共享层（L2）
+ * <p>
+ * 多个节点共用同一份搜索结果，避免每个节点各自请求上游。
+ * 较大的结果先 gzip 再 Base64 存储；读操作有超时限制，并受熔断器保护，
+ * Redis 变慢或不可用时按未命中处理，耗时不会超过一次缓存未命中；写操作和失效通知均异步执行。
+ */
+@Slf4j
+@Component
+public class RedisCacheTier {
+
+    private final StringRedisTemplate redisTemplate;
+    private final ApiConfig.CacheConfig config;
+    private final CircuitBreaker breaker;
+    private final BoundedExecutor executor;
+    private final RedisValueCodec codec = new RedisValueCodec();
+    /** 本节点标识，用于忽略自己发出的失效通知 */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+
+    public RedisCacheTier(StringRedisTemplate redisTemplate, ApiConfig apiConfig, CircuitBreakerRegistry circuitBreakers) {
+        this.redisTemplate = redisTemplate;
+        this.config = apiConfig.getCache();
+        this.breaker = circuitBreakers.get("redis-l2");
+        this.executor = new BoundedExecutor("search-cache-l2", 4, 200, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public boolean isEnabled() {
+        return config.isL2Enabled();
+    }
+
+    /**
+     * 在超时时间内读取，超时、出错或熔断时返回 null
+     */
+    public String get(String key) {
+        if (!isEnabled() || !breaker.tryAcquire()) {
+            skipped.increment();
+            return null;
+        }
+        long startTime = System.currentTimeMillis();
+        CompletableFuture<String> future;
+        try {
+            future = CompletableFuture.supplyAsync(() -> redisTemplate.opsForValue().get(redisKey(key)), executor);
+        } catch (RejectedExecutionException e) {
+            breaker.onIgnored();
+            skipped.increment();
+            return null;
+        }
+        try {
+            String stored = future.get(config.getL2LookupTimeoutMillis(), TimeUnit.MILLISECONDS);
+            breaker.onSuccess(System.currentTimeMillis() - startTime);
+            if (stored == null) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return decode(stored);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            timeouts.increment();
+            breaker.onFailure(System.currentTimeMillis() - startTime);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            breaker.onIgnored();
+        } catch (Exception e) {
+            errors.increment();
+            breaker.onFailure(System.currentTimeMillis() - startTime);
+            log.warn("读取 Redis 搜索缓存失败: {}", e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * 异步写入并通知其他节点淘汰本地副本
+     */
+    public void putAsync(String key, String value) {
+        if (!isEnabled() || breaker.getState() == CircuitBreaker.State.OPEN) {
+            return;
+        }
+        submit(() -> {
+            String encoded = encode(value);
+            redisTemplate.opsForValue().set(redisKey(key), encoded, config.getHardTtlMinutes(), TimeUnit.MINUTES);
+            redisTemplate.convertAndSend(config.getInvalidationChannel(), nodeId + "|" + key);
+        });
+    }
+
+    /**
+     * 解析失效通知，返回需要淘汰的 key；本节点自己发出的通知返回 null
+     */
+    public String parseInvalidation(String message) {
+        int separator = message.indexOf('|');
+        if (separator < 0 || message.substring(0, separator).equals(nodeId)) {
+            return null;
+        }
+        return message.substring(separator + 1);
+    }
+
+    private void submit(Runnable task) {
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    errors.increment();
+                    log.warn("写入 Redis 搜索缓存失败: {}", e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            skipped.increment();
+        }
+    }
+
+    private String redisKey(String key) {
+        return config.getL2KeyPrefix() + key;
+    }
+
+    String encode(String value) {
+        return codec.encode(value);
+    }
+
+    String decode(String stored) throws IOException {
+        return codec.decode(stored);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("breakerState", breaker.getState().name());
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("timeouts", timeouts.sum());
+        stats.put("errors", errors.sum());
+        stats.put("skipped", skipped.sum());
+        stats.put("compressionRatio", codec.compressionRatio());
+        return stats;
+    }
+
+    /**
+     * 读写 Redis 使用的线程池统计
+     */
+    public Map<String, Object> getExecutorStats() {
+        return executor.getStats();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,245 @@
+package com.hc.wx.mp.cache;
+
+import com.hc.wx.mp.concurrent.BoundedExecutor;
+import com.hc.wx.mp.config.ApiConfig;
+import com.hc.wx.mp.http.CircuitBreaker;
+import com.hc.wx.mp.http.CircuitBreakerRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 短链接结果的 Redis 共享存储
+ * <p>
+ * 处理微信消息的节点把结果写到这里，用户点开链接时无论请求落到哪个节点都能读到。
+ * 读写的都是 gzip 后的字节，与本地存储的格式一致，不做解压和重复压缩。
+ * 可追加的结果在值前面带一个头部 {@code a:<摘要>:<版本号>[+]:}，记录最初内容的摘要、当前版本号
+ * 以及是否还有数据源未完成（+），其他节点读取时据此回填本地并判断是否需要继续读取新版本。
+ * 写入异步执行，不占用微信回复的时间；读取有超时限制并受熔断器保护，Redis 不可用时按不存在处理。
+ */
+@Slf4j
+@Component
+public class RedisResultStore {
+
+    private final StringRedisTemplate redisTemplate;
+    private final ApiConfig.StorageConfig config;
+    private final CircuitBreaker breaker;
+    private final BoundedExecutor executor;
+    /** 可追加结果的头部前缀 */
+    private static final String APPENDABLE_PREFIX = "a:";
+    private static final char PENDING_MARK = '+';
+
+    private final RedisValueCodec codec = new RedisValueCodec();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+
+    public RedisResultStore(StringRedisTemplate redisTemplate, ApiConfig apiConfig, CircuitBreakerRegistry circuitBreakers) {
+        this.redisTemplate = redisTemplate;
+        this.config = apiConfig.getStorage();
+        this.breaker = circuitBreakers.get("redis-result-store");
+        this.executor = new BoundedExecutor("result-store-redis", 1, 500, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public boolean isEnabled() {
+        return config.isSharedEnabled();
+    }
+
+    /**
+     * 在超时时间内读取 gzip 后的结果，超时、出错或熔断时返回 null
+     */
+    public Entry get(String key) {
+        if (!isEnabled() || !breaker.tryAcquire()) {
+            skipped.increment();
+            return null;
+        }
+        long startTime = System.currentTimeMillis();
+        CompletableFuture<String> future;
+        try {
+            future = CompletableFuture.supplyAsync(() -> redisTemplate.opsForValue().get(redisKey(key)), executor);
+        } catch (RejectedExecutionException e) {
+            breaker.onIgnored();
+            skipped.increment();
+            return null;
+        }
+        try {
+            String stored = future.get(config.getSharedLookupTimeoutMillis(), TimeUnit.MILLISECONDS);
+            breaker.onSuccess(System.currentTimeMillis() - startTime);
+            if (stored == null) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return decode(stored);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            timeouts.increment();
+            breaker.onFailure(System.currentTimeMillis() - startTime);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            breaker.onIgnored();
+        } catch (Exception e) {
+            errors.increment();
+            breaker.onFailure(System.currentTimeMillis() - startTime);
+            log.warn("读取 Redis 结果存储失败，key: {}, 错误: {}", key, e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * 异步写入已压缩的结果，有效期与本地存储一致；读写共用一个单线程的线程池，按提交顺序执行，
+     * 同一 key 先后写入的版本不会互相覆盖
+     *
+     * @param rawBytes 压缩前的字节数，仅用于统计压缩率
+     */
+    public void putAsync(String key, Entry entry, int rawBytes) {
+        if (!isEnabled() || breaker.getState() == CircuitBreaker.State.OPEN) {
+            skipped.increment();
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    redisTemplate.opsForValue().set(redisKey(key), encode(entry, rawBytes),
+                            config.getTtlMinutes(), TimeUnit.MINUTES);
+                    writes.increment();
+                } catch (Exception e) {
+                    errors.increment();
+                    log.warn("写入 Redis 结果存储失败，key: {}, 错误: {}", key, e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            skipped.increment();
+            log.warn("Redis 结果存储写入队列已满，key: {} 仅保存在本节点", key);
+        }
+    }
+
+    /**
+     * 异步延长已存在结果的过期时间（重复存储相同内容时使用，不再重写整个值）
+     */
+    public void touchAsync(String key) {
+        if (!isEnabled() || breaker.getState() == CircuitBreaker.State.OPEN) {
+            skipped.increment();
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    redisTemplate.expire(redisKey(key), config.getTtlMinutes(), TimeUnit.MINUTES);
+                } catch (Exception e) {
+                    errors.increment();
+                    log.warn("延长 Redis 结果有效期失败，key: {}, 错误: {}", key, e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            skipped.increment();
+        }
+    }
+
+    private String redisKey(String key) {
+        return config.getRedisKeyPrefix() + key;
+    }
+
+    private String encode(Entry entry, int rawBytes) {
+        String value = codec.encodeGzipped(entry.gzipped, rawBytes);
+        if (entry.version == null) {
+            return value;
+        }
+        return APPENDABLE_PREFIX + entry.digest + ':' + entry.version + (entry.pending ? String.valueOf(PENDING_MARK) : "")
+                + ':' + value;
+    }
+
+    private Entry decode(String stored) {
+        if (!stored.startsWith(APPENDABLE_PREFIX)) {
+            return new Entry(codec.decodeGzipped(stored), null, null, false);
+        }
+        int digestEnd = stored.indexOf(':', APPENDABLE_PREFIX.length());
+        int versionEnd = stored.indexOf(':', digestEnd + 1);
+        String digest = stored.substring(APPENDABLE_PREFIX.length(), digestEnd);
+        String version = stored.substring(digestEnd + 1, versionEnd);
+        boolean pending = version.charAt(version.length() - 1) == PENDING_MARK;
+        if (pending) {
+            version = version.substring(0, version.length() - 1);
+        }
+        return new Entry(codec.decodeGzipped(stored.substring(versionEnd + 1)), digest, Integer.valueOf(version), pending);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("breakerState", breaker.getState().name());
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("writes", writes.sum());
+        stats.put("timeouts", timeouts.sum());
+        stats.put("errors", errors.sum());
+        stats.put("skipped", skipped.sum());
+        stats.put("compressionRatio", codec.compressionRatio());
+        return stats;
+    }
+
+    /**
+     * 读写 Redis 使用的线程池统计
+     */
+    public Map<String, Object> getExecutorStats() {
+        return executor.getStats();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    // ================================ 内部类 ================================
+
+    /**
+     * 共享存储中的一条结果：gzip 后的内容，可追加的结果还带有最初内容的摘要、版本号和是否仍有数据源未完成
+     */
+    public static final class Entry {
+        private final byte[] gzipped;
+        private final String digest;
+        private final Integer version;
+        private final boolean pending;
+
+        /**
+         * @param digest  最初内容的摘要，不可追加的结果传 null（读取时由内容算出）
+         * @param version 可追加结果的版本号，不可追加的结果传 null
+         */
+        public Entry(byte[] gzipped, String digest, Integer version, boolean pending) {
+            this.gzipped = gzipped;
+            this.digest = digest;
+            this.version = version;
+            this.pending = pending;
+        }
+
+        public byte[] getGzipped() {
+            return gzipped;
+        }
+
+        public String getDigest() {
+            return digest;
+        }
+
+        public Integer getVersion() {
+            return version;
+        }
+
+        public boolean isPending() {
+            return pending;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.hc.wx.mp.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 写入 Redis 的字符串编码
+ * <p>
+ * 较短的值加 "r:" 前缀原样存储；较长的值 gzip 后 Base64 编码，加 "z:" 前缀。
+ * 调用方已经压缩好的内容（如短链接结果）直接 Base64 后加 "z:" 前缀，不再重复压缩。
+ * 同时统计压缩前后的字节数。
+ */
+final class RedisValueCodec {
+
+    /** 超过该长度的值才压缩 */
+    private static final int COMPRESS_THRESHOLD_CHARS = 512;
+    private static final String RAW_PREFIX = "r:";
+    private static final String GZIP_PREFIX = "z:";
+
+    private final LongAdder bytesStored = new LongAdder();
+    private final LongAdder bytesBeforeCompression = new LongAdder();
+
+    String encode(String value) {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        bytesBeforeCompression.add(utf8.length);
+        if (value.length() < COMPRESS_THRESHOLD_CHARS) {
+            bytesStored.add(utf8.length + RAW_PREFIX.length());
+            return RAW_PREFIX + value;
+        }
+        String encoded = GZIP_PREFIX + Base64.getEncoder().encodeToString(gzip(utf8));
+        bytesStored.add(encoded.length());
+        return encoded;
+    }
+
+    String decode(String stored) throws IOException {
+        if (stored.startsWith(GZIP_PREFIX)) {
+            byte[] compressed = Base64.getDecoder().decode(stored.substring(GZIP_PREFIX.length()));
+            try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+                return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        }
+        return stored.startsWith(RAW_PREFIX) ? stored.substring(RAW_PREFIX.length()) : stored;
+    }
+
+    /**
+     * 编码已经 gzip 过的内容
+     *
+     * @param rawBytes 压缩前的字节数，仅用于统计
+     */
+    String encodeGzipped(byte[] gzipped, int rawBytes) {
+        bytesBeforeCompression.add(rawBytes);
+        String encoded = GZIP_PREFIX + Base64.getEncoder().encodeToString(gzipped);
+        bytesStored.add(encoded.length());
+        return encoded;
+    }
+
+    /**
+     * 解码为 gzip 字节，原样存储的短值在这里压缩
+     */
+    byte[] decodeGzipped(String stored) {
+        if (stored.startsWith(GZIP_PREFIX)) {
+            return Base64.getDecoder().decode(stored.substring(GZIP_PREFIX.length()));
+        }
+        String raw = stored.startsWith(RAW_PREFIX) ? stored.substring(RAW_PREFIX.length()) : stored;
+        return gzip(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 实际存储字节数 / 压缩前字节数
+     */
+    double compressionRatio() {
+        long before = bytesBeforeCompression.sum();
+        return before == 0 ? 0.0 : (double) bytesStored.sum() / before;
+    }
+
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 16);
+        try (OutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        } catch (IOException e) {
+            throw new IllegalStateException("压缩缓存内容失败", e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,308 @@
+package com.hc.wx.mp.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.hc.wx.mp.config.ApiConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 搜索结果缓存
+ * <p>
+ * 基于 Caffeine（W-TinyLFU 准入策略）：按结果占用的字节数限制总大小，
+ * 低频关键词不会把热门关键词挤出去；过期清理摊销在日常读写中完成，不做全表扫描。
+ * key 由命名空间和完整关键词组成，不再使用 hashCode，不同关键词不会互相串结果。
+ * <p>
+ * 本地缓存（L1）之后是 Redis 共享层（L2，见 {@link RedisCacheTier}）：L1 未命中时查 L2 并回填，
+ * 写入时同时写两层，并通过 Redis 发布/订阅通知其他节点淘汰各自的 L1 副本。
+ * <p>
+ * 过期分两级：超过新鲜期（ttl）的条目仍然立即返回，只标记为陈旧，由调用方在后台刷新
+ * （同一个 key 同时只允许一个刷新，见 {@link #beginRefresh}）；超过最长保留时间（hard-ttl）才真正删除，
+ * 此时调用方才需要同步等待重新搜索。两个期限都从条目最初的写入时间算起，从 L2 回填到 L1 不会重新计时。
+ */
+@Slf4j
+@Component
+public class SearchResultCache {
+
+    /** 多源合并后的搜索结果（结果项列表的 JSON）；命名空间与纯文本格式时不同，L2 中的旧条目不会被误读 */
+    public static final String MERGED = "search-items";
+    /** Makifx 搜索结果（结果项列表的 JSON） */
+    public static final String MAKIFX = "makifx-items";
+
+    /** 每个条目除字符串外的估算开销（字节） */
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+
+    private final Cache<Key, Entry> cache;
+    /** 共享缓存层，为 null 时只使用本地缓存 */
+    private final RedisCacheTier l2;
+    /** 当前时间(毫秒)，写入时间跨节点共享，因此使用墙上时钟 */
+    private final LongSupplier clock;
+    private final long softTtlMillis;
+    private final long hardTtlMillis;
+
+    /** 正在后台刷新的 key */
+    private final Set<Key> refreshing = ConcurrentHashMap.newKeySet();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder refreshesStarted = new LongAdder();
+    private final LongAdder refreshesCoalesced = new LongAdder();
+
+    public SearchResultCache(ApiConfig apiConfig) {
+        this(apiConfig, null);
+    }
+
+    @Autowired
+    public SearchResultCache(ApiConfig apiConfig, RedisCacheTier l2) {
+        this(apiConfig, l2, System::currentTimeMillis);
+    }
+
+    SearchResultCache(ApiConfig apiConfig, RedisCacheTier l2, LongSupplier clock) {
+        this.l2 = l2;
+        this.clock = clock;
+        ApiConfig.CacheConfig config = apiConfig.getCache();
+        this.softTtlMillis = TimeUnit.MINUTES.toMillis(config.getTtlMinutes());
+        this.hardTtlMillis = TimeUnit.MINUTES.toMillis(Math.max(config.getTtlMinutes(), config.getHardTtlMinutes()));
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(config.getMaxBytes())
+                .weigher((Key key, Entry entry) -> weigh(key, entry.value))
+                .expireAfter(new WrittenAtExpiry())
+                .ticker(() -> TimeUnit.MILLISECONDS.toNanos(clock.getAsLong()))
+                .recordStats()
+                .build();
+        log.info("搜索结果缓存初始化完成 - 最大容量: {} 字节, 新鲜期: {} 分钟, 最长保留: {} 分钟",
+                config.getMaxBytes(), config.getTtlMinutes(), config.getHardTtlMinutes());
+    }
+
+    /**
+     * 查询缓存，未命中返回 null；超过新鲜期但未超过最长保留时间的结果同样返回
+     */
+    public String get(String namespace, String keyword) {
+        Lookup lookup = lookup(namespace, keyword);
+        return lookup == null ? null : lookup.getValue();
+    }
+
+    /**
+     * 查询缓存并标明结果是否已超过新鲜期，未命中返回 null
+     */
+    public Lookup lookup(String namespace, String keyword) {
+        Key key = new Key(namespace, keyword);
+        Entry entry = cache.getIfPresent(key);
+        if (entry == null && l2 != null) {
+            entry = decodeShared(l2.get(key.toString()));
+            if (entry != null && remainingMillis(entry) <= 0) {
+                // L2 中已超过最长保留时间的条目（Redis 过期稍晚于本地判断）按未命中处理
+                entry = null;
+            }
+            if (entry != null) {
+                cache.put(key, entry);
+            }
+        }
+        if (entry == null) {
+            return null;
+        }
+        boolean stale = clock.getAsLong() - entry.writtenAtMillis >= softTtlMillis;
+        if (stale) {
+            staleHits.increment();
+        }
+        return new Lookup(entry.value, stale);
+    }
+
+    public void put(String namespace, String keyword, String value) {
+        Key key = new Key(namespace, keyword);
+        Entry entry = new Entry(value, clock.getAsLong());
+        cache.put(key, entry);
+        if (l2 != null) {
+            l2.putAsync(key.toString(), entry.writtenAtMillis + "|" + value);
+        }
+    }
+
+    /**
+     * 申请后台刷新：同一个 key 已经在刷新时返回 false，调用方直接返回旧结果即可
+     */
+    public boolean beginRefresh(String namespace, String keyword) {
+        if (refreshing.add(new Key(namespace, keyword))) {
+            refreshesStarted.increment();
+            return true;
+        }
+        refreshesCoalesced.increment();
+        return false;
+    }
+
+    /**
+     * 后台刷新结束（无论成功与否），必须与成功的 {@link #beginRefresh} 配对调用
+     */
+    public void endRefresh(String namespace, String keyword) {
+        refreshing.remove(new Key(namespace, keyword));
+    }
+
+    /**
+     * 条目距离最长保留时间还剩多久
+     */
+    private long remainingMillis(Entry entry) {
+        return hardTtlMillis - (clock.getAsLong() - entry.writtenAtMillis);
+    }
+
+    /**
+     * L2 中的值带有写入时间前缀；无法识别时按已陈旧处理，促使尽快刷新
+     */
+    private Entry decodeShared(String shared) {
+        if (shared == null) {
+            return null;
+        }
+        int separator = shared.indexOf('|');
+        if (separator > 0) {
+            try {
+                return new Entry(shared.substring(separator + 1), Long.parseLong(shared.substring(0, separator)));
+            } catch (NumberFormatException ignored) {
+                // 旧格式，落到下面按陈旧处理
+            }
+        }
+        return new Entry(shared, clock.getAsLong() - softTtlMillis);
+    }
+
+    /**
+     * 处理其他节点发来的失效通知：淘汰本地副本，下次读取时从 L2 拿到新值
+     */
+    public void onRemoteInvalidation(String message) {
+        String key = l2 == null ? null : l2.parseInvalidation(message);
+        int separator = key == null ? -1 : key.indexOf(':');
+        if (separator > 0) {
+            cache.invalidate(new Key(key.substring(0, separator), key.substring(separator + 1)));
+        }
+    }
+
+    public void invalidate(String namespace, String keyword) {
+        cache.invalidate(new Key(namespace, keyword));
+    }
+
+    /**
+     * 立即执行挂起的过期、淘汰等维护工作
+     */
+    void cleanUp() {
+        cache.cleanUp();
+    }
+
+    /**
+     * 命中率、淘汰次数以及当前占用的估算字节数
+     */
+    public Map<String, Object> getStats() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("entries", cache.estimatedSize());
+        map.put("weightedBytes", cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L));
+        map.put("maxBytes", cache.policy().eviction().map(eviction -> eviction.getMaximum()).orElse(0L));
+        map.put("hits", stats.hitCount());
+        map.put("misses", stats.missCount());
+        map.put("hitRate", stats.hitRate());
+        map.put("evictions", stats.evictionCount());
+        map.put("evictedBytes", stats.evictionWeight());
+        map.put("staleHits", staleHits.sum());
+        map.put("refreshesStarted", refreshesStarted.sum());
+        map.put("refreshesCoalesced", refreshesCoalesced.sum());
+        map.put("refreshing", refreshing.size());
+        if (l2 != null) {
+            map.put("l2", l2.getStats());
+        }
+        return map;
+    }
+
+    /**
+     * Java 字符串按每个字符2字节估算
+     */
+    private static int weigh(Key key, String value) {
+        long bytes = 2L * (key.namespace.length() + key.keyword.length() + value.length()) + ENTRY_OVERHEAD_BYTES;
+        return (int) Math.min(Integer.MAX_VALUE, bytes);
+    }
+
+    /**
+     * 缓存查询结果
+     */
+    public static final class Lookup {
+        private final String value;
+        private final boolean stale;
+
+        Lookup(String value, boolean stale) {
+            this.value = value;
+            this.stale = stale;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        /** 是否已超过新鲜期，需要在后台刷新 */
+        public boolean isStale() {
+            return stale;
+        }
+    }
+
+    /**
+     * 按条目最初的写入时间过期：回填和覆盖写入都以条目自带的写入时间计算剩余时间，读取不延长
+     */
+    private final class WrittenAtExpiry implements Expiry<Key, Entry> {
+        @Override
+        public long expireAfterCreate(Key key, Entry entry, long currentTime) {
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, remainingMillis(entry)));
+        }
+
+        @Override
+        public long expireAfterUpdate(Key key, Entry entry, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, entry, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(Key key, Entry entry, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    private static final class Entry {
+        private final String value;
+        private final long writtenAtMillis;
+
+        Entry(String value, long writtenAtMillis) {
+            this.value = value;
+            this.writtenAtMillis = writtenAtMillis;
+        }
+    }
+
+    private static final class Key {
+        private final String namespace;
+        private final String keyword;
+
+        Key(String namespace, String keyword) {
+            this.namespace = namespace;
+            this.keyword = keyword;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof Key)) return false;
+            Key that = (Key) obj;
+            return namespace.equals(that.namespace) && keyword.equals(that.keyword);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(namespace, keyword);
+        }
+
+        @Override
+        public String toString() {
+            return namespace + ":" + keyword;
+        }
+    }
+}
@@ -0,0 +1,437 @@
+package com.hc.wx.mp.cache;
+
+import com.hc.wx.mp.config.ApiConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 基于内存映射段文件的结果存储
+ * <p>
+ * 没有 Redis 的节点使用：结果按追加方式写入固定大小的段文件（segment-00000001.dat …），
+ * 段文件通过 {@link MappedByteBuffer} 读写，内容不占堆内存，堆上只保留 key → (段号, 偏移) 的索引。
+ * 段写满后新建下一个段；段内最后一次写入超过有效期，或总大小超过上限时，整段删除并清理其索引，不做逐条回收。
+ * <p>
+ * 启动时按段号顺序扫描已有段文件重建索引（同一个 key 以最后写入的为准），重启后原有的结果链接仍可打开。
+ * 每条记录带 CRC32，扫描遇到未写完或损坏的记录即停止，之后的空间继续用于追加。
+ */
+@Slf4j
+@Component
+public class SegmentFileResultStore {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+    private static final byte RECORD_MAGIC = (byte) 0xA7;
+    /** 内容摘要长度，key 是摘要的前缀 */
+    private static final int DIGEST_LENGTH = 12;
+    /** 记录头：魔数(1) + key长度(1) + 摘要(12) + 写入时间(8) + 内容长度(4) + CRC32(4) */
+    private static final int HEADER_BYTES = 1 + 1 + DIGEST_LENGTH + 8 + 4 + 4;
+    private static final long RECLAIM_INTERVAL_SECONDS = 60;
+
+    private final ApiConfig.StorageConfig config;
+    private final LongSupplier clock;
+    private final Path directory;
+    private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+    /** key -> 段号(高32位) | 段内偏移(低32位) */
+    private final Map<String, Long> index = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService reclaimer;
+    /** 当前追加的段，写入和整段删除都在 this 上同步 */
+    private Segment active;
+
+    private final LongAdder appends = new LongAdder();
+    private final LongAdder bytesAppended = new LongAdder();
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder segmentsReclaimed = new LongAdder();
+    private final LongAdder recoveredEntries = new LongAdder();
+
+    @Autowired
+    public SegmentFileResultStore(ApiConfig apiConfig) {
+        this(apiConfig.getStorage(), System::currentTimeMillis);
+    }
+
+    SegmentFileResultStore(ApiConfig.StorageConfig config, LongSupplier clock) {
+        this.config = config;
+        this.clock = clock;
+        this.directory = Paths.get(config.getDiskDirectory());
+        if (!config.isDiskEnabled()) {
+            this.reclaimer = null;
+            return;
+        }
+        recover();
+        this.reclaimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "result-segment-reclaimer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reclaimer.scheduleWithFixedDelay(this::reclaimExpired,
+                RECLAIM_INTERVAL_SECONDS, RECLAIM_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        log.info("磁盘结果存储初始化完成 - 目录: {}, 段大小: {} 字节, 总上限: {} 字节, 已恢复 {} 条结果",
+                directory.toAbsolutePath(), config.getSegmentBytes(), config.getDiskMaxBytes(), index.size());
+    }
+
+    public boolean isEnabled() {
+        return config.isDiskEnabled();
+    }
+
+    /**
+     * 读取结果，不存在或已过期时返回 null
+     */
+    public Record get(String key) {
+        Long location = index.get(key);
+        if (location == null) {
+            return null;
+        }
+        Segment segment = segments.get(segmentId(location));
+        if (segment == null) {
+            index.remove(key, location);
+            return null;
+        }
+        Record record = segment.read(offset(location));
+        if (isExpired(record.writtenAtMillis)) {
+            return null;
+        }
+        reads.increment();
+        return record;
+    }
+
+    /**
+     * 追加一条结果并更新索引
+     *
+     * @param digest 内容摘要，key 必须是它的前缀
+     * @return 是否写入成功；单条结果超过段大小时不写入
+     */
+    public synchronized boolean append(String key, String digest, byte[] gzipped) {
+        if (digest.length() != DIGEST_LENGTH || !digest.startsWith(key)) {
+            throw new IllegalArgumentException("key 必须是摘要的前缀: " + key + " / " + digest);
+        }
+        int size = HEADER_BYTES + gzipped.length;
+        if (size > config.getSegmentBytes()) {
+            log.warn("结果大小 {} 字节超过段大小，不写入磁盘，key: {}", size, key);
+            return false;
+        }
+        try {
+            if (active == null || active.remaining() < size) {
+                roll();
+            }
+        } catch (IOException e) {
+            log.error("新建结果段文件失败，目录: {}", directory.toAbsolutePath(), e);
+            return false;
+        }
+        long now = clock.getAsLong();
+        int offset = active.write(key.length(), digest, now, gzipped);
+        index.put(key, location(active.id, offset));
+        appends.increment();
+        bytesAppended.add(size);
+        enforceMaxBytes();
+        return true;
+    }
+
+    /**
+     * 延长结果有效期：记录不在当前段时复制一份追加到当前段，随当前段一起过期
+     */
+    public synchronized void touch(String key) {
+        Long location = index.get(key);
+        if (location == null || (active != null && segmentId(location) == active.id)) {
+            return;
+        }
+        Record record = get(key);
+        if (record != null) {
+            append(key, record.digest, record.gzipped);
+        }
+    }
+
+    /**
+     * 整段删除最后一次写入已超过有效期的段
+     */
+    synchronized void reclaimExpired() {
+        for (Segment segment : new ArrayList<>(segments.values())) {
+            if (segment.position > 0 && isExpired(segment.lastWriteMillis)) {
+                drop(segment, "已过期");
+            }
+        }
+    }
+
+    private boolean isExpired(long writtenAtMillis) {
+        return clock.getAsLong() - writtenAtMillis >= TimeUnit.MINUTES.toMillis(config.getTtlMinutes());
+    }
+
+    private void enforceMaxBytes() {
+        long total = totalBytes();
+        while (total > config.getDiskMaxBytes() && segments.size() > 1) {
+            Segment oldest = segments.firstEntry().getValue();
+            total -= oldest.capacity;
+            drop(oldest, "超过总大小上限");
+        }
+    }
+
+    private long totalBytes() {
+        return segments.values().stream().mapToLong(segment -> segment.capacity).sum();
+    }
+
+    private void roll() throws IOException {
+        Files.createDirectories(directory);
+        int id = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        Path file = directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        active = Segment.open(id, file, config.getSegmentBytes(), true);
+        segments.put(id, active);
+        log.info("新建结果段文件: {}", file);
+    }
+
+    private void drop(Segment segment, String reason) {
+        segments.remove(segment.id);
+        index.values().removeIf(location -> segmentId(location) == segment.id);
+        if (segment == active) {
+            active = null;
+        }
+        segment.close();
+        try {
+            Files.deleteIfExists(segment.file);
+        } catch (IOException e) {
+            log.warn("删除结果段文件失败: {}, 错误: {}", segment.file, e.getMessage());
+        }
+        segmentsReclaimed.increment();
+        log.info("删除结果段文件({}): {}", reason, segment.file);
+    }
+
+    /**
+     * 按段号顺序扫描已有段文件，重建索引；最后一个段作为当前段继续追加
+     */
+    private void recover() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> stream = Files.list(directory)) {
+            stream.filter(path -> parseSegmentId(path) > 0).forEach(files::add);
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取结果段目录失败: " + directory.toAbsolutePath(), e);
+        }
+        files.sort((a, b) -> Integer.compare(parseSegmentId(a), parseSegmentId(b)));
+        for (Path file : files) {
+            try {
+                Segment segment = Segment.open(parseSegmentId(file), file, (int) Files.size(file), false);
+                segments.put(segment.id, segment);
+                recoverSegment(segment);
+                active = segment;
+            } catch (IOException e) {
+                log.warn("打开结果段文件失败，跳过: {}, 错误: {}", file, e.getMessage());
+            }
+        }
+        reclaimExpired();
+    }
+
+    private void recoverSegment(Segment segment) {
+        int offset = 0;
+        while (true) {
+            Record record = segment.readValidated(offset);
+            if (record == null) {
+                break;
+            }
+            if (!isExpired(record.writtenAtMillis)) {
+                index.put(record.digest.substring(0, record.keyLength), location(segment.id, offset));
+                recoveredEntries.increment();
+            }
+            segment.lastWriteMillis = Math.max(segment.lastWriteMillis, record.writtenAtMillis);
+            offset += HEADER_BYTES + record.gzipped.length;
+        }
+        segment.position = offset;
+    }
+
+    private static int parseSegmentId(Path path) {
+        String name = path.getFileName().toString();
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static long location(int segmentId, int offset) {
+        return ((long) segmentId << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private static int segmentId(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int offset(long location) {
+        return (int) location;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("directory", directory.toAbsolutePath().toString());
+        stats.put("segments", segments.size());
+        stats.put("diskBytes", totalBytes());
+        stats.put("maxDiskBytes", config.getDiskMaxBytes());
+        stats.put("indexEntries", index.size());
+        stats.put("appends", appends.sum());
+        stats.put("bytesAppended", bytesAppended.sum());
+        stats.put("reads", reads.sum());
+        stats.put("segmentsReclaimed", segmentsReclaimed.sum());
+        stats.put("recoveredEntries", recoveredEntries.sum());
+        return stats;
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (reclaimer != null) {
+            reclaimer.shutdown();
+        }
+        segments.values().forEach(Segment::close);
+    }
+
+    // ================================ 内部类 ================================
+
+    /**
+     * 一条结果记录
+     */
+    public static final class Record {
+        private final int keyLength;
+        private final String digest;
+        private final long writtenAtMillis;
+        private final byte[] gzipped;
+
+        Record(int keyLength, String digest, long writtenAtMillis, byte[] gzipped) {
+            this.keyLength = keyLength;
+            this.digest = digest;
+            this.writtenAtMillis = writtenAtMillis;
+            this.gzipped = gzipped;
+        }
+
+        public String getDigest() {
+            return digest;
+        }
+
+        public byte[] getGzipped() {
+            return gzipped;
+        }
+    }
+
+    /**
+     * 一个映射到内存的段文件；写入由外层在 store 上同步，读取使用各自的 duplicate() 视图
+     */
+    private static final class Segment {
+        private final int id;
+        private final Path file;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        private volatile int position;
+        private volatile long lastWriteMillis;
+
+        private Segment(int id, Path file, FileChannel channel, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.capacity = buffer.capacity();
+        }
+
+        static Segment open(int id, Path file, int size, boolean create) throws IOException {
+            FileChannel channel = create
+                    ? FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                    : FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                return new Segment(id, file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        int remaining() {
+            return capacity - position;
+        }
+
+        /**
+         * 先写记录体，最后写魔数，崩溃时未写完的记录在恢复扫描时被忽略
+         */
+        int write(int keyLength, String digest, long writtenAtMillis, byte[] gzipped) {
+            int offset = position;
+            CRC32 crc = new CRC32();
+            crc.update(gzipped);
+            ByteBuffer view = buffer.duplicate();
+            view.position(offset + 1);
+            view.put((byte) keyLength);
+            view.put(digest.getBytes(StandardCharsets.US_ASCII));
+            view.putLong(writtenAtMillis);
+            view.putInt(gzipped.length);
+            view.putInt((int) crc.getValue());
+            view.put(gzipped);
+            view.put(offset, RECORD_MAGIC);
+            position = offset + HEADER_BYTES + gzipped.length;
+            lastWriteMillis = writtenAtMillis;
+            return offset;
+        }
+
+        Record read(int offset) {
+            ByteBuffer view = buffer.duplicate();
+            view.position(offset + 1);
+            int keyLength = view.get();
+            byte[] digest = new byte[DIGEST_LENGTH];
+            view.get(digest);
+            long writtenAtMillis = view.getLong();
+            byte[] gzipped = new byte[view.getInt()];
+            view.getInt();
+            view.get(gzipped);
+            return new Record(keyLength, new String(digest, StandardCharsets.US_ASCII), writtenAtMillis, gzipped);
+        }
+
+        /**
+         * 恢复扫描时读取并校验记录，遇到空白、未写完或损坏的记录返回 null
+         */
+        Record readValidated(int offset) {
+            if (offset + HEADER_BYTES > capacity || buffer.get(offset) != RECORD_MAGIC) {
+                return null;
+            }
+            int keyLength = buffer.get(offset + 1);
+            int length = buffer.getInt(offset + 2 + DIGEST_LENGTH + 8);
+            if (keyLength <= 0 || keyLength > DIGEST_LENGTH || length < 0 || length > capacity - offset - HEADER_BYTES) {
+                return null;
+            }
+            Record record = read(offset);
+            CRC32 crc = new CRC32();
+            crc.update(record.gzipped);
+            return buffer.getInt(offset + HEADER_BYTES - 4) == (int) crc.getValue() ? record : null;
+        }
+
+        void close() {
+            buffer.force();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("关闭结果段文件失败: {}, 错误: {}", file, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.hc.wx.mp.concurrent;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 有界、具名、带统计的线程池
+ * <p>
+ * 固定线程数和有界队列，线程名为 name-序号（守护线程）。额外记录每个任务在队列中的等待时间和执行时间，
+ * 以及被拒绝的次数，用来判断线程池是否偏小：排队时间持续增长说明线程不够，拒绝说明队列也已排满。
+ */
+public class BoundedExecutor extends ThreadPoolExecutor {
+
+    private final String name;
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder queueNanos = new LongAdder();
+    private final LongAdder runNanos = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final ThreadLocal<Long> runStart = new ThreadLocal<>();
+
+    /**
+     * @param name          线程名前缀，也用于统计
+     * @param threads       线程数
+     * @param queueCapacity 排队上限
+     * @param rejection     队列满时的处理：阻塞 I/O 用 {@link ThreadPoolExecutor.AbortPolicy} 由调用方降级，
+     *                      CPU 计算可用 {@link ThreadPoolExecutor.CallerRunsPolicy} 在调用方线程执行
+     */
+    public BoundedExecutor(String name, int threads, int queueCapacity, RejectedExecutionHandler rejection) {
+        super(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                namedThreads(name), rejection);
+        this.name = name;
+        allowCoreThreadTimeOut(true);
+        setRejectedExecutionHandler((task, executor) -> {
+            rejected.increment();
+            rejection.rejectedExecution(task, executor);
+        });
+    }
+
+    private static ThreadFactory namedThreads(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        submitted.increment();
+        super.execute(new Enqueued(command, System.nanoTime()));
+    }
+
+    @Override
+    protected void beforeExecute(Thread thread, Runnable task) {
+        super.beforeExecute(thread, task);
+        long now = System.nanoTime();
+        if (task instanceof Enqueued) {
+            queueNanos.add(now - ((Enqueued) task).enqueuedAt);
+        }
+        runStart.set(now);
+    }
+
+    @Override
+    protected void afterExecute(Runnable task, Throwable error) {
+        Long start = runStart.get();
+        if (start != null) {
+            runNanos.add(System.nanoTime() - start);
+            runStart.remove();
+        }
+        completed.increment();
+        super.afterExecute(task, error);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 线程数、排队数、提交/完成/拒绝次数以及平均排队和执行时间
+     */
+    public Map<String, Object> getStats() {
+        long done = completed.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("name", name);
+        stats.put("threads", getMaximumPoolSize());
+        stats.put("poolSize", getPoolSize());
+        stats.put("active", getActiveCount());
+        stats.put("largestPoolSize", getLargestPoolSize());
+        stats.put("queued", getQueue().size());
+        stats.put("remainingCapacity", getQueue().remainingCapacity());
+        stats.put("submitted", submitted.sum());
+        stats.put("completed", done);
+        stats.put("rejected", rejected.sum());
+        stats.put("avgQueueMillis", done == 0 ? 0.0 : queueNanos.sum() / 1_000_000.0 / done);
+        stats.put("avgRunMillis", done == 0 ? 0.0 : runNanos.sum() / 1_000_000.0 / done);
+        return stats;
+    }
+
+    /**
+     * 记录入队时间的任务包装
+     */
+    private static final class Enqueued implements Runnable {
+        private final Runnable task;
+        private final long enqueuedAt;
+
+        private Enqueued(Runnable task, long enqueuedAt) {
+            this.task = task;
+            this.enqueuedAt = enqueuedAt;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+    }
+}
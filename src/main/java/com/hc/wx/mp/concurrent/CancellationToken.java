@@ -0,0 +1,67 @@
+package com.hc.wx.mp.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * 取消令牌
+ * <p>
+ * 由发起方持有并在不再需要结果时调用 {@link #cancel()}；
+ * 执行方通过 {@link #isCancelled()} 检查或 {@link #onCancel(Runnable)} 注册回调
+ * （例如中止正在进行的HTTP调用），从而真正停止已经没有意义的工作。
+ */
+public final class CancellationToken {
+
+    private final List<Runnable> callbacks = new ArrayList<>();
+    private volatile boolean cancelled;
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 取消并依次执行已注册的回调，重复调用无副作用
+     *
+     * @return 是否由本次调用完成取消
+     */
+    public boolean cancel() {
+        List<Runnable> toRun;
+        synchronized (this) {
+            if (cancelled) {
+                return false;
+            }
+            cancelled = true;
+            toRun = new ArrayList<>(callbacks);
+            callbacks.clear();
+        }
+        toRun.forEach(Runnable::run);
+        return true;
+    }
+
+    /**
+     * 注册取消回调；如果已经取消则立即执行
+     *
+     * @return 注销回调的句柄，工作正常结束后应调用以免回调被误触发
+     */
+    public Runnable onCancel(Runnable callback) {
+        synchronized (this) {
+            if (!cancelled) {
+                callbacks.add(callback);
+                return () -> {
+                    synchronized (this) {
+                        callbacks.remove(callback);
+                    }
+                };
+            }
+        }
+        callback.run();
+        return () -> { };
+    }
+
+    public void throwIfCancelled() {
+        if (cancelled) {
+            throw new CancellationException("任务已取消");
+        }
+    }
+}
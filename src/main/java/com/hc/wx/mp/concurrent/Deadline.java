@@ -0,0 +1,75 @@
+package com.hc.wx.mp.concurrent;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 请求截止时间
+ * <p>
+ * 在请求入口（微信消息、REST接口）创建一次，随调用链向下传递；
+ * 各阶段用剩余时间决定自己的超时、是否重试、汇聚等待多久，
+ * 剩余预算不够完成的工作干脆不发起。
+ */
+public final class Deadline {
+
+    /** 在消息路由上下文中传递截止时间使用的key */
+    public static final String CONTEXT_KEY = "deadline";
+
+    private final long deadlineNanos;
+
+    private Deadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * 从现在起 budgetMillis 毫秒后截止
+     */
+    public static Deadline after(long budgetMillis) {
+        return new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis));
+    }
+
+    /**
+     * 从消息路由上下文中取出截止时间，没有则按默认预算新建
+     */
+    public static Deadline fromContext(Map<String, Object> context, long defaultBudgetMillis) {
+        Object deadline = context == null ? null : context.get(CONTEXT_KEY);
+        return deadline instanceof Deadline ? (Deadline) deadline : after(defaultBudgetMillis);
+    }
+
+    /**
+     * 剩余毫秒数，已截止时为0
+     */
+    public long remainingMillis() {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+    }
+
+    public boolean isExpired() {
+        return deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * 剩余时间是否还够 millis 毫秒
+     */
+    public boolean hasAtLeast(long millis) {
+        return remainingMillis() >= millis;
+    }
+
+    /**
+     * 单个阶段的超时：不超过 maxMillis，也不超过剩余时间
+     */
+    public long cap(long maxMillis) {
+        return Math.min(maxMillis, remainingMillis());
+    }
+
+    /**
+     * 预留 millis 毫秒给后续阶段（如结果存储、组装回复），返回提前截止的新 Deadline
+     */
+    public Deadline reserve(long millis) {
+        return new Deadline(deadlineNanos - TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline{remaining=" + remainingMillis() + "ms}";
+    }
+}
@@ -0,0 +1,118 @@
+package com.hc.wx.mp.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * 多数据源结果汇聚（fan-in）
+ * <p>
+ * 基于完成回调驱动：任意一个数据源的 future 完成时立即检查是否满足结束条件，
+ * 不再轮询和 sleep，也不占用调用方线程等待。支持三种策略：
+ * <ul>
+ *     <li>{@link #firstValid} - 返回第一个有效结果</li>
+ *     <li>{@link #firstNValid} - 收集到 N 个有效结果即返回</li>
+ *     <li>{@link #allByDeadline} - 在截止时间前收集所有有效结果</li>
+ * </ul>
+ * 超时后返回截至当时已收集到的结果；所有数据源都已完成时也会立即返回。
+ * 汇聚结束（或汇聚结果被取消）后，仍未完成的数据源 future 会被一并取消。
+ */
+public final class FanIn {
+
+    private static final ScheduledThreadPoolExecutor TIMER = createTimer();
+
+    private FanIn() {
+    }
+
+    private static ScheduledThreadPoolExecutor createTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "fan-in-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    /**
+     * 返回第一个有效结果，超时或全部完成仍无有效结果时返回 fallback
+     */
+    public static <T> CompletableFuture<T> firstValid(List<CompletableFuture<T>> futures, Predicate<T> valid,
+                                                      long timeoutMillis, T fallback) {
+        return firstNValid(futures, 1, valid, timeoutMillis)
+                .thenApply(results -> results.isEmpty() ? fallback : results.get(0));
+    }
+
+    /**
+     * 收集到 n 个互不相同的有效结果后立即返回（按完成先后排序）
+     */
+    public static <T> CompletableFuture<List<T>> firstNValid(List<CompletableFuture<T>> futures, int n,
+                                                             Predicate<T> valid, long timeoutMillis) {
+        Collector<T> collector = new Collector<>(futures.size(), n, valid);
+        if (futures.isEmpty()) {
+            collector.finish();
+            return collector.result;
+        }
+
+        ScheduledFuture<?> timeout = TIMER.schedule(collector::finish, timeoutMillis, TimeUnit.MILLISECONDS);
+        collector.result.whenComplete((results, ex) -> {
+            timeout.cancel(false);
+            futures.forEach(future -> future.cancel(true));
+        });
+
+        for (CompletableFuture<T> future : futures) {
+            future.whenComplete((value, ex) -> collector.onComplete(ex == null ? value : null));
+        }
+        return collector.result;
+    }
+
+    /**
+     * 截止时间内收集所有有效结果
+     */
+    public static <T> CompletableFuture<List<T>> allByDeadline(List<CompletableFuture<T>> futures, Predicate<T> valid,
+                                                               long timeoutMillis) {
+        return firstNValid(futures, futures.size(), valid, timeoutMillis);
+    }
+
+    // ================================ 内部类 ================================
+
+    private static class Collector<T> {
+        private final CompletableFuture<List<T>> result = new CompletableFuture<>();
+        private final List<T> collected = new ArrayList<>();
+        private final int wanted;
+        private final Predicate<T> valid;
+        private int remaining;
+
+        Collector(int total, int wanted, Predicate<T> valid) {
+            this.remaining = total;
+            this.wanted = wanted;
+            this.valid = valid;
+        }
+
+        void onComplete(T value) {
+            boolean done;
+            synchronized (this) {
+                remaining--;
+                if (value != null && valid.test(value) && !collected.contains(value)) {
+                    collected.add(value);
+                }
+                done = collected.size() >= wanted || remaining <= 0;
+            }
+            if (done) {
+                finish();
+            }
+        }
+
+        void finish() {
+            List<T> snapshot;
+            synchronized (this) {
+                snapshot = new ArrayList<>(collected);
+            }
+            result.complete(snapshot);
+        }
+    }
+}
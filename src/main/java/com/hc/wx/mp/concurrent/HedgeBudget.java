@@ -0,0 +1,41 @@
+package com.hc.wx.mp.concurrent;
+
+/**
+ * 全局对冲请求预算（令牌桶）
+ * <p>
+ * 每发出一个主请求积累 ratio 个令牌，每个对冲请求消耗 1 个，令牌最多积累 maxBurst 个。
+ * 因此对冲请求数长期不超过主请求数的 ratio 倍；上游整体变慢时对冲也无法放大流量。
+ */
+public class HedgeBudget {
+
+    private final double ratio;
+    private final double maxBurst;
+    private double tokens;
+
+    public HedgeBudget(double ratio, double maxBurst) {
+        this.ratio = ratio;
+        this.maxBurst = maxBurst;
+    }
+
+    /**
+     * 记录一次主请求
+     */
+    public synchronized void onRequest() {
+        tokens = Math.min(maxBurst, tokens + ratio);
+    }
+
+    /**
+     * 申请发出一个对冲请求
+     */
+    public synchronized boolean tryAcquire() {
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized double getAvailableTokens() {
+        return tokens;
+    }
+}
@@ -0,0 +1,50 @@
+package com.hc.wx.mp.concurrent;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 搜索编排使用的两个线程池
+ * <p>
+ * io：执行会阻塞等待上游响应的搜索任务，线程数按并发请求数而不是 CPU 核数设置；队列满时拒绝，由调用方降级。
+ * cpu：执行 JSON/HTML 解析和结果整理等纯计算任务，线程数与 CPU 核数相同；队列满时在调用方线程执行。
+ * 两者分开，阻塞的搜索不会占满解析线程，解析也不会和阻塞任务抢 ForkJoinPool.commonPool。
+ */
+public class SearchExecutors {
+
+    private final BoundedExecutor io;
+    private final BoundedExecutor cpu;
+
+    public SearchExecutors(int ioThreads, int ioQueueCapacity, int cpuThreads, int cpuQueueCapacity) {
+        this.io = new BoundedExecutor("search-io", ioThreads, ioQueueCapacity, new ThreadPoolExecutor.AbortPolicy());
+        this.cpu = new BoundedExecutor("search-cpu", cpuThreads > 0 ? cpuThreads : Runtime.getRuntime().availableProcessors(),
+                cpuQueueCapacity, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * 阻塞 I/O 线程池
+     */
+    public BoundedExecutor io() {
+        return io;
+    }
+
+    /**
+     * CPU 计算线程池
+     */
+    public BoundedExecutor cpu() {
+        return cpu;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("io", io.getStats());
+        stats.put("cpu", cpu.getStats());
+        return stats;
+    }
+
+    public void shutdown() {
+        io.shutdown();
+        cpu.shutdown();
+    }
+}
@@ -0,0 +1,135 @@
+package com.hc.wx.mp.concurrent;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 相同 key 的并发请求合并（single-flight）
+ * <p>
+ * 同一 key 同一时刻只执行一次计算，期间到达的请求直接加入正在进行的计算并共享结果；
+ * 计算结束即从表中移除，之后的请求会重新计算（结果缓存由调用方负责）。
+ * 每个调用方拿到的是独立的下游 future，取消它不会影响共享的计算。
+ * 可取消的同步计算只有在所有参与的调用方都取消后，才会取消共享的计算。
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    /** 可取消的同步计算的共享取消令牌和尚未取消的调用方数量，与 inFlight 中的 future 一一对应 */
+    private final Map<CompletableFuture<V>, Participants> participants = new ConcurrentHashMap<>();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder executions = new LongAdder();
+
+    /**
+     * 异步计算：loader 只会被其中一个调用方执行
+     */
+    public CompletableFuture<V> executeAsync(K key, Supplier<CompletableFuture<V>> loader) {
+        calls.increment();
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            return existing.thenApply(Function.identity());
+        }
+
+        executions.increment();
+        created.whenComplete((value, ex) -> inFlight.remove(key, created));
+        try {
+            loader.get().whenComplete((value, ex) -> {
+                if (ex != null) {
+                    created.completeExceptionally(ex);
+                } else {
+                    created.complete(value);
+                }
+            });
+        } catch (RuntimeException e) {
+            created.completeExceptionally(e);
+        }
+        return created.thenApply(Function.identity());
+    }
+
+    /**
+     * 可取消的同步计算：loader 收到整个计算共用的取消令牌，调用方各自的令牌都取消后它才会被取消；
+     * 只要还有一个调用方在等待结果，共享的计算就继续进行
+     */
+    public V execute(K key, CancellationToken cancellation, Function<CancellationToken, V> loader) {
+        calls.increment();
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> flight;
+        Participants joined;
+        synchronized (participants) {
+            // 已被所有调用方放弃的计算不再加入，重新发起一次
+            flight = inFlight.compute(key, (k, current) -> current == null || isAbandoned(current) ? created : current);
+            joined = participants.computeIfAbsent(flight, f -> new Participants());
+            joined.active.incrementAndGet();
+        }
+        Runnable deregister = cancellation.onCancel(() -> leave(joined));
+        try {
+            if (flight != created) {
+                return flight.join();
+            }
+
+            executions.increment();
+            try {
+                V value = loader.apply(joined.shared);
+                created.complete(value);
+                return value;
+            } catch (RuntimeException e) {
+                created.completeExceptionally(e);
+                throw e;
+            } finally {
+                synchronized (participants) {
+                    inFlight.remove(key, created);
+                    participants.remove(created);
+                }
+            }
+        } finally {
+            deregister.run();
+        }
+    }
+
+    private boolean isAbandoned(CompletableFuture<V> flight) {
+        Participants current = participants.get(flight);
+        return current != null && current.abandoned;
+    }
+
+    private void leave(Participants joined) {
+        boolean abandoned;
+        synchronized (participants) {
+            abandoned = joined.active.decrementAndGet() == 0;
+            joined.abandoned = abandoned;
+        }
+        if (abandoned) {
+            joined.shared.cancel();
+        }
+    }
+
+    /**
+     * 调用次数、实际执行次数、合并次数与合并率
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long total = calls.sum();
+        long executed = executions.sum();
+        stats.put("calls", total);
+        stats.put("executions", executed);
+        stats.put("coalesced", total - executed);
+        stats.put("coalescingRatio", total == 0 ? 0.0 : (double) (total - executed) / total);
+        stats.put("inFlight", inFlight.size());
+        return stats;
+    }
+
+    /**
+     * 一次可取消计算的参与方
+     */
+    private static final class Participants {
+        private final CancellationToken shared = new CancellationToken();
+        private final AtomicInteger active = new AtomicInteger();
+        /** 所有调用方都已取消，之后到达的请求不再加入 */
+        private volatile boolean abandoned;
+    }
+}
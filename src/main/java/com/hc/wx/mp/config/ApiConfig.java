@@ -24,19 +24,45 @@ public class ApiConfig {
     private String uukkBaseUrl;
     private String kkqwsToken;
 
-    private ThreadPoolConfig threadPool = new ThreadPoolConfig();
+    /** 搜索编排线程池配置（阻塞 I/O 与 CPU 计算分开） */
+    private ExecutorConfig executors = new ExecutorConfig();
     
     /** HTTP连接池配置 - 优化：提高并发性能 */
     private HttpConfig http = new HttpConfig();
 
+    /** 请求截止时间预算 */
+    private DeadlineConfig deadline = new DeadlineConfig();
+
+    /** 上游接口熔断配置 */
+    private CircuitBreakerConfig circuitBreaker = new CircuitBreakerConfig();
+
+    /** 慢请求对冲配置 */
+    private HedgingConfig hedging = new HedgingConfig();
+
+    /** 搜索结果缓存配置 */
+    private CacheConfig cache = new CacheConfig();
+
+    /** 短链接结果存储配置 */
+    private StorageConfig storage = new StorageConfig();
+
+    /** 微信异步回复配置 */
+    private AsyncReplyConfig asyncReply = new AsyncReplyConfig();
+
+    /** 微信重试消息去重配置 */
+    private RetryDedupConfig retryDedup = new RetryDedupConfig();
+
     @Data
-    public static class ThreadPoolConfig {
-        private int coreSize = 8;
-        private int maxSize = 16;
-        private int queueCapacity = 50;
-        private long keepAliveSeconds = 30;
+    public static class ExecutorConfig {
+        /** 阻塞 I/O 线程数，按同时进行的搜索数设置，与 CPU 核数无关 */
+        private int ioThreads = 32;
+        /** 阻塞 I/O 排队上限，满了之后该数据源直接降级为空结果 */
+        private int ioQueueCapacity = 64;
+        /** CPU 计算线程数，0 表示与 CPU 核数相同 */
+        private int cpuThreads = 0;
+        /** CPU 计算排队上限，满了之后在调用方线程执行 */
+        private int cpuQueueCapacity = 256;
     }
-    
+
     /** HTTP连接配置类 - 新增：优化网络请求性能 */
     @Data
     public static class HttpConfig {
@@ -48,5 +74,146 @@ public class ApiConfig {
         private int maxConnections = 200;
         /** 每个路由的最大连接数 */
         private int maxConnectionsPerRoute = 50;
+        /** 空闲连接保活时间(秒) */
+        private int keepAliveSeconds = 300;
+    }
+
+    /** 截止时间预算配置：从请求入口开始计时，向下传递到每一次上游请求 */
+    @Data
+    public static class DeadlineConfig {
+        /** 微信消息的总预算(毫秒)，微信服务器5秒内收不到回复会断开并重试 */
+        private long wxReplyBudgetMillis = 4500;
+        /** REST搜索接口的总预算(毫秒) */
+        private long apiBudgetMillis = 6000;
+        /** 搜索结束后为存储结果、组装回复预留的时间(毫秒) */
+        private long replyReserveMillis = 300;
+        /** 剩余时间低于该值(毫秒)时不再发起新的上游请求或重试 */
+        private long minAttemptMillis = 300;
+        /** 回复后仍未完成的数据源最多继续搜索的时间(毫秒，从开始搜索算起)，完成后追加到已发出的结果；0 表示不追加 */
+        private long lateResultBudgetMillis = 15000;
+    }
+
+    /** 熔断器配置：每个上游接口一个熔断器 */
+    @Data
+    public static class CircuitBreakerConfig {
+        /** 统计失败率的滑动窗口大小(最近N次调用) */
+        private int windowSize = 20;
+        /** 窗口内至少有这么多次调用才计算失败率 */
+        private int minimumCalls = 5;
+        /** 失败率阈值(百分比)，达到即熔断 */
+        private int failureRateThreshold = 50;
+        /** 熔断持续时间(毫秒)，之后进入半开状态 */
+        private long openMillis = 30000;
+        /** 半开状态允许同时进行的探测请求数 */
+        private int halfOpenProbes = 1;
+        /** 耗时统计的样本数 */
+        private int latencyWindowSize = 128;
+    }
+
+    /** 对冲配置：请求超过该接口近期耗时分位数仍未返回时，再发一个相同请求 */
+    @Data
+    public static class HedgingConfig {
+        /** 是否启用对冲 */
+        private boolean enabled = true;
+        /** 触发对冲的耗时分位数(90~95) */
+        private double percentile = 95;
+        /** 接口耗时样本数少于该值时不对冲 */
+        private int minSamples = 20;
+        /** 对冲请求占主请求的最大比例 */
+        private double budgetRatio = 0.1;
+        /** 对冲令牌最多积累的个数 */
+        private double maxBurst = 10;
+    }
+
+    /** 搜索结果缓存配置 */
+    @Data
+    public static class CacheConfig {
+        /** 缓存最大占用(字节，按字符串长度估算) */
+        private long maxBytes = 32L * 1024 * 1024;
+        /** 结果新鲜期(分钟)，超过后仍直接返回旧结果，同时在后台刷新 */
+        private long ttlMinutes = 10;
+        /** 结果最长保留时间(分钟)，超过后必须同步重新搜索 */
+        private long hardTtlMinutes = 30;
+        /** 空结果精确缓存有效期(秒) */
+        private long negativeTtlSeconds = 60;
+        /** 空结果精确缓存最多条目数 */
+        private long negativeMaxEntries = 10000;
+        /** 空关键词过滤器：一个窗口内预计的关键词数 */
+        private int emptyFilterExpectedKeywords = 50000;
+        /** 空关键词过滤器：误判率 */
+        private double emptyFilterFalsePositiveRate = 0.01;
+        /** 空关键词过滤器：轮换周期(分钟)，关键词被记住一到两个周期 */
+        private long emptyFilterWindowMinutes = 30;
+        /** 降级搜索时最多请求的数据源数 */
+        private int downgradedSources = 2;
+        /** 降级搜索的最长预算(毫秒) */
+        private long downgradedBudgetMillis = 2000;
+        /** 是否启用 Redis 共享缓存层 */
+        private boolean l2Enabled = true;
+        /** Redis 读取超时(毫秒)，超时按未命中处理 */
+        private long l2LookupTimeoutMillis = 50;
+        /** Redis key 前缀 */
+        private String l2KeyPrefix = "wx:search-cache:";
+        /** 本地缓存失效通知的发布/订阅频道 */
+        private String invalidationChannel = "wx:search-cache:invalidate";
+    }
+
+    /** 短链接结果存储配置 */
+    @Data
+    public static class StorageConfig {
+        /** 存储最大占用(字节，按压缩后的大小计算) */
+        private long maxBytes = 64L * 1024 * 1024;
+        /** 结果保留时间(分钟)，超过后链接显示已过期 */
+        private long ttlMinutes = 24 * 60;
+        /** 是否同时写入 Redis，使结果链接在任意节点都能打开 */
+        private boolean sharedEnabled = true;
+        /** Redis key 前缀 */
+        private String redisKeyPrefix = "wx:result:";
+        /** 本地未命中时读取 Redis 的超时(毫秒) */
+        private long sharedLookupTimeoutMillis = 500;
+        /** 是否把结果追加写入本地磁盘段文件（堆上只保留索引，重启后链接仍可打开），开启后不再使用内存存储 */
+        private boolean diskEnabled = false;
+        /** 段文件目录 */
+        private String diskDirectory = "data/results";
+        /** 单个段文件大小(字节)，写满后新建段 */
+        private int segmentBytes = 64 * 1024 * 1024;
+        /** 段文件总大小上限(字节)，超过后整段删除最早的段 */
+        private long diskMaxBytes = 1024L * 1024 * 1024;
+        /** 预渲染结果页缓存最大占用(字节，按压缩后的大小计算) */
+        private long pageCacheMaxBytes = 16L * 1024 * 1024;
+    }
+
+    /** 微信异步回复配置：先立即回复确认，搜索在后台完成后通过客服消息推送结果链接 */
+    @Data
+    public static class AsyncReplyConfig {
+        /** 是否启用异步回复，关闭时在被动回复的5秒内同步完成搜索 */
+        private boolean enabled = false;
+        /** 立即回复的确认文本，为空时不回复任何内容 */
+        private String ackMessage = "🔍 正在为您搜索，结果整理好后会发送给您";
+        /** 后台搜索的预算(毫秒)，不再受微信5秒回复时限的约束 */
+        private long searchBudgetMillis = 15000;
+        /** 搜索阶段线程数 */
+        private int searchThreads = 16;
+        /** 搜索阶段排队上限，满了之后新消息改为同步回复 */
+        private int searchQueueCapacity = 200;
+        /** 客服消息推送阶段线程数 */
+        private int pushThreads = 4;
+        /** 推送阶段排队上限 */
+        private int pushQueueCapacity = 500;
+        /** 每条消息处理状态的保留时间(分钟) */
+        private long statusTtlMinutes = 30;
+        /** 最多保留的消息状态条数 */
+        private long statusMaxEntries = 10000;
+    }
+
+    /** 微信重试消息去重配置：同一条消息的重试共享第一次处理的回复 */
+    @Data
+    public static class RetryDedupConfig {
+        /** 是否启用去重 */
+        private boolean enabled = true;
+        /** 每条消息的回复保留时间(秒)，需覆盖微信三次重试的时间窗口 */
+        private long ttlSeconds = 30;
+        /** 最多保留的消息条数 */
+        private long maxEntries = 10000;
     }
-}
\ No newline at end of file
+}
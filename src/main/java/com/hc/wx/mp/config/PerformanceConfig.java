@@ -1,5 +1,6 @@
 package com.hc.wx.mp.config;
 
+import com.hc.wx.mp.concurrent.SearchExecutors;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -21,37 +22,21 @@ import java.util.concurrent.ThreadPoolExecutor;
 public class PerformanceConfig {
 
     /**
-     * 搜索服务专用线程池
-     * 优化：独立的线程池避免与其他业务冲突
+     * 搜索编排线程池：阻塞 I/O 和 CPU 计算分开
+     * 优化：消息处理器的并发搜索和结果解析不再使用按 CPU 核数设置的 ForkJoinPool.commonPool
      */
-    @Bean(name = "searchTaskExecutor")
-    public Executor searchTaskExecutor() {
-        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        
-        // 核心线程数
-        executor.setCorePoolSize(8);
-        // 最大线程数
-        executor.setMaxPoolSize(16);
-        // 队列容量
-        executor.setQueueCapacity(100);
-        // 线程名称前缀
-        executor.setThreadNamePrefix("Search-");
-        // 线程空闲时间
-        executor.setKeepAliveSeconds(60);
-        
-        // 拒绝策略：由调用线程执行
-        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
-        
-        // 等待所有任务完成后再关闭线程池
-        executor.setWaitForTasksToCompleteOnShutdown(true);
-        executor.setAwaitTerminationSeconds(60);
-        
-        executor.initialize();
-        
-        log.info("搜索服务线程池初始化完成 - 核心线程数: {}, 最大线程数: {}, 队列容量: {}", 
-                executor.getCorePoolSize(), executor.getMaxPoolSize(), executor.getQueueCapacity());
-        
-        return executor;
+    @Bean(destroyMethod = "shutdown")
+    public SearchExecutors searchExecutors(ApiConfig apiConfig) {
+        ApiConfig.ExecutorConfig config = apiConfig.getExecutors() != null
+                ? apiConfig.getExecutors() : new ApiConfig.ExecutorConfig();
+        SearchExecutors executors = new SearchExecutors(config.getIoThreads(), config.getIoQueueCapacity(),
+                config.getCpuThreads(), config.getCpuQueueCapacity());
+
+        log.info("搜索编排线程池初始化完成 - I/O线程数: {}, I/O队列: {}, 计算线程数: {}, 计算队列: {}",
+                executors.io().getMaximumPoolSize(), config.getIoQueueCapacity(),
+                executors.cpu().getMaximumPoolSize(), config.getCpuQueueCapacity());
+
+        return executors;
     }
 
     /**
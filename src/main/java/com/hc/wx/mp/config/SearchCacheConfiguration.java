@@ -0,0 +1,60 @@
+package com.hc.wx.mp.config;
+
+import com.hc.wx.mp.cache.SearchResultCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 搜索结果缓存配置
+ * 订阅 Redis 失效通知频道，其他节点写入新结果时淘汰本节点的本地副本
+ * <p>
+ * 订阅在应用就绪后异步进行，Redis 不可达时既不阻塞也不影响启动，本地缓存退化为仅依赖TTL过期。
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(prefix = "api.search.cache", name = "l2-enabled", havingValue = "true", matchIfMissing = true)
+public class SearchCacheConfiguration {
+
+    private final RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+    private final String channel;
+
+    public SearchCacheConfiguration(RedisConnectionFactory connectionFactory,
+                                    SearchResultCache searchResultCache,
+                                    ApiConfig apiConfig) {
+        this.channel = apiConfig.getCache().getInvalidationChannel();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(
+                (message, pattern) -> searchResultCache.onRemoteInvalidation(
+                        new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(channel));
+        container.afterPropertiesSet();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void subscribeInvalidation() {
+        Thread subscriber = new Thread(() -> {
+            try {
+                container.start();
+                log.info("已订阅搜索缓存失效通知频道: {}", channel);
+            } catch (Exception e) {
+                log.warn("订阅搜索缓存失效通知失败，本地缓存仅依赖TTL过期: {}", e.getMessage());
+            }
+        }, "search-cache-subscriber");
+        subscriber.setDaemon(true);
+        subscriber.start();
+    }
+
+    @PreDestroy
+    public void shutdown() throws Exception {
+        container.destroy();
+    }
+}
@@ -1,8 +1,21 @@
 package com.hc.wx.mp.controller;
 
+import com.hc.wx.mp.cache.NegativeResultCache;
+import com.hc.wx.mp.cache.RedisCacheTier;
+import com.hc.wx.mp.cache.RedisResultStore;
+import com.hc.wx.mp.cache.SearchResultCache;
+import com.hc.wx.mp.concurrent.Deadline;
+import com.hc.wx.mp.concurrent.SearchExecutors;
+import com.hc.wx.mp.config.ApiConfig;
 import com.hc.wx.mp.entity.LotteryResult;
+import com.hc.wx.mp.entity.SearchResultSet;
+import com.hc.wx.mp.handler.WxRetryDeduplicator;
+import com.hc.wx.mp.http.CircuitBreakerRegistry;
+import com.hc.wx.mp.http.UpstreamHttpClient;
+import com.hc.wx.mp.service.AsyncReplyService;
 import com.hc.wx.mp.service.LotteryService;
 import com.hc.wx.mp.service.SearchService;
+import com.hc.wx.mp.service.ResultPageService;
 import com.hc.wx.mp.service.ResultStorageService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -13,11 +26,16 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.constraints.NotBlank;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -35,6 +53,17 @@ public class ApiController {
     private final SearchService searchService;
     private final LotteryService lotteryService;
     private final ResultStorageService resultStorageService;
+    private final ResultPageService resultPageService;
+    private final UpstreamHttpClient upstreamHttpClient;
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final SearchResultCache searchResultCache;
+    private final NegativeResultCache negativeResultCache;
+    private final ApiConfig apiConfig;
+    private final AsyncReplyService asyncReplyService;
+    private final WxRetryDeduplicator retryDeduplicator;
+    private final SearchExecutors searchExecutors;
+    private final RedisCacheTier redisCacheTier;
+    private final RedisResultStore redisResultStore;
 
     // ================================ 搜索相关API ================================
 
@@ -50,10 +79,11 @@ public class ApiController {
             @Parameter(description = "搜索关键词", required = true, example = "Java学习资料")
             @RequestBody @NotBlank String keyword) {
         
+        Deadline deadline = newDeadline();
         log.info("API搜索请求，关键词: {}", keyword);
         
         try {
-            String result = searchService.searchAndMergeRaw(keyword);
+            String result = searchService.searchAndMergeRaw(keyword, deadline);
             SearchResponse response = new SearchResponse();
             response.setSuccess(true);
             response.setMessage("搜索成功");
@@ -82,10 +112,11 @@ public class ApiController {
             @Parameter(description = "搜索关键词", required = true, example = "Python教程")
             @RequestParam @NotBlank String q) {
         
+        Deadline deadline = newDeadline();
         log.info("API快速搜索请求，关键词: {}", q);
         
         try {
-            String result = searchService.searchAndMerge(q);
+            String result = searchService.searchAndMerge(q, deadline);
             SearchResponse response = new SearchResponse();
             response.setSuccess(true);
             response.setMessage("快速搜索成功");
@@ -110,10 +141,11 @@ public class ApiController {
             @Parameter(description = "搜索关键词", required = true, example = "编程资料")
             @RequestParam @NotBlank String keyword) {
         
+        Deadline deadline = newDeadline();
         log.info("API Makifx搜索请求，关键词: {}", keyword);
         
         try {
-            String result = searchService.searchMakifx(keyword);
+            String result = searchService.searchMakifx(keyword, deadline);
             SearchResponse response = new SearchResponse();
             response.setSuccess(true);
             response.setMessage("Makifx搜索成功");
@@ -132,6 +164,13 @@ public class ApiController {
         }
     }
 
+    /**
+     * 搜索请求的截止时间，从进入接口开始计时
+     */
+    private Deadline newDeadline() {
+        return Deadline.after(apiConfig.getDeadline().getApiBudgetMillis());
+    }
+
     // ================================ 彩票相关API ================================
 
     @Operation(summary = "获取最新彩票信息", description = "获取最新一期双色球开奖信息")
@@ -195,23 +234,77 @@ public class ApiController {
 
     // ================================ 结果管理API ================================
 
-    @Operation(summary = "获取搜索结果", description = "根据结果Key获取搜索结果详情")
+    @Operation(summary = "获取搜索结果", description = "根据结果Key获取搜索结果详情；"
+            + "带 page 或 size 参数时按页返回结构化的结果项（items），否则返回格式化后的完整文本（content）；"
+            + "Accept: text/plain 时返回纯文本，客户端支持 gzip 则直接返回压缩好的内容（Content-Encoding: gzip）；"
+            + "结果不可变，响应带强 ETag 和长期 Cache-Control，If-None-Match 匹配时返回 304")
     @GetMapping("/result/{key}")
-    public ResponseEntity<Map<String, Object>> getResult(
+    public ResponseEntity<?> getResult(
             @Parameter(description = "结果唯一标识符", required = true, example = "abc123")
-            @PathVariable @NotBlank String key) {
+            @PathVariable @NotBlank String key,
+            @Parameter(description = "页码，从 1 开始", example = "1")
+            @RequestParam(required = false) Integer page,
+            @Parameter(description = "每页条数，默认 20，最多 100", example = "20")
+            @RequestParam(required = false) Integer size,
+            HttpServletRequest request) {
         
-        log.info("API获取搜索结果请求，key: {}", key);
+        log.info("API获取搜索结果请求，key: {}, page: {}, size: {}", key, page, size);
+
+        boolean plainText = CompressedResults.wantsPlainText(request);
+        boolean paged = !plainText && (page != null || size != null);
+        int pageNo = ResultPageService.normalizePage(page);
+        int pageSize = ResultPageService.normalizeSize(size);
+        String representation = paged ? ResultCacheHeaders.paged(ResultCacheHeaders.JSON, pageNo, pageSize)
+                : !plainText ? ResultCacheHeaders.JSON
+                : CompressedResults.acceptsGzip(request) ? ResultCacheHeaders.TEXT_GZIP : ResultCacheHeaders.TEXT;
+        // 不带版本号的 ETag 只发给不可追加的结果，匹配时不需要再查版本
+        String etag = ResultCacheHeaders.etag(key, representation);
+        Integer version = ResultCacheHeaders.notModified(request, etag) ? null : resultStorageService.getVersion(key);
+        if (version != null) {
+            etag = ResultCacheHeaders.etag(key, version, representation);
+        }
+        HttpHeaders cacheHeaders = ResultCacheHeaders.headers(etag, apiConfig, version != null);
+        if (ResultCacheHeaders.notModified(request, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(cacheHeaders).build();
+        }
+
+        if (plainText) {
+            byte[] gzipped = resultPageService.getCompressedText(key);
+            if (gzipped != null) {
+                return CompressedResults.response(gzipped, request, cacheHeaders);
+            }
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        if (paged) {
+            SearchResultSet resultSet = resultStorageService.getResultSet(key);
+            if (resultSet != null) {
+                response.put("success", true);
+                response.put("message", "获取结果成功");
+                response.put("key", key);
+                response.put("keyword", resultSet.getKeyword());
+                response.put("partial", resultSet.isPartial());
+                response.put("version", resultSet.getVersion());
+                response.put("pendingSources", resultSet.getPendingSources());
+                response.put("sources", resultSet.getSources());
+                response.put("page", pageNo);
+                response.put("size", pageSize);
+                response.put("totalItems", resultSet.getItems().size());
+                response.put("totalPages", resultSet.getTotalPages(pageSize));
+                response.put("items", resultSet.page(pageNo, pageSize).getItems());
+                return ResponseEntity.ok().headers(cacheHeaders).body(response);
+            }
+            // 以前存入的纯文本结果没有结构化条目，按原来的格式整体返回
+        }
         
         String content = resultStorageService.getResult(key);
-        Map<String, Object> response = new HashMap<>();
         
         if (content != null) {
             response.put("success", true);
             response.put("message", "获取结果成功");
             response.put("key", key);
             response.put("content", content);
-            return ResponseEntity.ok(response);
+            return ResponseEntity.ok().headers(cacheHeaders).body(response);
         } else {
             response.put("success", false);
             response.put("message", "结果不存在或已过期");
@@ -220,6 +313,46 @@ public class ApiController {
         }
     }
 
+    @Operation(summary = "结果增量", description = "轮询回复后才完成的数据源追加的结果：返回第 after 条之后的条目；"
+            + "传入的 version 与当前版本相同时不读取存储，直接返回 changed=false")
+    @GetMapping("/result/{key}/updates")
+    public ResponseEntity<Map<String, Object>> getResultUpdates(
+            @Parameter(description = "结果唯一标识符", required = true, example = "abc123")
+            @PathVariable @NotBlank String key,
+            @Parameter(description = "客户端已有的条目数", example = "20")
+            @RequestParam(defaultValue = "0") int after,
+            @Parameter(description = "客户端已有的版本号", example = "0")
+            @RequestParam(required = false) Integer version) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("key", key);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setCacheControl(CacheControl.noStore());
+
+        // 版本没变时内容也没变，客户端沿用已有的状态
+        Integer current = resultStorageService.getVersion(key);
+        if (current != null && current.equals(version)) {
+            response.put("success", true);
+            response.put("changed", false);
+            response.put("version", current);
+            return ResponseEntity.ok().headers(headers).body(response);
+        }
+
+        SearchResultSet resultSet = resultStorageService.getResultSet(key);
+        if (resultSet == null) {
+            response.put("success", false);
+            response.put("message", "结果不存在或已过期");
+            return ResponseEntity.status(404).headers(headers).body(response);
+        }
+        response.put("success", true);
+        response.put("changed", resultSet.getVersion() != (version == null ? -1 : version));
+        response.put("version", resultSet.getVersion());
+        response.put("pending", resultSet.isPending());
+        response.put("pendingSources", resultSet.getPendingSources());
+        response.put("totalItems", resultSet.getItems().size());
+        response.put("items", resultSet.itemsAfter(after));
+        return ResponseEntity.ok().headers(headers).body(response);
+    }
+
     // ================================ 系统信息API ================================
 
     @Operation(summary = "获取系统状态", description = "获取API服务状态信息")
@@ -234,6 +367,97 @@ public class ApiController {
         return ResponseEntity.ok(status);
     }
 
+    // ================================ 监控指标API ================================
+
+    @Operation(summary = "上游连接池指标", description = "查看上游搜索接口共享连接池的连接复用情况和各主机请求统计")
+    @GetMapping("/metrics/http")
+    public ResponseEntity<Map<String, Object>> getHttpMetrics() {
+        return ResponseEntity.ok(upstreamHttpClient.getPoolStats());
+    }
+
+    @Operation(summary = "搜索取消指标", description = "查看搜索满足后被取消的数据源任务数、跳过的任务和省下的请求次数")
+    @GetMapping("/metrics/cancellation")
+    public ResponseEntity<Map<String, Object>> getCancellationMetrics() {
+        return ResponseEntity.ok(searchService.getCancellationStats());
+    }
+
+    @Operation(summary = "上游熔断器状态", description = "查看各上游接口的熔断状态、失败率和耗时分位数(p50/p90/p99)")
+    @GetMapping("/metrics/circuit-breakers")
+    public ResponseEntity<Map<String, Object>> getCircuitBreakerStates() {
+        return ResponseEntity.ok(circuitBreakerRegistry.getStates());
+    }
+
+    @Operation(summary = "慢请求对冲指标", description = "查看对冲请求的发出、胜出、被预算拒绝次数以及对冲率")
+    @GetMapping("/metrics/hedging")
+    public ResponseEntity<Map<String, Object>> getHedgingMetrics() {
+        return ResponseEntity.ok(searchService.getHedgingStats());
+    }
+
+    @Operation(summary = "并发搜索合并指标", description = "查看相同关键词并发搜索被合并的次数和合并率")
+    @GetMapping("/metrics/single-flight")
+    public ResponseEntity<Map<String, Object>> getSingleFlightMetrics() {
+        return ResponseEntity.ok(searchService.getSingleFlightStats());
+    }
+
+    @Operation(summary = "搜索缓存指标", description = "查看搜索结果缓存的命中率、淘汰次数、占用字节数以及空结果缓存统计")
+    @GetMapping("/metrics/cache")
+    public ResponseEntity<Map<String, Object>> getCacheMetrics() {
+        Map<String, Object> stats = new LinkedHashMap<>(searchResultCache.getStats());
+        stats.put("negative", negativeResultCache.getStats());
+        return ResponseEntity.ok(stats);
+    }
+
+    @Operation(summary = "结果存储指标", description = "查看短链接结果存储的条目数、占用字节数、淘汰次数、读取命中情况、相同结果的去重率和节省字节数，以及预渲染结果页的缓存情况")
+    @GetMapping("/metrics/result-storage")
+    public ResponseEntity<Map<String, Object>> getResultStorageMetrics() {
+        Map<String, Object> stats = new LinkedHashMap<>(resultStorageService.getStats());
+        stats.put("pages", resultPageService.getStats());
+        return ResponseEntity.ok(stats);
+    }
+
+    @Operation(summary = "异步回复指标", description = "查看微信异步回复的接受、拒绝、推送成功和失败次数，各状态的消息数以及搜索、推送两个阶段的线程池情况")
+    @GetMapping("/metrics/async-reply")
+    public ResponseEntity<Map<String, Object>> getAsyncReplyMetrics() {
+        return ResponseEntity.ok(asyncReplyService.getStats());
+    }
+
+    @Operation(summary = "线程池指标", description = "查看搜索（阻塞 I/O、CPU 计算）、异步回复（搜索、推送）和 Redis 读写线程池的线程数、排队数、拒绝次数以及平均排队和执行时间")
+    @GetMapping("/metrics/executors")
+    public ResponseEntity<Map<String, Object>> getExecutorMetrics() {
+        Map<String, Object> stats = new LinkedHashMap<>(searchExecutors.getStats());
+        stats.put("asyncReply", asyncReplyService.getExecutorStats());
+        stats.put("redisCache", redisCacheTier.getExecutorStats());
+        stats.put("redisResultStore", redisResultStore.getExecutorStats());
+        return ResponseEntity.ok(stats);
+    }
+
+    @Operation(summary = "微信重试去重指标", description = "查看处理的消息数、微信超时重试次数（等待进行中的处理 / 直接返回已有回复）和重试等待超时次数")
+    @GetMapping("/metrics/wx-retries")
+    public ResponseEntity<Map<String, Object>> getWxRetryMetrics() {
+        return ResponseEntity.ok(retryDeduplicator.getStats());
+    }
+
+    @Operation(summary = "异步回复状态", description = "按消息 id（MsgId，事件消息为 FromUserName:CreateTime）查询后台搜索和客服消息推送的处理状态")
+    @GetMapping("/async-reply/{messageId}")
+    public ResponseEntity<Map<String, Object>> getAsyncReplyStatus(
+            @Parameter(description = "微信消息 id", required = true)
+            @PathVariable @NotBlank String messageId) {
+        AsyncReplyService.ReplyStatus status = asyncReplyService.getStatus(messageId);
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("messageId", messageId);
+        if (status == null) {
+            response.put("success", false);
+            response.put("message", "消息不存在或状态已过期");
+            return ResponseEntity.status(404).body(response);
+        }
+        response.put("success", true);
+        response.put("state", status.getState());
+        response.put("acceptedAt", status.getAcceptedAt());
+        response.put("updatedAt", status.getUpdatedAt());
+        response.put("error", status.getError());
+        return ResponseEntity.ok(response);
+    }
+
     // ================================ 响应实体类 ================================
 
     @Schema(description = "搜索响应")
@@ -0,0 +1,89 @@
+package com.hc.wx.mp.controller;
+
+import cn.hutool.core.util.ZipUtil;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.View;
+
+import javax.servlet.http.HttpServletRequest;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 返回已 gzip 存储的搜索结果和预渲染的结果页
+ * <p>
+ * 请求的 Accept 明确要 text/plain（且不要 HTML/JSON）时，结果页和结果接口返回存储中的纯文本；
+ * 结果页的 HTML 则是预渲染并压缩好的页面。两者都是：
+ * 客户端支持 gzip 就把压缩字节原样写出并带上 Content-Encoding: gzip，不解压也不渲染；
+ * 不支持时才解压。
+ */
+final class CompressedResults {
+
+    static final MediaType TEXT_UTF8 = new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8);
+    static final MediaType HTML_UTF8 = new MediaType(MediaType.TEXT_HTML, StandardCharsets.UTF_8);
+
+    private CompressedResults() {
+    }
+
+    /**
+     * 客户端是否要纯文本结果，浏览器的 Accept 和不限类型的默认 Accept 都不算
+     */
+    static boolean wantsPlainText(HttpServletRequest request) {
+        String accept = request.getHeader(HttpHeaders.ACCEPT);
+        return accept != null && accept.contains(MediaType.TEXT_PLAIN_VALUE)
+                && !accept.contains(MediaType.TEXT_HTML_VALUE) && !accept.contains(MediaType.APPLICATION_JSON_VALUE);
+    }
+
+    /**
+     * Accept-Encoding 是否接受 gzip（gzip;q=0 视为不接受）
+     */
+    static boolean acceptsGzip(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String token : acceptEncoding.split(",")) {
+            String[] parts = token.trim().split(";");
+            String coding = parts[0].trim();
+            if (!"gzip".equalsIgnoreCase(coding) && !"*".equals(coding)) {
+                continue;
+            }
+            boolean refused = parts.length > 1 && parts[1].trim().matches("q=0(\\.0*)?");
+            return !refused;
+        }
+        return false;
+    }
+
+    /**
+     * @param cacheHeaders 额外的响应头（ETag、Cache-Control 等）
+     */
+    static ResponseEntity<byte[]> response(byte[] gzipped, HttpServletRequest request, HttpHeaders cacheHeaders) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(cacheHeaders);
+        headers.setContentType(TEXT_UTF8);
+        headers.set(HttpHeaders.VARY, HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING);
+        if (acceptsGzip(request)) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+            return ResponseEntity.ok().headers(headers).body(gzipped);
+        }
+        return ResponseEntity.ok().headers(headers).body(ZipUtil.unGzip(gzipped));
+    }
+
+    /**
+     * 供返回视图的控制器使用，效果与 {@link #response} 相同
+     */
+    static View view(byte[] gzipped, MediaType contentType) {
+        return (model, request, response) -> {
+            response.setContentType(contentType.toString());
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING);
+            byte[] body = gzipped;
+            if (acceptsGzip(request)) {
+                response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            } else {
+                body = ZipUtil.unGzip(gzipped);
+            }
+            response.setContentLength(body.length);
+            response.getOutputStream().write(body);
+        };
+    }
+}
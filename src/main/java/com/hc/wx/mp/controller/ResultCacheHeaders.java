@@ -0,0 +1,98 @@
+package com.hc.wx.mp.controller;
+
+import com.hc.wx.mp.config.ApiConfig;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 结果页和结果接口的 HTTP 缓存头
+ * <p>
+ * 结果 key 由内容摘要生成，同一个 key 的内容永远不变，因此强 ETag 只由 key 和返回格式决定，
+ * 不需要读取存储；客户端带着匹配的 If-None-Match 重新打开链接时直接返回 304，不读存储也不渲染模板。
+ * 同一个 key 的 HTML、JSON、纯文本（以及 gzip 后的纯文本）字节不同，各自使用不同的 ETag；
+ * 分页的表示再带上页码和每页条数。
+ * <p>
+ * 可追加的结果（回复后还会合并迟到数据源的结果）内容会变化：ETag 再带上版本号，
+ * 并使用 no-cache 让客户端每次都重新验证，版本没变时仍然是 304。可追加的 key 在发出链接前就已登记，
+ * 不带版本号的 ETag 只会发给不可追加的结果，因此匹配它的请求仍然不需要查询版本。
+ */
+final class ResultCacheHeaders {
+
+    /** 页面模板或接口格式变化时递增，使客户端按旧 ETag 重新验证时拿到新内容 */
+    private static final String FORMAT_VERSION = "3";
+
+    static final String HTML = "html";
+    static final String JSON = "json";
+    static final String TEXT = "text";
+    static final String TEXT_GZIP = "text-gzip";
+
+    private ResultCacheHeaders() {
+    }
+
+    static String etag(String key, String representation) {
+        return "\"" + key + "-" + representation + "-" + FORMAT_VERSION + "\"";
+    }
+
+    /**
+     * 可追加结果的 ETag 带上版本号；version 为 null 表示内容不再变化
+     */
+    static String etag(String key, Integer version, String representation) {
+        return version == null ? etag(key, representation) : etag(key, representation + "-v" + version);
+    }
+
+    /**
+     * 分页表示，例如 html-p2-s20
+     */
+    static String paged(String representation, int page, int size) {
+        return representation + "-p" + page + "-s" + size;
+    }
+
+    /**
+     * If-None-Match 是否包含当前 ETag（按弱比较，忽略 W/ 前缀）
+     */
+    static boolean notModified(HttpServletRequest request, String etag) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * ETag、Cache-Control 和 Vary；结果链接在存储有效期内都可以直接使用缓存
+     */
+    static HttpHeaders headers(String etag, ApiConfig apiConfig) {
+        return headers(etag, apiConfig, false);
+    }
+
+    /**
+     * 可追加的结果每次都重新验证
+     */
+    static HttpHeaders headers(String etag, ApiConfig apiConfig, boolean appendable) {
+        ApiConfig.StorageConfig storage = apiConfig.getStorage() != null
+                ? apiConfig.getStorage() : new ApiConfig.StorageConfig();
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(etag);
+        headers.setCacheControl(appendable ? CacheControl.noCache().cachePublic()
+                : CacheControl.maxAge(storage.getTtlMinutes(), TimeUnit.MINUTES).cachePublic());
+        headers.set(HttpHeaders.VARY, HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING);
+        return headers;
+    }
+
+    static void apply(HttpHeaders headers, HttpServletResponse response) {
+        headers.forEach((name, values) -> response.setHeader(name, String.join(", ", values)));
+    }
+}
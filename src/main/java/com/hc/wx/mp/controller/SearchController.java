@@ -1,11 +1,18 @@
 package com.hc.wx.mp.controller;
 
-import com.hc.wx.mp.service.ResultStorageService;
+import com.hc.wx.mp.config.ApiConfig;
+import com.hc.wx.mp.service.ResultPageService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
-import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.ModelAndView;
+
+import javax.servlet.http.HttpServletRequest;
 
 /**
  * 搜索结果控制器
@@ -15,25 +22,53 @@ import org.springframework.web.bind.annotation.PathVariable;
 @RequiredArgsConstructor
 public class SearchController {
     
-    private final ResultStorageService resultStorageService;
+    private final ResultPageService resultPageService;
+    private final ApiConfig apiConfig;
     
     /**
-     * 显示查询结果页面
+     * 分页显示查询结果页面；Accept: text/plain 的请求返回压缩好的完整文本
+     * <p>
+     * 结果页是预渲染并压缩好的静态字节（见 {@link ResultPageService}），每页单独渲染和缓存；
+     * 结果不可变（可追加的结果按版本），带匹配 If-None-Match 的请求直接返回 304，不读取存储也不渲染模板
      * 
      * @param key 结果唯一标识符
-     * @param model 模型对象
-     * @return 视图名称
+     * @param page 页码，从 1 开始，默认第 1 页
+     * @param size 每页条数，默认 20，最多 100
+     * @param webRequest 当前请求，用于判断 Accept、Accept-Encoding、If-None-Match 以及写缓存响应头
+     * @return 视图及模型，返回 304 时为 null
      */
     @GetMapping("/result/{key}")
-    public String showResult(@PathVariable String key, Model model) {
-        String content = resultStorageService.getResult(key);
-        if (content == null) {
-            model.addAttribute("error", "结果不存在或已过期");
-            return "error";
+    public ModelAndView showResult(@PathVariable String key,
+                                   @RequestParam(required = false) Integer page,
+                                   @RequestParam(required = false) Integer size,
+                                   ServletWebRequest webRequest) {
+        HttpServletRequest request = webRequest.getRequest();
+        boolean plainText = CompressedResults.wantsPlainText(request);
+        int pageNo = ResultPageService.normalizePage(page);
+        int pageSize = ResultPageService.normalizeSize(size);
+        String representation = !plainText ? ResultCacheHeaders.paged(ResultCacheHeaders.HTML, pageNo, pageSize)
+                : CompressedResults.acceptsGzip(request) ? ResultCacheHeaders.TEXT_GZIP : ResultCacheHeaders.TEXT;
+        // 不带版本号的 ETag 只发给不可追加的结果，匹配时不需要再查版本
+        String etag = ResultCacheHeaders.etag(key, representation);
+        Integer version = ResultCacheHeaders.notModified(request, etag) ? null : resultPageService.getVersion(key);
+        if (version != null) {
+            etag = ResultCacheHeaders.etag(key, version, representation);
+        }
+        HttpHeaders cacheHeaders = ResultCacheHeaders.headers(etag, apiConfig, version != null);
+        if (ResultCacheHeaders.notModified(request, etag)) {
+            webRequest.getResponse().setStatus(HttpStatus.NOT_MODIFIED.value());
+            ResultCacheHeaders.apply(cacheHeaders, webRequest.getResponse());
+            return null;
+        }
+
+        byte[] gzipped = plainText
+                ? resultPageService.getCompressedText(key) : resultPageService.getCompressedPage(key, pageNo, pageSize);
+        if (gzipped == null) {
+            return new ModelAndView("error").addObject("error", "结果不存在或已过期");
         }
 
-        model.addAttribute("content", content);
-        model.addAttribute("key", key);
-        return "search_result";
+        ResultCacheHeaders.apply(cacheHeaders, webRequest.getResponse());
+        return new ModelAndView(CompressedResults.view(gzipped,
+                plainText ? CompressedResults.TEXT_UTF8 : CompressedResults.HTML_UTF8));
     }
 }
@@ -1,5 +1,8 @@
 package com.hc.wx.mp.controller;
 
+import com.hc.wx.mp.concurrent.Deadline;
+import com.hc.wx.mp.config.ApiConfig;
+import com.hc.wx.mp.handler.WxRetryDeduplicator;
 import lombok.AllArgsConstructor;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -18,6 +21,7 @@ import me.chanjar.weixin.mp.bean.message.WxMpXmlMessage;
 import me.chanjar.weixin.mp.bean.message.WxMpXmlOutMessage;
 
 import java.util.HashMap;
+import java.util.Map;
 
 /**
  * @author <a href="https://github.com/binarywang">Binary Wang</a>
@@ -29,6 +33,8 @@ import java.util.HashMap;
 public class WxPortalController {
     private final WxMpService wxService;
     private final WxMpMessageRouter messageRouter;
+    private final ApiConfig apiConfig;
+    private final WxRetryDeduplicator retryDeduplicator;
 
     @GetMapping(produces = "text/plain;charset=utf-8")
     public String authGet(@PathVariable String appid,
@@ -63,6 +69,8 @@ public class WxPortalController {
                        @RequestParam("openid") String openid,
                        @RequestParam(name = "encrypt_type", required = false) String encType,
                        @RequestParam(name = "msg_signature", required = false) String msgSignature) {
+        // 微信服务器5秒内收不到回复就会断开重试，从收到请求这一刻开始计时
+        Deadline deadline = Deadline.after(apiConfig.getDeadline().getWxReplyBudgetMillis());
         log.info("\n接收微信请求：[openid=[{}], [signature=[{}], encType=[{}], msgSignature=[{}],"
                         + " timestamp=[{}], nonce=[{}], requestBody=[\n{}\n] ",
                 openid, signature, encType, msgSignature, timestamp, nonce, requestBody);
@@ -76,7 +84,7 @@ public class WxPortalController {
         }
 
         WxMpXmlMessage inMessage = WxMpXmlMessage.fromXml(requestBody);
-        WxMpXmlOutMessage outMessage = this.route(inMessage);
+        WxMpXmlOutMessage outMessage = this.route(inMessage, deadline);
         if (outMessage == null) {
             return null;
         }
@@ -86,9 +94,12 @@ public class WxPortalController {
         return out;
     }
 
-    private WxMpXmlOutMessage route(WxMpXmlMessage message) {
+    private WxMpXmlOutMessage route(WxMpXmlMessage message, Deadline deadline) {
         try {
-            return this.messageRouter.route(message);
+            Map<String, Object> context = new HashMap<>();
+            context.put(Deadline.CONTEXT_KEY, deadline);
+            // 微信超时重试的同一条消息不再重新处理，等待并返回第一次处理的回复
+            return this.retryDeduplicator.handle(message, deadline, () -> this.messageRouter.route(message, context));
         } catch (Exception e) {
             log.error("路由消息时出现异常！", e);
         }
@@ -0,0 +1,58 @@
+package com.hc.wx.mp.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 一条搜索结果：一个网盘链接及其附带信息
+ * <p>
+ * 各数据源的响应在 {@link com.hc.wx.mp.service.SearchService} 中解析成这个结构，
+ * 之后的缓存、合并、存储和分页都基于结构化数据，只在展示时才格式化成文本。
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchResultItem {
+
+    public static final String SOURCE_KKQWS = "kkqws";
+    public static final String SOURCE_MAKIFX = "makifx";
+
+    /** 数据源：kkqws、makifx */
+    private String source;
+    /** 网盘平台：quark、baidu、aliyun、xunlei、other */
+    private String platform;
+    /** 资源标题，数据源没有提供时为 null */
+    private String title;
+    /** 资源链接；数据源只返回了文本时为 null，文本放在 note 中 */
+    private String url;
+    /** 提取码 */
+    private String password;
+    /** 备注 */
+    private String note;
+    /** 数据源给出的发布时间，原样保留 */
+    private String timestamp;
+
+    /**
+     * 根据链接域名判断网盘平台
+     */
+    public static String platformOf(String url) {
+        if (url == null) {
+            return "other";
+        }
+        String lower = url.toLowerCase();
+        if (lower.contains("quark.cn")) {
+            return "quark";
+        }
+        if (lower.contains("baidu.com")) {
+            return "baidu";
+        }
+        if (lower.contains("aliyundrive.com") || lower.contains("alipan.com")) {
+            return "aliyun";
+        }
+        if (lower.contains("xunlei.com")) {
+            return "xunlei";
+        }
+        return "other";
+    }
+}
@@ -0,0 +1,133 @@
+package com.hc.wx.mp.entity;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 一次搜索的完整结果：关键词和合并后的结果项
+ * <p>
+ * 微信回复存储的就是这个结构（JSON），结果页和结果接口按页读取其中的条目，
+ * 不必每次都把全部结果格式化、传输一遍。
+ * <p>
+ * 回复时仍在搜索的数据源记在 pendingSources 中，完成后通过 {@link #append} 把结果追加到末尾，
+ * 每次追加 version 加一；条目只追加不修改，客户端按已有条目数即可取到新增的部分。
+ */
+@Data
+@NoArgsConstructor
+public class SearchResultSet {
+
+    /** 存储格式标识，序列化时排在第一个字段，用于和旧的纯文本结果区分 */
+    public static final String FORMAT = "result-set/1";
+
+    private String format = FORMAT;
+    private String keyword;
+    /** 是否只包含部分数据源的结果（整体搜索超时或异常后的降级结果） */
+    private boolean partial;
+    /** 追加的次数，存入时为 0 */
+    private int version;
+    /** 回复时尚未完成、完成后会追加结果的数据源 */
+    private List<String> pendingSources = new ArrayList<>();
+    private List<SearchResultItem> items = new ArrayList<>();
+
+    public SearchResultSet(String keyword, List<SearchResultItem> items) {
+        this.keyword = keyword;
+        this.items = items != null ? items : new ArrayList<>();
+    }
+
+    /**
+     * 是否还有数据源会追加结果
+     */
+    public boolean isPending() {
+        return pendingSources != null && !pendingSources.isEmpty();
+    }
+
+    /**
+     * 追加一个迟到数据源的结果：跳过已有链接，该数据源不再是待完成状态，全部完成后不再是部分结果
+     *
+     * @return 是否有变化（新增了条目或数据源状态变化），有变化时 version 加一
+     */
+    public boolean append(String source, List<SearchResultItem> newItems) {
+        if (items == null) {
+            items = new ArrayList<>();
+        }
+        Set<String> urls = new HashSet<>();
+        for (SearchResultItem item : items) {
+            if (item.getUrl() != null) {
+                urls.add(item.getUrl());
+            }
+        }
+        int added = 0;
+        if (newItems != null) {
+            for (SearchResultItem item : newItems) {
+                if (item.getUrl() == null ? !items.contains(item) : urls.add(item.getUrl())) {
+                    items.add(item);
+                    added++;
+                }
+            }
+        }
+        boolean wasPending = pendingSources != null && pendingSources.remove(source);
+        if (added == 0 && !wasPending) {
+            return false;
+        }
+        partial = isPending();
+        version++;
+        return true;
+    }
+
+    /**
+     * 第 offset 条之后的条目（客户端已有 offset 条）
+     */
+    public List<SearchResultItem> itemsAfter(int offset) {
+        int total = size(items);
+        int from = Math.max(0, Math.min(offset, total));
+        return from < total ? new ArrayList<>(items.subList(from, total)) : new ArrayList<>();
+    }
+
+    public boolean isEmpty() {
+        return items == null || items.isEmpty();
+    }
+
+    /**
+     * 结果中出现的数据源，按首次出现的顺序
+     */
+    public List<String> getSources() {
+        if (items == null) {
+            return Collections.emptyList();
+        }
+        Set<String> sources = new LinkedHashSet<>();
+        for (SearchResultItem item : items) {
+            sources.add(item.getSource());
+        }
+        return new ArrayList<>(sources);
+    }
+
+    public int getTotalPages(int size) {
+        return Math.max(1, (size(items) + size - 1) / size);
+    }
+
+    /**
+     * 第 page 页（从 1 开始）的结果，超出范围的页码返回空列表
+     */
+    public SearchResultSet page(int page, int size) {
+        int total = size(items);
+        int from = (int) Math.min((long) Math.max(page - 1, 0) * size, total);
+        int to = (int) Math.min((long) from + size, total);
+        SearchResultSet result = new SearchResultSet(keyword,
+                from < to ? new ArrayList<>(items.subList(from, to)) : new ArrayList<>());
+        result.setPartial(partial);
+        result.setVersion(version);
+        result.setPendingSources(pendingSources != null ? new ArrayList<>(pendingSources) : new ArrayList<>());
+        return result;
+    }
+
+    private static int size(List<SearchResultItem> items) {
+        return items == null ? 0 : items.size();
+    }
+}
@@ -1,12 +1,22 @@
 package com.hc.wx.mp.handler;
 
 import com.hc.wx.mp.builder.TextBuilder;
+import com.hc.wx.mp.concurrent.CancellationToken;
+import com.hc.wx.mp.concurrent.Deadline;
+import com.hc.wx.mp.concurrent.SearchExecutors;
+import com.hc.wx.mp.config.ApiConfig;
+import com.hc.wx.mp.entity.SearchResultItem;
+import com.hc.wx.mp.entity.SearchResultSet;
+import com.hc.wx.mp.service.AsyncReplyService;
 import com.hc.wx.mp.service.LotteryService;
+import com.hc.wx.mp.service.SearchResultFormatter;
 import com.hc.wx.mp.service.SearchService;
 import com.hc.wx.mp.service.ResultStorageService;
 import com.hc.wx.mp.service.UrlService;
+import com.hc.wx.mp.utils.KeywordNormalizer;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.apache.commons.lang3.StringUtils;
 import me.chanjar.weixin.common.session.WxSessionManager;
 import me.chanjar.weixin.mp.api.WxMpService;
 import me.chanjar.weixin.mp.bean.message.WxMpXmlMessage;
@@ -15,7 +25,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
@@ -36,6 +49,9 @@ public class MsgHandler extends AbstractHandler {
     private static final int MAX_CONTENT_LENGTH = 100;
     private static final List<String> LOTTERY_KEYWORDS = Arrays.asList("彩票", "双色球", "开奖");
     private static final Pattern LOTTERY_ISSUE_PATTERN = Pattern.compile("^\\d{7}$");
+    private static final String NO_RESULT_MESSAGE = "🔍 未找到相关内容，请尝试其他关键词";
+    /** 搜索超时后等待恰好在截止时间完成的数据源的宽限(毫秒)，从回复预留时间中扣除 */
+    private static final long HARVEST_GRACE_MILLIS = 100;
 
     // ================================ 依赖注入 ================================
     @Autowired
@@ -51,6 +67,15 @@ public class MsgHandler extends AbstractHandler {
     @Autowired
     private UrlService urlService;
 
+    @Autowired
+    private ApiConfig apiConfig;
+
+    @Autowired
+    private AsyncReplyService asyncReplyService;
+
+    @Autowired
+    private SearchExecutors searchExecutors;
+
     @Override
     public WxMpXmlOutMessage handle(WxMpXmlMessage wxMessage,
                                     Map<String, Object> context, WxMpService weixinService,
@@ -60,6 +85,9 @@ public class MsgHandler extends AbstractHandler {
             //TODO 可以选择将消息保存到本地
         }
 
+        // 截止时间由 WxPortalController 在收到请求时创建，经路由上下文传入
+        Deadline deadline = Deadline.fromContext(context, apiConfig.getDeadline().getWxReplyBudgetMillis());
+
         String content = validateAndPreprocessContent(wxMessage.getContent());
         if (content == null) {
             return buildErrorResponse("请输入有效的搜索内容", wxMessage, weixinService);
@@ -75,7 +103,7 @@ public class MsgHandler extends AbstractHandler {
         }
 
         // 处理搜索请求
-        return handleSearchRequest(content, fromUser, wxMessage, weixinService);
+        return handleSearchRequest(content, fromUser, wxMessage, weixinService, deadline);
     }
 
     // ================================ 输入验证方法 ================================
@@ -85,7 +113,8 @@ public class MsgHandler extends AbstractHandler {
             return null;
         }
         
-        content = content.trim();
+        // 全角转半角，彩票号码等格式仍然保留；搜索关键词的完整规范化在 SearchService 入口进行
+        content = KeywordNormalizer.foldWidth(content);
         
         if (content.length() > MAX_CONTENT_LENGTH) {
             return null;
@@ -178,34 +207,42 @@ public class MsgHandler extends AbstractHandler {
     // ================================ 搜索处理方法 ================================
 
     private WxMpXmlOutMessage handleSearchRequest(String content, String fromUser,
-                                                  WxMpXmlMessage wxMessage, WxMpService weixinService) {
+                                                  WxMpXmlMessage wxMessage, WxMpService weixinService,
+                                                  Deadline deadline) {
         // 检查是否是调试命令
         if (content.startsWith("debug:")) {
             return handleDebugCommand(content, fromUser, wxMessage, weixinService);
         }
         
+        // 只有标点、表情之类的内容，规范化后为空，不发起搜索
+        if (KeywordNormalizer.normalize(content).isEmpty()) {
+            return buildErrorResponse("请输入有效的搜索内容", wxMessage, weixinService);
+        }
+
+        // 异步回复：立即回复确认，搜索在后台完成后通过客服消息推送；后台排满时继续走同步回复
+        if (asyncReplyService.isEnabled()) {
+            ApiConfig.AsyncReplyConfig asyncConfig = apiConfig.getAsyncReply();
+            boolean accepted = asyncReplyService.submit(WxRetryDeduplicator.messageId(wxMessage), fromUser, weixinService,
+                    () -> searchAndBuildReply(content, fromUser, Deadline.after(asyncConfig.getSearchBudgetMillis())));
+            if (accepted) {
+                logger.info("搜索请求已转入后台处理，用户: {}, 查询内容: {}", fromUser, content);
+                return StringUtils.isBlank(asyncConfig.getAckMessage()) ? null
+                        : new TextBuilder().build(asyncConfig.getAckMessage(), wxMessage, weixinService);
+            }
+        }
+
         // 记录方法开始执行时间
         long methodStartTime = System.currentTimeMillis();
         logger.info("开始处理搜索请求，用户: {}, 查询内容: {}", fromUser, content);
         
         try {
-            // 使用多线程并发搜索多个数据源，提升响应速度
-            String mergedResult = performConcurrentSearch(content, fromUser);
-            logger.info("合并搜索结果:"+mergedResult);
-            if (mergedResult == null || mergedResult.length() < 1) {
-                String noResultMessage = "🔍 未找到相关内容，请尝试其他关键词";
-                long methodExecutionTime = System.currentTimeMillis() - methodStartTime;
-                logger.info("搜索无结果，用户: {}, 总执行时间: {:.2f} 秒", fromUser, methodExecutionTime / 1000.0);
-                return new TextBuilder().build(noResultMessage, wxMessage, weixinService);
-            }
-            
-            WxMpXmlOutMessage response = generateSearchResponse(mergedResult, fromUser, wxMessage, weixinService);
+            String reply = searchAndBuildReply(content, fromUser, deadline);
             
             // 记录方法总执行时间
             long methodExecutionTime = System.currentTimeMillis() - methodStartTime;
             logger.info("搜索请求处理完成，用户: {}, 方法总执行时间: {:.2f} 秒", fromUser, methodExecutionTime / 1000.0);
             
-            return response;
+            return new TextBuilder().build(reply, wxMessage, weixinService);
             
         } catch (Exception e) {
             long methodExecutionTime = System.currentTimeMillis() - methodStartTime;
@@ -215,198 +252,269 @@ public class MsgHandler extends AbstractHandler {
         }
     }
 
+    /**
+     * 搜索、存储结果并生成回复文本，同步回复和异步推送共用
+     */
+    private String searchAndBuildReply(String content, String fromUser, Deadline deadline) {
+        // 使用多线程并发搜索多个数据源，提升响应速度；截止时未完成的数据源完成后追加到结果链接
+        Map<String, java.util.concurrent.CompletableFuture<List<SearchResultItem>>> pending = new LinkedHashMap<>();
+        SearchResultSet resultSet = performConcurrentSearchResults(content, fromUser, deadline, pending);
+        logger.info("合并搜索结果，用户: {}, 数据源: {}, 结果数: {}", fromUser, resultSet.getSources(), resultSet.getItems().size());
+        if (resultSet.isEmpty() && pending.isEmpty()) {
+            logger.info("搜索无结果，用户: {}, 查询内容: {}", fromUser, content);
+            return NO_RESULT_MESSAGE;
+        }
+        return generateSearchResponse(resultSet, fromUser, pending);
+    }
+
+    /**
+     * 数据源完成后把结果追加到已存储的结果中
+     */
+    private void appendLateResults(String resultKey,
+                                   Map<String, java.util.concurrent.CompletableFuture<List<SearchResultItem>>> pending) {
+        pending.forEach((source, future) -> future.thenAcceptAsync(items -> {
+            try {
+                resultStorageService.appendResultItems(resultKey, source, items);
+            } catch (Exception e) {
+                logger.warn("追加迟到的搜索结果失败，key: {}, 数据源: {}, 错误: {}", resultKey, source, e.getMessage());
+            }
+        }, searchExecutors.cpu()));
+    }
+
     /**
      * 执行并发搜索，整合多个数据源的结果
      * 优化多线程处理，减少总执行时间
      */
     public String performConcurrentSearch(String content, String fromUser) {
-        logger.info("开始并发搜索，用户: {}, 查询内容: {}", fromUser, content);
+        return performConcurrentSearch(content, fromUser,
+                Deadline.after(apiConfig.getDeadline().getWxReplyBudgetMillis()));
+    }
+
+    /**
+     * 在截止时间内执行并发搜索，返回格式化后的文本
+     */
+    public String performConcurrentSearch(String content, String fromUser, Deadline deadline) {
+        return SearchResultFormatter.format(performConcurrentSearchResults(content, fromUser, deadline));
+    }
+
+    /**
+     * 在截止时间内执行并发搜索：预留存储结果和组装回复的时间，其余全部作为搜索预算
+     */
+    public SearchResultSet performConcurrentSearchResults(String content, String fromUser, Deadline deadline) {
+        return performConcurrentSearchResults(content, fromUser, deadline, null);
+    }
+
+    /**
+     * 在截止时间内执行并发搜索
+     *
+     * @param pending 不为 null 时，截止时仍未完成的数据源不会被放弃：各数据源按延迟结果预算继续搜索，
+     *                未完成的 future 按数据源放入 pending，由调用方在完成后追加到已存储的结果
+     */
+    SearchResultSet performConcurrentSearchResults(String content, String fromUser, Deadline deadline,
+                                                   Map<String, java.util.concurrent.CompletableFuture<List<SearchResultItem>>> pending) {
+        Deadline searchDeadline = deadline.reserve(apiConfig.getDeadline().getReplyReserveMillis());
+        long lateBudget = apiConfig.getDeadline().getLateResultBudgetMillis();
+        if (lateBudget <= 0) {
+            pending = null;
+        }
+        // 数据源自身的截止时间：需要追加迟到结果时延长到延迟结果预算，回复仍只等到搜索截止时间；
+        // KKQWS 的汇聚同样只等到搜索截止时间，届时仍未返回的数据源单独继续，结果通过 kkqwsLateItems 追加
+        Deadline sourceDeadline = pending != null && lateBudget > searchDeadline.remainingMillis()
+                ? Deadline.after(lateBudget) : searchDeadline;
+        logger.info("开始并发搜索，用户: {}, 查询内容: {}, 搜索预算: {}ms, 数据源预算: {}ms", fromUser, content,
+                searchDeadline.remainingMillis(), sourceDeadline.remainingMillis());
         long startTime = System.currentTimeMillis();
+        // 各数据源正在进行的搜索，超时或异常时从这里收集已经产出的结果
+        java.util.concurrent.CompletableFuture<List<SearchResultItem>> kkqwsSearchFuture = null;
+        java.util.concurrent.CompletableFuture<List<SearchResultItem>> makifxSearchFuture = null;
+        java.util.concurrent.CompletableFuture<List<SearchResultItem>> kkqwsLateItems =
+                new java.util.concurrent.CompletableFuture<>();
+        // 不再等待 Makifx 时用来中止它的请求，释放连接和主机许可
+        CancellationToken makifxCancellation = new CancellationToken();
         
         try {
             // 记录各个搜索任务的开始时间
             long kkqwsStartTime = System.currentTimeMillis();
-            long makifxStartTime = System.currentTimeMillis();
             
             // 使用 CompletableFuture 并发执行两个搜索任务
-            java.util.concurrent.CompletableFuture<String> kkqwsSearchFuture = 
-                java.util.concurrent.CompletableFuture.supplyAsync(() -> {
-                    try {
-                        long taskStart = System.currentTimeMillis();
-                        String result = searchService.searchAndMergeRaw(content);
-                        long taskDuration = System.currentTimeMillis() - taskStart;
-                        logger.info("KKQWS搜索任务完成，用户: {}, 执行时间: {:.2f} 秒", fromUser, taskDuration / 1000.0);
-                        return result;
-                    } catch (Exception e) {
+            // KKQWS 搜索本身是异步汇聚的，无需再占用一个线程等待
+            kkqwsSearchFuture = 
+                searchService.searchItemsAsync(content, searchDeadline, sourceDeadline, kkqwsLateItems).handle((items, e) -> {
+                    if (e != null) {
                         logger.warn("KKQWS搜索异常，用户: {}, 错误: {}", fromUser, e.getMessage());
-                        return "";
+                        return Collections.<SearchResultItem>emptyList();
                     }
+                    long taskDuration = System.currentTimeMillis() - kkqwsStartTime;
+                    logger.info("KKQWS搜索任务完成，用户: {}, 执行时间: {:.2f} 秒", fromUser, taskDuration / 1000.0);
+                    return items;
                 });
             
-            java.util.concurrent.CompletableFuture<String> makifxSearchFuture = 
-                java.util.concurrent.CompletableFuture.supplyAsync(() -> {
+            // Makifx 搜索会阻塞等待上游，放到阻塞 I/O 线程池，不占用 ForkJoinPool.commonPool
+            makifxSearchFuture = 
+                supplyOnIoPool(() -> {
                     try {
                         long taskStart = System.currentTimeMillis();
                         // 详细记录传递给searchMakifx的参数
                         logger.info("调用searchMakifx，用户: {}, 传入参数: [{}], 字符长度: {}, 字符编码检查: {}", 
                                    fromUser, content, content.length(), java.util.Arrays.toString(content.toCharArray()));
                         
-                        String result = searchService.searchMakifx(content);
-                        logger.info("Makifx搜索任务完成，用户: {}, 执行结果:{}",fromUser, result);
+                        List<SearchResultItem> items = searchService.searchMakifxItems(content, sourceDeadline,
+                                makifxCancellation);
                         long taskDuration = System.currentTimeMillis() - taskStart;
-                        logger.info("Makifx搜索任务完成，用户: {}, 执行时间: {:.2f} 秒", fromUser, taskDuration / 1000.0);
-                        return result;
+                        logger.info("Makifx搜索任务完成，用户: {}, 结果数: {}, 执行时间: {:.2f} 秒",
+                                   fromUser, items.size(), taskDuration / 1000.0);
+                        return items;
                     } catch (Exception e) {
                         logger.warn("Makifx搜索异常，用户: {}, 错误: {}", fromUser, e.getMessage());
-                        return "";
+                        return Collections.<SearchResultItem>emptyList();
                     }
-                });
+                }, fromUser);
             
-            // 等待所有搜索任务完成，设置5秒超时
+            // 等待所有搜索任务完成，最多等到搜索截止时间
             java.util.concurrent.CompletableFuture<Void> allSearches = 
                 java.util.concurrent.CompletableFuture.allOf(kkqwsSearchFuture, makifxSearchFuture);
             
-            allSearches.get(5, java.util.concurrent.TimeUnit.SECONDS);
+            allSearches.get(searchDeadline.remainingMillis(), java.util.concurrent.TimeUnit.MILLISECONDS);
             
-            // 获取搜索结果
-            String kkqwsResult = kkqwsSearchFuture.get();
-            String makifxResult = makifxSearchFuture.get();
-            
-            // 记录结果合并开始时间
-            long mergeStartTime = System.currentTimeMillis();
-            String mergedResult = mergeSearchResults(kkqwsResult, makifxResult, content);
-            long mergeDuration = System.currentTimeMillis() - mergeStartTime;
+            // 合并搜索结果
+            SearchResultSet resultSet = mergeSearchResults(kkqwsSearchFuture.get(), makifxSearchFuture.get(), content);
+            if (pending != null) {
+                addPending(pending, resultSet, SearchResultItem.SOURCE_KKQWS, kkqwsLateItems);
+                resultSet.setPartial(resultSet.isPending());
+            }
             
             long totalExecutionTime = System.currentTimeMillis() - startTime;
-            logger.info("并发搜索完成统计 - 用户: {}, 总执行时间: {:.2f} 秒, 结果合并耗时: {:.2f} 秒, 最终结果长度: {} 字符", 
-                       fromUser, totalExecutionTime / 1000.0, mergeDuration / 1000.0, mergedResult.length());
+            logger.info("并发搜索完成统计 - 用户: {}, 总执行时间: {:.2f} 秒, 结果数: {}", 
+                       fromUser, totalExecutionTime / 1000.0, resultSet.getItems().size());
             
-            return mergedResult;
+            return resultSet;
             
         } catch (java.util.concurrent.TimeoutException e) {
             long timeoutDuration = System.currentTimeMillis() - startTime;
             logger.warn("搜索超时，用户: {}, 内容: {}, 超时时间: {:.2f} 秒", fromUser, content, timeoutDuration / 1000.0);
-            // 超时情况下尝试获取已完成的结果
-            return getPartialResults(content, fromUser);
+            // 超时情况下收集各数据源已经产出的结果，刚好在截止时间完成的汇聚再给一点宽限
+            return harvestPartialResults(content, fromUser, Deadline.after(deadline.cap(HARVEST_GRACE_MILLIS)),
+                    kkqwsSearchFuture, kkqwsLateItems, makifxSearchFuture, makifxCancellation, pending);
         } catch (Exception e) {
             long errorDuration = System.currentTimeMillis() - startTime;
             logger.error("并发搜索异常，用户: {}, 内容: {}, 执行时间: {:.2f} 秒", fromUser, content, errorDuration / 1000.0, e);
-            // 异常情况下降级到单个搜索
-            return fallbackSingleSearch(content, fromUser);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            // 异常情况下同样只收集已完成的结果，不再重新搜索
+            return harvestPartialResults(content, fromUser, Deadline.after(0), kkqwsSearchFuture, kkqwsLateItems,
+                    makifxSearchFuture, makifxCancellation, pending);
         }
     }
     
     /**
-     * 合并多个数据源的搜索结果
+     * 在阻塞 I/O 线程池执行搜索；线程池排满时该数据源直接返回空结果，不阻塞请求线程
      */
-    private String mergeSearchResults(String kkqwsResult, String makifxResult, String keyword) {
-        long mergeStartTime = System.currentTimeMillis();
-        logger.info("开始合并搜索结果，关键词: {}", keyword);
-        
-        StringBuilder mergedResult = new StringBuilder();
-        
-        // 添加搜索结果头部信息
-        mergedResult.append("🔍 搜索关键词: ").append(keyword).append("\n\n");
-        
-        boolean hasKkqwsResult = kkqwsResult != null && !kkqwsResult.trim().isEmpty() 
-                                && !kkqwsResult.contains("未找到相关内容");
-        boolean hasMakifxResult = makifxResult != null && !makifxResult.trim().isEmpty() 
-                                 && !makifxResult.contains("未找到相关资源");
-        
-        // 添加 KKQWS 搜索结果
-        if (hasKkqwsResult) {
-            mergedResult.append("📚 KKQWS 搜索结果\n")
-                       .append("═══════════════════════════════\n")
-                       .append(kkqwsResult.trim())
-                       .append("\n\n");
+    private java.util.concurrent.CompletableFuture<List<SearchResultItem>> supplyOnIoPool(
+            java.util.function.Supplier<List<SearchResultItem>> search, String fromUser) {
+        try {
+            return java.util.concurrent.CompletableFuture.supplyAsync(search, searchExecutors.io());
+        } catch (java.util.concurrent.RejectedExecutionException e) {
+            logger.warn("搜索I/O线程池已满，跳过Makifx搜索，用户: {}", fromUser);
+            return java.util.concurrent.CompletableFuture.completedFuture(Collections.emptyList());
         }
-        
-        // 添加 Makifx 搜索结果
-        if (hasMakifxResult) {
-            mergedResult.append("🎬 Makifx 影视资源\n")
-                       .append("═══════════════════════════════\n")
-                       .append(makifxResult.trim())
-                       .append("\n\n");
+    }
+
+    /**
+     * 合并多个数据源的搜索结果，KKQWS 在前、Makifx 在后
+     */
+    private SearchResultSet mergeSearchResults(List<SearchResultItem> kkqwsItems, List<SearchResultItem> makifxItems,
+                                               String keyword) {
+        List<SearchResultItem> items = new ArrayList<>(kkqwsItems.size() + makifxItems.size());
+        items.addAll(kkqwsItems);
+        items.addAll(makifxItems);
+        logger.info("搜索结果合并完成 - 关键词: {}, KKQWS: {} 条, Makifx: {} 条", 
+                   keyword, kkqwsItems.size(), makifxItems.size());
+        return new SearchResultSet(keyword, items);
+    }
+    
+    /**
+     * 收集各数据源已经产出的结果（超时或异常情况）
+     * 只读取正在进行的搜索，不发起任何新的请求；未完成的数据源按空结果处理，仍在后台继续并写入缓存，
+     * pending 不为 null 时放入其中（KKQWS 连同汇聚截止后才返回的数据源），完成后追加到已存储的结果；
+     * 不追加时取消仍在进行的 Makifx 请求。
+     * 有数据源未完成时结果标记为部分结果
+     */
+    private SearchResultSet harvestPartialResults(String content, String fromUser, Deadline grace,
+                                                  java.util.concurrent.CompletableFuture<List<SearchResultItem>> kkqwsFuture,
+                                                  java.util.concurrent.CompletableFuture<List<SearchResultItem>> kkqwsLateItems,
+                                                  java.util.concurrent.CompletableFuture<List<SearchResultItem>> makifxFuture,
+                                                  CancellationToken makifxCancellation,
+                                                  Map<String, java.util.concurrent.CompletableFuture<List<SearchResultItem>>> pending) {
+        List<SearchResultItem> kkqwsItems = harvest(kkqwsFuture, grace);
+        List<SearchResultItem> makifxItems = harvest(makifxFuture, grace);
+        SearchResultSet resultSet = mergeSearchResults(
+                kkqwsItems != null ? kkqwsItems : Collections.emptyList(),
+                makifxItems != null ? makifxItems : Collections.emptyList(), content);
+        resultSet.setPartial(kkqwsItems == null || makifxItems == null);
+        if (pending != null) {
+            addPending(pending, resultSet, SearchResultItem.SOURCE_KKQWS, kkqwsItems != null ? kkqwsLateItems
+                    : kkqwsFuture == null ? null : kkqwsFuture.thenCombine(kkqwsLateItems, MsgHandler::concat));
+            addPending(pending, resultSet, SearchResultItem.SOURCE_MAKIFX, makifxItems != null ? null : makifxFuture);
+            resultSet.setPartial(resultSet.isPartial() || resultSet.isPending());
         }
-        
-        // 如果都没有结果
-        if (!hasKkqwsResult && !hasMakifxResult) {
-            long mergeDuration = System.currentTimeMillis() - mergeStartTime;
-            logger.warn("合并结果：无有效数据，关键词: {}, 合并耗时: {:.3f} 秒", keyword, mergeDuration / 1000.0);
-            return "";
+        if (makifxItems == null && (pending == null || !pending.containsKey(SearchResultItem.SOURCE_MAKIFX))) {
+            makifxCancellation.cancel();
         }
-        
-        // 添加结果统计
-        int sourceCount = (hasKkqwsResult ? 1 : 0) + (hasMakifxResult ? 1 : 0);
-        mergedResult.append("\n📊 共整合了 ").append(sourceCount).append(" 个数据源的搜索结果");
-        
-        String finalResult = mergedResult.toString().trim();
-        long mergeDuration = System.currentTimeMillis() - mergeStartTime;
-        
-        logger.info("搜索结果合并完成 - 关键词: {}, KKQWS: {}, Makifx: {}, 合并耗时: {:.3f} 秒, 最终结果长度: {} 字符", 
-                   keyword, hasKkqwsResult, hasMakifxResult, mergeDuration / 1000.0, finalResult.length());
-        
-        return finalResult;
+        logger.info("收集已完成的搜索结果，用户: {}, KKQWS: {}, Makifx: {}, 结果数: {}, 稍后追加: {}", fromUser,
+                kkqwsItems != null ? "已完成" : "未完成", makifxItems != null ? "已完成" : "未完成",
+                resultSet.getItems().size(), resultSet.getPendingSources());
+        return resultSet;
     }
-    
+
     /**
-     * 获取部分已完成的搜索结果（超时情况）
+     * 数据源仍有结果可能到达时放入 pending；已经确定没有新增结果的不放入
      */
-    private String getPartialResults(String content, String fromUser) {
-        long startTime = System.currentTimeMillis();
-        try {
-            // 优先尝试获取快速的搜索结果
-            String quickResult = searchService.searchMakifx(content);
-            long executionTime = System.currentTimeMillis() - startTime;
-            
-            if (quickResult != null && !quickResult.trim().isEmpty() && !quickResult.contains("未找到")) {
-                logger.info("超时情况下获取到Makifx结果，用户: {}, 执行时间: {:.2f} 秒", fromUser, executionTime / 1000.0);
-                return "⚡ 快速搜索结果\n" + quickResult;
-            }
-            
-            logger.warn("超时情况下未获取到有效结果，用户: {}, 尝试时间: {:.2f} 秒", fromUser, executionTime / 1000.0);
-        } catch (Exception e) {
-            long executionTime = System.currentTimeMillis() - startTime;
-            logger.warn("获取部分结果失败，用户: {}, 执行时间: {:.2f} 秒, 错误: {}", 
-                       fromUser, executionTime / 1000.0, e.getMessage());
+    private static void addPending(Map<String, java.util.concurrent.CompletableFuture<List<SearchResultItem>>> pending,
+                                   SearchResultSet resultSet, String source,
+                                   java.util.concurrent.CompletableFuture<List<SearchResultItem>> future) {
+        if (future == null || (future.isDone() && !future.isCompletedExceptionally() && future.join().isEmpty())) {
+            return;
         }
-        return "";
+        pending.put(source, future);
+        resultSet.getPendingSources().add(source);
     }
-    
+
+    private static List<SearchResultItem> concat(List<SearchResultItem> first, List<SearchResultItem> second) {
+        List<SearchResultItem> items = new ArrayList<>(first.size() + second.size());
+        items.addAll(first);
+        items.addAll(second);
+        return items;
+    }
+
     /**
-     * 降级到单个搜索（异常情况）
+     * 最多等到 grace 截止，返回 future 的结果；未完成或失败时返回 null
      */
-    private String fallbackSingleSearch(String content, String fromUser) {
-        long startTime = System.currentTimeMillis();
+    private static List<SearchResultItem> harvest(java.util.concurrent.CompletableFuture<List<SearchResultItem>> future,
+                                                  Deadline grace) {
+        if (future == null) {
+            return null;
+        }
         try {
-            logger.info("降级执行单个搜索，用户: {}", fromUser);
-            String result = searchService.searchAndMergeRaw(content);
-            long executionTime = System.currentTimeMillis() - startTime;
-            
-            if (result != null && !result.trim().isEmpty()) {
-                logger.info("降级搜索成功，用户: {}, 执行时间: {:.2f} 秒, 结果长度: {} 字符", 
-                           fromUser, executionTime / 1000.0, result.length());
-                return "📝 基础搜索结果\n" + result;
-            }
-            
-            logger.warn("降级搜索无结果，用户: {}, 执行时间: {:.2f} 秒", fromUser, executionTime / 1000.0);
+            return future.get(Math.max(0, grace.remainingMillis()), java.util.concurrent.TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
         } catch (Exception e) {
-            long executionTime = System.currentTimeMillis() - startTime;
-            logger.error("降级搜索也失败，用户: {}, 执行时间: {:.2f} 秒, 错误: {}", 
-                        fromUser, executionTime / 1000.0, e.getMessage());
+            return null;
         }
-        return "";
     }
 
-    private WxMpXmlOutMessage generateSearchResponse(String searchResult, String fromUser,
-                                                     WxMpXmlMessage wxMessage, WxMpService weixinService) {
+    private String generateSearchResponse(SearchResultSet resultSet, String fromUser,
+                                          Map<String, java.util.concurrent.CompletableFuture<List<SearchResultItem>>> pending) {
         long responseStartTime = System.currentTimeMillis();
-        logger.info("开始生成搜索响应，用户: {}, 结果长度: {} 字符", fromUser, searchResult.length());
+        logger.info("开始生成搜索响应，用户: {}, 结果数: {}", fromUser, resultSet.getItems().size());
         
         try {
             // 存储合并后的搜索结果
             long storeStartTime = System.currentTimeMillis();
-            String resultKey = resultStorageService.storeResult(searchResult);
+            String resultKey = resultStorageService.storeResultSet(resultSet);
+            appendLateResults(resultKey, pending);
             long storeDuration = System.currentTimeMillis() - storeStartTime;
             
             // 生成结果链接
@@ -417,7 +525,7 @@ public class MsgHandler extends AbstractHandler {
             
             // 根据结果类型生成不同的响应消息
             long messageStartTime = System.currentTimeMillis();
-            String responseMessage = buildResponseMessage(searchResult, shortUrl);
+            String responseMessage = buildResponseMessage(resultSet, shortUrl);
             long messageDuration = System.currentTimeMillis() - messageStartTime;
             
             long totalResponseTime = System.currentTimeMillis() - responseStartTime;
@@ -426,26 +534,41 @@ public class MsgHandler extends AbstractHandler {
                        fromUser, totalResponseTime / 1000.0, storeDuration / 1000.0, 
                        urlDuration / 1000.0, messageDuration / 1000.0, shortUrl);
             
-            return new TextBuilder().build(responseMessage, wxMessage, weixinService);
+            return responseMessage;
         } catch (Exception e) {
             long errorResponseTime = System.currentTimeMillis() - responseStartTime;
             logger.error("生成结果链接失败，用户: {}, 执行时间: {:.3f} 秒", fromUser, errorResponseTime / 1000.0, e);
-            return new TextBuilder().build("生成结果链接失败，请稍后再试", wxMessage, weixinService);
+            return "生成结果链接失败，请稍后再试";
         }
     }
     
     /**
-     * 根据搜索结果内容构建响应消息
+     * 根据搜索结果包含的数据源构建响应消息
      */
-    private String buildResponseMessage(String searchResult, String shortUrl) {
+    private String buildResponseMessage(SearchResultSet resultSet, String shortUrl) {
         StringBuilder message = new StringBuilder();
         
         // 判断搜索结果类型
-        boolean hasKkqws = searchResult.contains("KKQWS 搜索结果");
-        boolean hasMakifx = searchResult.contains("Makifx 影视资源");
-        boolean isPartial = searchResult.contains("快速搜索结果") || searchResult.contains("基础搜索结果");
+        List<String> sources = resultSet.getSources();
+        boolean hasKkqws = sources.contains(SearchResultItem.SOURCE_KKQWS);
+        boolean hasMakifx = sources.contains(SearchResultItem.SOURCE_MAKIFX);
         
-        if (hasKkqws && hasMakifx) {
+        if (resultSet.isEmpty()) {
+            message.append("⏳ 搜索仍在进行中\n")
+                   .append("📝 结果到达后会显示在页面上\n")
+                   .append("🔗 点击查看：\n")
+                   .append(shortUrl);
+        } else if (resultSet.isPending()) {
+            message.append("⚡ 快速搜索完成！\n")
+                   .append("📝 部分结果已准备就绪，其余结果稍后自动补充\n")
+                   .append("🔗 点击查看：\n")
+                   .append(shortUrl);
+        } else if (resultSet.isPartial()) {
+            message.append("⚡ 快速搜索完成！\n")
+                   .append("📝 部分结果已准备就绪\n")
+                   .append("🔗 点击查看：\n")
+                   .append(shortUrl);
+        } else if (hasKkqws && hasMakifx) {
             message.append("✨ 全面搜索完成！\n")
                    .append("📊 已整合多个数据源的结果\n")
                    .append("🔗 点击查看详细内容：\n")
@@ -456,11 +579,6 @@ public class MsgHandler extends AbstractHandler {
                    .append("📝 来源: ").append(source).append(" 数据库\n")
                    .append("🔗 点击查看详细结果：\n")
                    .append(shortUrl);
-        } else if (isPartial) {
-            message.append("⚡ 快速搜索完成！\n")
-                   .append("📝 部分结果已准备就绪\n")
-                   .append("🔗 点击查看：\n")
-                   .append(shortUrl);
         } else {
             message.append("🔍 搜索完成！\n")
                    .append("🔗 点击查看详细结果：\n")
@@ -0,0 +1,123 @@
+package com.hc.wx.mp.handler;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hc.wx.mp.concurrent.Deadline;
+import com.hc.wx.mp.config.ApiConfig;
+import lombok.extern.slf4j.Slf4j;
+import me.chanjar.weixin.mp.bean.message.WxMpXmlMessage;
+import me.chanjar.weixin.mp.bean.message.WxMpXmlOutMessage;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 微信重试消息去重
+ * <p>
+ * 微信服务器5秒内收不到回复会断开连接，用同一条消息重新请求，最多三次。
+ * 这里按消息 id 记录每条消息的回复：第一次请求在自己的线程中处理，处理期间到达的重试直接等待这次处理的结果，
+ * 处理完成后到达的重试直接返回已生成的回复，不会为同一条消息重复搜索；
+ * 第一次请求的连接已经被微信断开时，重试拿到的就是原本要回复的内容。
+ * <p>
+ * 处理抛出异常时移除记录，下一次重试重新处理。记录在写入后保留一小段时间（覆盖微信的重试窗口）后淘汰。
+ */
+@Component
+@Slf4j
+public class WxRetryDeduplicator {
+
+    private final ApiConfig.RetryDedupConfig config;
+    private final Cache<String, CompletableFuture<WxMpXmlOutMessage>> replies;
+
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder attached = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    public WxRetryDeduplicator(ApiConfig apiConfig) {
+        this.config = apiConfig.getRetryDedup() != null ? apiConfig.getRetryDedup() : new ApiConfig.RetryDedupConfig();
+        this.replies = Caffeine.newBuilder()
+                .maximumSize(config.getMaxEntries())
+                .expireAfterWrite(config.getTtlSeconds(), TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * 消息 id；事件消息没有 MsgId，用发送方和创建时间代替
+     */
+    public static String messageId(WxMpXmlMessage wxMessage) {
+        return wxMessage.getMsgId() != null ? String.valueOf(wxMessage.getMsgId())
+                : wxMessage.getFromUser() + ":" + wxMessage.getCreateTime();
+    }
+
+    /**
+     * 处理一条消息，同一条消息的重试共享第一次处理的回复
+     *
+     * @param message  收到的消息
+     * @param deadline 本次请求的截止时间，重试最多等到这个时间
+     * @param handler  实际处理消息的逻辑，只会对第一次请求执行
+     * @return 回复消息；重试等到截止时间仍未处理完，或第一次处理失败时返回 null
+     */
+    public WxMpXmlOutMessage handle(WxMpXmlMessage message, Deadline deadline, Supplier<WxMpXmlOutMessage> handler) {
+        if (!config.isEnabled()) {
+            return handler.get();
+        }
+        String messageId = messageId(message);
+        CompletableFuture<WxMpXmlOutMessage> created = new CompletableFuture<>();
+        CompletableFuture<WxMpXmlOutMessage> existing = replies.asMap().putIfAbsent(messageId, created);
+        if (existing == null) {
+            messages.increment();
+            try {
+                WxMpXmlOutMessage reply = handler.get();
+                created.complete(reply);
+                return reply;
+            } catch (RuntimeException e) {
+                replies.asMap().remove(messageId, created);
+                created.completeExceptionally(e);
+                throw e;
+            }
+        }
+
+        retries.increment();
+        if (existing.isDone()) {
+            replayed.increment();
+            log.info("微信重试消息，直接返回已生成的回复: {}", messageId);
+        } else {
+            attached.increment();
+            log.info("微信重试消息，等待正在进行的处理: {}, 剩余时间: {}ms", messageId, deadline.remainingMillis());
+        }
+        try {
+            return existing.get(Math.max(0, deadline.remainingMillis()), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            timeouts.increment();
+            log.warn("微信重试消息等待超时: {}", messageId);
+        } catch (ExecutionException e) {
+            log.warn("微信重试消息对应的处理失败: {}, 错误: {}", messageId, e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    /**
+     * 处理的消息数、重试次数（等待进行中的处理 / 直接返回已有回复）和等待超时次数
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", config.isEnabled());
+        stats.put("messages", messages.sum());
+        stats.put("retries", retries.sum());
+        stats.put("attachedInFlight", attached.sum());
+        stats.put("replayedCompleted", replayed.sum());
+        stats.put("timeouts", timeouts.sum());
+        stats.put("entries", replies.estimatedSize());
+        return stats;
+    }
+}
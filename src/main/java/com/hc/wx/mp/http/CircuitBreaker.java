@@ -0,0 +1,158 @@
+package com.hc.wx.mp.http;
+
+import com.hc.wx.mp.config.ApiConfig;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 单个上游接口的熔断器
+ * <p>
+ * CLOSED：正常放行，统计最近 windowSize 次调用的失败率，超过阈值即打开；
+ * OPEN：直接拒绝请求，openMillis 之后进入半开；
+ * HALF_OPEN：只放行少量探测请求，探测成功则关闭，失败则重新打开。
+ * 同时记录该接口最近的耗时分布，供重试决策和监控使用。
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private final ApiConfig.CircuitBreakerConfig config;
+    private final LatencyWindow latency;
+
+    /** 最近调用结果的环形窗口，true 表示失败 */
+    private final boolean[] outcomes;
+    private int outcomeIndex;
+    private int outcomeCount;
+    private int failureCount;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int probesInFlight;
+
+    private long successes;
+    private long failures;
+    private long rejected;
+    private long timesOpened;
+
+    public CircuitBreaker(String name, ApiConfig.CircuitBreakerConfig config) {
+        this.name = name;
+        this.config = config;
+        this.outcomes = new boolean[config.getWindowSize()];
+        this.latency = new LatencyWindow(config.getLatencyWindowSize());
+    }
+
+    /**
+     * 申请一次调用许可；返回 false 时调用方不应发出请求
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < config.getOpenMillis()) {
+                rejected++;
+                return false;
+            }
+            transitionTo(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (probesInFlight >= config.getHalfOpenProbes()) {
+                rejected++;
+                return false;
+            }
+            probesInFlight++;
+        }
+        return true;
+    }
+
+    public synchronized void onSuccess(long latencyMillis) {
+        successes++;
+        latency.record(latencyMillis);
+        if (state == State.HALF_OPEN) {
+            probesInFlight--;
+            transitionTo(State.CLOSED);
+            return;
+        }
+        recordOutcome(false);
+    }
+
+    public synchronized void onFailure(long latencyMillis) {
+        failures++;
+        latency.record(latencyMillis);
+        if (state == State.HALF_OPEN) {
+            probesInFlight--;
+            transitionTo(State.OPEN);
+            return;
+        }
+        recordOutcome(true);
+        if (state == State.CLOSED && outcomeCount >= config.getMinimumCalls()
+                && failureCount * 100 >= config.getFailureRateThreshold() * outcomeCount) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    /**
+     * 调用被主动取消（不代表上游好坏），只归还半开探测名额
+     */
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN && probesInFlight > 0) {
+            probesInFlight--;
+        }
+    }
+
+    private void recordOutcome(boolean failed) {
+        if (outcomeCount == outcomes.length && outcomes[outcomeIndex]) {
+            failureCount--;
+        }
+        outcomes[outcomeIndex] = failed;
+        if (failed) {
+            failureCount++;
+        }
+        outcomeIndex = (outcomeIndex + 1) % outcomes.length;
+        outcomeCount = Math.min(outcomeCount + 1, outcomes.length);
+    }
+
+    private void transitionTo(State newState) {
+        log.warn("上游接口 {} 熔断器状态变化: {} -> {}", name, state, newState);
+        state = newState;
+        if (newState == State.OPEN) {
+            openedAt = System.currentTimeMillis();
+            timesOpened++;
+        } else if (newState == State.CLOSED) {
+            outcomeIndex = 0;
+            outcomeCount = 0;
+            failureCount = 0;
+        }
+        probesInFlight = 0;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * 最近耗时的第 percentile 分位（毫秒），没有样本时返回 -1
+     */
+    public long latencyPercentile(double percentile) {
+        return latency.percentile(percentile);
+    }
+
+    public int latencySampleCount() {
+        return latency.size();
+    }
+
+    public synchronized Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("state", state.name());
+        map.put("failureRate", outcomeCount == 0 ? 0.0 : (double) failureCount / outcomeCount);
+        map.put("successes", successes);
+        map.put("failures", failures);
+        map.put("rejected", rejected);
+        map.put("timesOpened", timesOpened);
+        map.put("latencyP50Ms", latency.percentile(50));
+        map.put("latencyP90Ms", latency.percentile(90));
+        map.put("latencyP99Ms", latency.percentile(99));
+        return map;
+    }
+}
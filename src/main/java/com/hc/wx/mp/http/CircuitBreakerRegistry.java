@@ -0,0 +1,35 @@
+package com.hc.wx.mp.http;
+
+import com.hc.wx.mp.config.ApiConfig;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按上游接口名称管理熔断器，每个接口（kkqws 各路径、uukk token/dyfx/ggang、makifx）各自独立
+ */
+@Component
+public class CircuitBreakerRegistry {
+
+    private final ApiConfig.CircuitBreakerConfig config;
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    public CircuitBreakerRegistry(ApiConfig apiConfig) {
+        this.config = apiConfig.getCircuitBreaker();
+    }
+
+    public CircuitBreaker get(String endpoint) {
+        return breakers.computeIfAbsent(endpoint, name -> new CircuitBreaker(name, config));
+    }
+
+    /**
+     * 所有熔断器的状态与耗时分布，按接口名称排序
+     */
+    public Map<String, Object> getStates() {
+        Map<String, Object> states = new TreeMap<>();
+        breakers.forEach((name, breaker) -> states.put(name, breaker.toMap()));
+        return states;
+    }
+}
@@ -0,0 +1,13 @@
+package com.hc.wx.mp.http;
+
+import java.io.IOException;
+
+/**
+ * 熔断器处于打开状态，请求未发出即被拒绝
+ */
+public class CircuitOpenException extends IOException {
+
+    public CircuitOpenException(String endpoint) {
+        super("上游接口 " + endpoint + " 已熔断，暂停请求");
+    }
+}
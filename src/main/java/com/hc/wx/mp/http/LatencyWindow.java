@@ -0,0 +1,47 @@
+package com.hc.wx.mp.http;
+
+import java.util.Arrays;
+
+/**
+ * 最近 N 次请求耗时的滑动窗口，用于计算分位数（p50/p90/p99）
+ */
+public class LatencyWindow {
+
+    private final long[] samples;
+    private int next;
+    private int size;
+
+    public LatencyWindow(int capacity) {
+        this.samples = new long[capacity];
+    }
+
+    public synchronized void record(long latencyMillis) {
+        samples[next] = latencyMillis;
+        next = (next + 1) % samples.length;
+        if (size < samples.length) {
+            size++;
+        }
+    }
+
+    /**
+     * 第 percentile 分位的耗时（毫秒），没有样本时返回 -1
+     *
+     * @param percentile 0~100
+     */
+    public long percentile(double percentile) {
+        long[] sorted;
+        synchronized (this) {
+            if (size == 0) {
+                return -1;
+            }
+            sorted = Arrays.copyOf(samples, size);
+        }
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+}
@@ -0,0 +1,265 @@
+package com.hc.wx.mp.http;
+
+import com.hc.wx.mp.concurrent.CancellationToken;
+import com.hc.wx.mp.config.ApiConfig;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 上游搜索接口共用的HTTP客户端
+ * <p>
+ * 所有 kkqws / uukk / makifx 请求都经过这里：底层是一个共享的 OkHttp 连接池，
+ * 复用 keep-alive 连接避免每次请求都重新进行 TCP/TLS 握手；
+ * 连接数上限、单主机并发上限以及连接/读取超时均由 {@link ApiConfig.HttpConfig} 驱动。
+ */
+@Slf4j
+@Component
+public class UpstreamHttpClient {
+
+    private final ApiConfig.HttpConfig config;
+    private final OkHttpClient client;
+    private final ConnectionPool connectionPool;
+    private final Semaphore totalPermits;
+    private final Map<String, HostStats> hostStats = new ConcurrentHashMap<>();
+
+    /** 实际新建的TCP连接数（含TLS握手） */
+    private final LongAdder connectionsOpened = new LongAdder();
+    /** 请求获取到连接的次数，与新建连接数之差即为复用次数 */
+    private final LongAdder connectionsAcquired = new LongAdder();
+
+    public UpstreamHttpClient(ApiConfig apiConfig) {
+        this.config = apiConfig.getHttp();
+        this.connectionPool = new ConnectionPool(config.getMaxConnections(),
+                config.getKeepAliveSeconds(), TimeUnit.SECONDS);
+        this.totalPermits = new Semaphore(config.getMaxConnections(), true);
+        this.client = createClient();
+        log.info("上游HTTP连接池初始化完成 - 最大连接数: {}, 单主机最大连接数: {}, 连接超时: {}ms, 读取超时: {}ms",
+                config.getMaxConnections(), config.getMaxConnectionsPerRoute(),
+                config.getConnectTimeout(), config.getReadTimeout());
+    }
+
+    private OkHttpClient createClient() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(config.getMaxConnections());
+        dispatcher.setMaxRequestsPerHost(config.getMaxConnectionsPerRoute());
+
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .connectionPool(connectionPool)
+                .dispatcher(dispatcher)
+                .connectTimeout(config.getConnectTimeout(), TimeUnit.MILLISECONDS)
+                .readTimeout(config.getReadTimeout(), TimeUnit.MILLISECONDS)
+                .writeTimeout(config.getReadTimeout(), TimeUnit.MILLISECONDS)
+                .retryOnConnectionFailure(true)
+                .eventListener(new PoolEventListener());
+
+        configureTrustAll(builder);
+        return builder.build();
+    }
+
+    /**
+     * 信任所有证书（与原先 HttpsURLConnection 的全局设置保持一致，仅作用于上游搜索请求）
+     */
+    private void configureTrustAll(OkHttpClient.Builder builder) {
+        try {
+            X509TrustManager trustAll = new X509TrustManager() {
+                public X509Certificate[] getAcceptedIssuers() { return new X509Certificate[0]; }
+                public void checkClientTrusted(X509Certificate[] certs, String authType) { }
+                public void checkServerTrusted(X509Certificate[] certs, String authType) { }
+            };
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, new TrustManager[] {trustAll}, new java.security.SecureRandom());
+            builder.sslSocketFactory(sslContext.getSocketFactory(), trustAll)
+                   .hostnameVerifier((hostname, session) -> true);
+        } catch (Exception e) {
+            log.error("上游HTTP客户端SSL配置失败，将使用默认证书校验", e);
+        }
+    }
+
+    /**
+     * 执行请求并以UTF-8读取响应体
+     *
+     * @param request 请求
+     * @param callTimeoutMillis 整个调用（连接+写入+读取）的总超时，通常是 {@code Deadline.cap} 的结果；
+     *                          0 或负数表示截止时间已到，不发出请求
+     * @return 响应体；非200响应返回空字符串
+     */
+    public String execute(Request request, long callTimeoutMillis) throws IOException {
+        return execute(request, callTimeoutMillis, new CancellationToken());
+    }
+
+    /**
+     * 执行可取消的请求：令牌被取消时立即中止连接，阻塞在读取上的线程会收到 IOException
+     */
+    public String execute(Request request, long callTimeoutMillis, CancellationToken token) throws IOException {
+        String host = request.url().host();
+        HostStats stats = hostStats.computeIfAbsent(host, h -> new HostStats(config.getMaxConnectionsPerRoute()));
+
+        if (token.isCancelled()) {
+            throw new IOException("请求已取消: " + request.url());
+        }
+        // 预算已经用完时不再等待许可，也不能交给 OkHttp（0 在那里表示不限制）
+        if (callTimeoutMillis <= 0) {
+            throw new java.io.InterruptedIOException("请求截止时间已到: " + request.url());
+        }
+        acquire(stats, host, callTimeoutMillis);
+        long startTime = System.currentTimeMillis();
+        stats.inFlight.incrementAndGet();
+        Call call = client.newCall(request);
+        call.timeout().timeout(callTimeoutMillis, TimeUnit.MILLISECONDS);
+        Runnable unregister = token.onCancel(() -> {
+            stats.aborted.increment();
+            call.cancel();
+        });
+        try (Response response = call.execute()) {
+            return readBody(response);
+        } catch (IOException e) {
+            if (!token.isCancelled()) {
+                stats.failures.increment();
+            }
+            throw e;
+        } finally {
+            unregister.run();
+            stats.inFlight.decrementAndGet();
+            stats.requests.increment();
+            stats.totalLatencyMillis.add(System.currentTimeMillis() - startTime);
+            stats.permits.release();
+            totalPermits.release();
+        }
+    }
+
+    /**
+     * 先获取单主机许可，再获取全局许可；等待时间不超过连接超时，也不超过本次调用的总超时
+     */
+    private void acquire(HostStats stats, String host, long callTimeoutMillis) throws IOException {
+        long waitMillis = Math.min(config.getConnectTimeout(), callTimeoutMillis);
+        try {
+            if (!stats.permits.tryAcquire(waitMillis, TimeUnit.MILLISECONDS)) {
+                stats.rejected.increment();
+                throw new IOException("主机 " + host + " 并发连接已达上限: " + config.getMaxConnectionsPerRoute());
+            }
+            if (!totalPermits.tryAcquire(waitMillis, TimeUnit.MILLISECONDS)) {
+                stats.permits.release();
+                stats.rejected.increment();
+                throw new IOException("上游连接池已满: " + config.getMaxConnections());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new java.io.InterruptedIOException("等待上游连接许可时被中断");
+        }
+    }
+
+    private String readBody(Response response) throws IOException {
+        if (response.code() != 200) {
+            log.error("HTTP请求失败，响应码: {}, URL: {}", response.code(), response.request().url());
+            return "";
+        }
+        ResponseBody body = response.body();
+        if (body == null) {
+            return "";
+        }
+        // 显式设置了 Accept-Encoding 的请求（如 Makifx）OkHttp 不会自动解压，需要手动处理
+        InputStream inputStream = body.byteStream();
+        if ("gzip".equalsIgnoreCase(response.header("Content-Encoding"))) {
+            inputStream = new GZIPInputStream(inputStream);
+        }
+        try (InputStream in = inputStream) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * 连接池指标：连接复用情况、空闲连接数以及各主机的请求统计
+     */
+    public Map<String, Object> getPoolStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long opened = connectionsOpened.sum();
+        long acquired = connectionsAcquired.sum();
+        stats.put("connectionCount", connectionPool.connectionCount());
+        stats.put("idleConnectionCount", connectionPool.idleConnectionCount());
+        stats.put("connectionsOpened", opened);
+        stats.put("connectionsAcquired", acquired);
+        stats.put("connectionReuseRatio", acquired == 0 ? 0.0 : (double) (acquired - opened) / acquired);
+        stats.put("availablePermits", totalPermits.availablePermits());
+
+        Map<String, Object> hosts = new LinkedHashMap<>();
+        hostStats.forEach((host, s) -> hosts.put(host, s.toMap()));
+        stats.put("hosts", hosts);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        client.dispatcher().executorService().shutdown();
+        connectionPool.evictAll();
+        log.info("上游HTTP连接池已关闭");
+    }
+
+    // ================================ 内部类 ================================
+
+    private static class HostStats {
+        private final Semaphore permits;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder aborted = new LongAdder();
+        private final LongAdder totalLatencyMillis = new LongAdder();
+
+        HostStats(int maxConnectionsPerRoute) {
+            this.permits = new Semaphore(maxConnectionsPerRoute, true);
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            long total = requests.sum();
+            map.put("inFlight", inFlight.get());
+            map.put("requests", total);
+            map.put("failures", failures.sum());
+            map.put("rejected", rejected.sum());
+            map.put("aborted", aborted.sum());
+            map.put("avgLatencyMs", total == 0 ? 0 : totalLatencyMillis.sum() / total);
+            map.put("availablePermits", permits.availablePermits());
+            return map;
+        }
+    }
+
+    private class PoolEventListener extends EventListener {
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            connectionsOpened.increment();
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            connectionsAcquired.increment();
+        }
+    }
+}
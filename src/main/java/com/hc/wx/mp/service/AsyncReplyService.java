@@ -0,0 +1,231 @@
+package com.hc.wx.mp.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hc.wx.mp.concurrent.BoundedExecutor;
+import com.hc.wx.mp.config.ApiConfig;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import me.chanjar.weixin.mp.api.WxMpService;
+import me.chanjar.weixin.mp.bean.kefu.WxMpKefuMessage;
+import me.chanjar.weixin.mp.util.WxMpConfigStorageHolder;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 微信异步回复服务
+ * <p>
+ * 被动回复必须在5秒内完成，同步搜索时 Tomcat 线程要一直等到搜索结束，慢的数据源只能被截断丢弃。
+ * 开启异步回复后，消息处理器只把搜索提交到这里并立即回复确认，请求线程在毫秒级释放；
+ * 搜索在后台完成后，结果链接通过客服消息接口推送给用户。
+ * <p>
+ * 处理分两个阶段：搜索阶段（耗时长、阻塞等待上游）和推送阶段（调用微信接口），各自使用有界线程池和有界队列，
+ * 推送慢不会占住搜索线程。搜索阶段排满时 {@link #submit} 返回 false，调用方退回同步回复，不会无限堆积。
+ * 每条消息的处理状态按消息 id 保留一段时间，可通过 {@link #getStatus} 查询。
+ */
+@Service
+@Slf4j
+public class AsyncReplyService {
+
+    /** 消息处理状态 */
+    public enum State {
+        /** 已接受，等待搜索线程 */
+        QUEUED,
+        /** 正在搜索 */
+        SEARCHING,
+        /** 搜索完成，等待推送 */
+        PUSHING,
+        /** 客服消息已发送 */
+        DELIVERED,
+        /** 推送失败 */
+        FAILED
+    }
+
+    /**
+     * 一条消息的处理状态
+     */
+    @Getter
+    public static final class ReplyStatus {
+        private final String messageId;
+        private final long acceptedAt;
+        private volatile State state = State.QUEUED;
+        private volatile long updatedAt;
+        private volatile String error;
+
+        ReplyStatus(String messageId, long now) {
+            this.messageId = messageId;
+            this.acceptedAt = now;
+            this.updatedAt = now;
+        }
+
+        private void update(State state, String error) {
+            this.state = state;
+            this.error = error;
+            this.updatedAt = System.currentTimeMillis();
+        }
+    }
+
+    private static final String SEARCH_FAILED_MESSAGE = "搜索服务暂时不可用，请稍后再试";
+
+    private final ApiConfig.AsyncReplyConfig config;
+    /** 两个阶段队列满时都拒绝，不在调用方线程（微信回调线程）执行 */
+    private final BoundedExecutor searchStage;
+    private final BoundedExecutor pushStage;
+    private final Cache<String, ReplyStatus> statuses;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder deliverMillis = new LongAdder();
+
+    public AsyncReplyService(ApiConfig apiConfig) {
+        this.config = apiConfig.getAsyncReply() != null ? apiConfig.getAsyncReply() : new ApiConfig.AsyncReplyConfig();
+        this.searchStage = new BoundedExecutor("wx-reply-search", config.getSearchThreads(),
+                config.getSearchQueueCapacity(), new ThreadPoolExecutor.AbortPolicy());
+        this.pushStage = new BoundedExecutor("wx-reply-push", config.getPushThreads(),
+                config.getPushQueueCapacity(), new ThreadPoolExecutor.AbortPolicy());
+        this.statuses = Caffeine.newBuilder()
+                .maximumSize(config.getStatusMaxEntries())
+                .expireAfterWrite(config.getStatusTtlMinutes(), TimeUnit.MINUTES)
+                .build();
+        if (config.isEnabled()) {
+            log.info("微信异步回复已启用 - 搜索线程: {}, 搜索队列: {}, 推送线程: {}, 推送队列: {}",
+                    config.getSearchThreads(), config.getSearchQueueCapacity(),
+                    config.getPushThreads(), config.getPushQueueCapacity());
+        }
+    }
+
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /**
+     * 提交一条消息的后台搜索，完成后把回复文本作为客服消息推送给用户
+     *
+     * @param messageId     消息 id，同一条消息重复提交时只处理一次
+     * @param openId        接收推送的用户
+     * @param weixinService 当前公众号的服务，推送时切换到提交时的公众号
+     * @param reply         在搜索线程执行的搜索，返回要推送的文本
+     * @return 是否已接受；搜索阶段排满时返回 false，由调用方改为同步回复
+     */
+    public boolean submit(String messageId, String openId, WxMpService weixinService, Supplier<String> reply) {
+        long now = System.currentTimeMillis();
+        ReplyStatus status = new ReplyStatus(messageId, now);
+        if (statuses.asMap().putIfAbsent(messageId, status) != null) {
+            duplicates.increment();
+            log.info("消息已在后台处理，忽略重复提交: {}", messageId);
+            return true;
+        }
+        String appId = WxMpConfigStorageHolder.get();
+        try {
+            searchStage.execute(() -> search(status, appId, openId, weixinService, reply));
+        } catch (RejectedExecutionException e) {
+            statuses.invalidate(messageId);
+            rejected.increment();
+            log.warn("异步回复搜索队列已满，消息: {}", messageId);
+            return false;
+        }
+        accepted.increment();
+        return true;
+    }
+
+    private void search(ReplyStatus status, String appId, String openId, WxMpService weixinService,
+                        Supplier<String> reply) {
+        status.update(State.SEARCHING, null);
+        String text;
+        try {
+            text = reply.get();
+        } catch (RuntimeException e) {
+            log.error("后台搜索失败，消息: {}", status.getMessageId(), e);
+            text = SEARCH_FAILED_MESSAGE;
+        }
+        status.update(State.PUSHING, null);
+        String content = text;
+        try {
+            pushStage.execute(() -> push(status, appId, openId, weixinService, content));
+        } catch (RejectedExecutionException e) {
+            fail(status, "推送队列已满");
+        }
+    }
+
+    private void push(ReplyStatus status, String appId, String openId, WxMpService weixinService, String content) {
+        try {
+            // 多公众号配置按线程切换，后台线程需要切换到消息所属的公众号
+            if (appId != null) {
+                weixinService.switchover(appId);
+            }
+            weixinService.getKefuService().sendKefuMessage(
+                    WxMpKefuMessage.TEXT().toUser(openId).content(content).build());
+            status.update(State.DELIVERED, null);
+            delivered.increment();
+            long elapsed = System.currentTimeMillis() - status.getAcceptedAt();
+            deliverMillis.add(elapsed);
+            log.info("客服消息已推送，消息: {}, 用户: {}, 从接收到推送耗时: {}ms", status.getMessageId(), openId, elapsed);
+        } catch (Exception e) {
+            fail(status, e.getMessage());
+        }
+    }
+
+    private void fail(ReplyStatus status, String error) {
+        status.update(State.FAILED, error);
+        failed.increment();
+        log.warn("客服消息推送失败，消息: {}, 错误: {}", status.getMessageId(), error);
+    }
+
+    /**
+     * 消息的处理状态，不存在或已超过保留时间时返回 null
+     */
+    public ReplyStatus getStatus(String messageId) {
+        return messageId == null ? null : statuses.getIfPresent(messageId);
+    }
+
+    /**
+     * 接受、拒绝、推送成功和失败的次数，各状态的消息数以及两个阶段的线程池情况
+     */
+    public Map<String, Object> getStats() {
+        Map<State, Integer> byState = new EnumMap<>(State.class);
+        for (ReplyStatus status : statuses.asMap().values()) {
+            byState.merge(status.getState(), 1, Integer::sum);
+        }
+        long deliveredCount = delivered.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", config.isEnabled());
+        stats.put("accepted", accepted.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("duplicates", duplicates.sum());
+        stats.put("delivered", deliveredCount);
+        stats.put("failed", failed.sum());
+        stats.put("avgDeliverMillis", deliveredCount == 0 ? 0.0 : (double) deliverMillis.sum() / deliveredCount);
+        stats.put("states", byState);
+        stats.put("searchStage", searchStage.getStats());
+        stats.put("pushStage", pushStage.getStats());
+        return stats;
+    }
+
+    /**
+     * 搜索和推送两个阶段线程池的统计
+     */
+    public Map<String, Object> getExecutorStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("search", searchStage.getStats());
+        stats.put("push", pushStage.getStats());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        searchStage.shutdown();
+        pushStage.shutdown();
+    }
+}
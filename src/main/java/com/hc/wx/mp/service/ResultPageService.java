@@ -0,0 +1,179 @@
+package com.hc.wx.mp.service;
+
+import cn.hutool.core.util.ZipUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.hc.wx.mp.config.ApiConfig;
+import com.hc.wx.mp.entity.SearchResultSet;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.context.Context;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 结果页预渲染服务
+ * <p>
+ * 结果内容不可变，结果页（templates/search_result.html）只是把内容包进固定的页面，
+ * 因此每个结果只在第一次被打开时用 Thymeleaf 渲染一次，gzip 后缓存，之后的请求直接返回这份压缩字节。
+ * 在首次打开时而不是存储时渲染，微信回复的处理路径上不增加模板渲染，没人打开的结果也不占用渲染和缓存。
+ * <p>
+ * 缓存有总字节数上限（按压缩后大小计算）和与结果相同的有效期；被淘汰的页面下次打开时重新渲染。
+ * <p>
+ * 结构化结果按页渲染（默认每页 {@value #DEFAULT_PAGE_SIZE} 条），每个 (key, 页码, 每页条数) 单独缓存，
+ * 结果很多时打开链接只渲染和传输第一页；以前存入的纯文本结果没有分页，整页展示。
+ * <p>
+ * 可追加的结果（回复时还有数据源在搜索）缓存键带上版本号，追加后按新版本重新渲染；
+ * 还有数据源未完成时页面带上轮询脚本，从结果接口取新增的条目。
+ */
+@Service
+@Slf4j
+public class ResultPageService {
+
+    static final String TEMPLATE = "search_result";
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    public static final int MAX_PAGE_SIZE = 100;
+    /** 每个条目除页面外的估算开销（字节） */
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+
+    private final ResultStorageService resultStorageService;
+    private final ITemplateEngine templateEngine;
+    private final Cache<String, byte[]> pages;
+
+    private final LongAdder renders = new LongAdder();
+    private final LongAdder renderNanos = new LongAdder();
+
+    public ResultPageService(ResultStorageService resultStorageService, ITemplateEngine templateEngine,
+                             ApiConfig apiConfig) {
+        this.resultStorageService = resultStorageService;
+        this.templateEngine = templateEngine;
+        ApiConfig.StorageConfig config = apiConfig.getStorage() != null
+                ? apiConfig.getStorage() : new ApiConfig.StorageConfig();
+        this.pages = Caffeine.newBuilder()
+                .maximumWeight(config.getPageCacheMaxBytes())
+                .weigher((String key, byte[] page) -> page.length + 2 * key.length() + ENTRY_OVERHEAD_BYTES)
+                .expireAfterWrite(config.getTtlMinutes(), TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * 获取 gzip 压缩后的结果页第一页，首次打开时渲染
+     *
+     * @param key 结果唯一标识符
+     * @return 压缩后的 UTF-8 HTML，结果不存在或已过期时返回 null；调用方不应修改返回的数组
+     */
+    public byte[] getCompressedPage(String key) {
+        return getCompressedPage(key, 1, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * 获取 gzip 压缩后的结果页，首次打开时渲染；页码超过总页数时显示最后一页
+     *
+     * @param key  结果唯一标识符
+     * @param page 页码，从 1 开始
+     * @param size 每页条数，限制在 1 到 {@value #MAX_PAGE_SIZE} 之间
+     * @return 压缩后的 UTF-8 HTML，结果不存在或已过期时返回 null；调用方不应修改返回的数组
+     */
+    public byte[] getCompressedPage(String key, int page, int size) {
+        if (key == null) {
+            return null;
+        }
+        int pageNo = normalizePage(page);
+        int pageSize = normalizeSize(size);
+        return pages.get(versioned(key) + "|" + pageNo + "|" + pageSize, cacheKey -> render(key, pageNo, pageSize));
+    }
+
+    /**
+     * 获取 gzip 压缩后的完整纯文本结果，首次请求时格式化
+     *
+     * @param key 结果唯一标识符
+     * @return 压缩后的 UTF-8 文本，结果不存在或已过期时返回 null；调用方不应修改返回的数组
+     */
+    public byte[] getCompressedText(String key) {
+        if (key == null) {
+            return null;
+        }
+        return pages.get(versioned(key) + "|text", cacheKey -> {
+            String content = resultStorageService.getResult(key);
+            return content == null ? null : ZipUtil.gzip(content.getBytes(StandardCharsets.UTF_8));
+        });
+    }
+
+    /**
+     * 可追加结果的当前版本号，内容不会再变化的结果返回 null
+     */
+    public Integer getVersion(String key) {
+        return resultStorageService.getVersion(key);
+    }
+
+    private String versioned(String key) {
+        Integer version = resultStorageService.getVersion(key);
+        return version == null ? key : key + "|v" + version;
+    }
+
+    public static int normalizePage(Integer page) {
+        return page == null ? 1 : Math.max(1, page);
+    }
+
+    public static int normalizeSize(Integer size) {
+        return size == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(MAX_PAGE_SIZE, size));
+    }
+
+    private byte[] render(String key, int page, int size) {
+        long startTime = System.nanoTime();
+        Context context = new Context(Locale.SIMPLIFIED_CHINESE);
+        context.setVariable("key", key);
+        SearchResultSet resultSet = resultStorageService.getResultSet(key);
+        if (resultSet != null) {
+            int totalPages = resultSet.getTotalPages(size);
+            int current = Math.min(page, totalPages);
+            context.setVariable("content", SearchResultFormatter.format(resultSet.page(current, size)));
+            context.setVariable("page", current);
+            context.setVariable("size", size);
+            context.setVariable("totalPages", totalPages);
+            context.setVariable("totalItems", resultSet.getItems().size());
+            context.setVariable("version", resultSet.getVersion());
+            context.setVariable("pending", resultSet.isPending());
+        } else {
+            String content = resultStorageService.getResult(key);
+            if (content == null) {
+                return null;
+            }
+            context.setVariable("content", content);
+        }
+        byte[] rendered = ZipUtil.gzip(templateEngine.process(TEMPLATE, context).getBytes(StandardCharsets.UTF_8));
+        long elapsed = System.nanoTime() - startTime;
+        renders.increment();
+        renderNanos.add(elapsed);
+        log.info("预渲染结果页，key: {}, 第 {} 页, 压缩后 {} 字节, 耗时: {}ms", key, page, rendered.length,
+                TimeUnit.NANOSECONDS.toMillis(elapsed));
+        return rendered;
+    }
+
+    /**
+     * 页面缓存条目数、占用字节数、命中情况和渲染次数
+     */
+    public Map<String, Object> getStats() {
+        CacheStats stats = pages.stats();
+        long renderCount = renders.sum();
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("entries", pages.estimatedSize());
+        map.put("weightedBytes", pages.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L));
+        map.put("hits", stats.hitCount());
+        map.put("misses", stats.missCount());
+        map.put("hitRate", stats.hitRate());
+        map.put("evictions", stats.evictionCount());
+        map.put("renders", renderCount);
+        map.put("avgRenderMs", renderCount == 0 ? 0.0 : renderNanos.sum() / 1_000_000.0 / renderCount);
+        return map;
+    }
+}
@@ -1,48 +1,451 @@
 package com.hc.wx.mp.service;
 
+import cn.hutool.core.util.ZipUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.hc.wx.mp.cache.RedisResultStore;
+import com.hc.wx.mp.cache.SegmentFileResultStore;
+import com.hc.wx.mp.config.ApiConfig;
+import com.hc.wx.mp.entity.SearchResultItem;
+import com.hc.wx.mp.entity.SearchResultSet;
+import com.hc.wx.mp.utils.JsonUtils;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * 搜索结果存储服务
  * 用于存储搜索结果并生成短链接
+ * <p>
+ * 存储有有效期和总字节数上限：超过有效期的结果自动清除；总量超限时按 W-TinyLFU 淘汰，
+ * 优先淘汰较早存入且很少被打开的结果。被清除的 key 与不存在的 key 一样返回 null，页面显示"已过期"。
+ * <p>
+ * 结果同时异步写入 Redis（{@link RedisResultStore}，压缩存储、同样的有效期），
+ * 本地未命中时从 Redis 读取并回填本地，负载均衡后面的任意节点都能打开结果链接。
+ * <p>
+ * key 由内容的 SHA-256 摘要生成（8位 base62），热门关键词被很多用户搜索时，相同的结果只存一份、共用一个链接；
+ * 各节点对同一内容算出同一个 key，共享存储中也不会重复。
+ * <p>
+ * 合并后的结果是几KB高度重复的文本，存储时 gzip 为字节数组（通常只有原来的十分之一左右），
+ * 总字节数上限按压缩后的大小计算；{@link #getCompressedResult} 返回压缩字节本身，
+ * 只有需要格式化或渲染页面时才解压。
+ * <p>
+ * 开启磁盘存储（{@link SegmentFileResultStore}）时，结果追加写入内存映射的段文件，本地不再缓存内容，
+ * 堆上只有 key 到文件偏移的索引；服务重启后已发出的结果链接仍可打开。
+ * <p>
+ * 微信回复存储的是结构化结果（{@link SearchResultSet} 的 JSON，见 {@link #storeResultSet}），
+ * 结果页和结果接口通过 {@link #getResultSet} 按页读取；{@link #getResult} 返回格式化后的完整文本，
+ * 以前存入的纯文本结果原样返回。
+ * <p>
+ * 回复时还有数据源在搜索的结果是可追加的：数据源完成后用 {@link #appendResultItems} 把结果合并进同一个 key，
+ * 已发出的链接打开后能看到后到的结果。可追加结果的当前版本号由 {@link #getVersion} 返回，
+ * 页面缓存和 ETag 带上版本号；内容不再变化的结果没有版本号，仍按不可变内容处理。
+ * 追加在执行搜索的节点上进行，版本号、是否仍有数据源未完成和最初内容的摘要随内容一起写入共享存储；
+ * 其他节点从共享存储回填时一并记下，仍有数据源未完成的结果每次读取都先查共享存储中的最新版本。
  */
 @Service
 @Slf4j
 public class ResultStorageService {
-    
-    private final Map<String, String> resultStorage = new ConcurrentHashMap<>();
+
+    /** 每个条目除压缩内容外的估算开销（字节） */
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+    /** key 长度，8位 base62 约 47 位摘要 */
+    private static final int KEY_LENGTH = 8;
+    /** 8位 key 与已有的不同内容冲突时改用的长度 */
+    private static final int COLLISION_KEY_LENGTH = 12;
+    /** 结构化结果 JSON 的开头，format 是序列化的第一个字段 */
+    private static final String RESULT_SET_PREFIX = "{\"format\":\"" + SearchResultSet.FORMAT + "\"";
+    /** 最多记录版本号的可追加结果数 */
+    private static final int MAX_APPENDABLE_ENTRIES = 10_000;
+    private static final char[] BASE62 = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz".toCharArray();
+
+    private final Cache<String, StoredResult> resultStorage;
+    /** 可追加结果的版本号和是否仍有数据源未完成，与结果同样的有效期 */
+    private final Cache<String, AppendState> versions;
+    /** 共享存储，为 null 时只保存在本节点 */
+    private final RedisResultStore sharedStore;
+    /** 磁盘存储，为 null 时保存在内存 */
+    private final SegmentFileResultStore diskStore;
+
+    private final LongAdder storeRequests = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+    private final LongAdder keyCollisions = new LongAdder();
+    private final LongAdder rawBytesStored = new LongAdder();
+    private final LongAdder compressedBytesStored = new LongAdder();
+    private final LongAdder appends = new LongAdder();
+
+    public ResultStorageService() {
+        this(new ApiConfig());
+    }
+
+    public ResultStorageService(ApiConfig apiConfig) {
+        this(apiConfig, null);
+    }
+
+    public ResultStorageService(ApiConfig apiConfig, RedisResultStore sharedStore) {
+        this(apiConfig, sharedStore, null);
+    }
+
+    @Autowired
+    public ResultStorageService(ApiConfig apiConfig, RedisResultStore sharedStore, SegmentFileResultStore diskStore) {
+        this.sharedStore = sharedStore;
+        this.diskStore = diskStore != null && diskStore.isEnabled() ? diskStore : null;
+        ApiConfig.StorageConfig config = apiConfig.getStorage() != null
+                ? apiConfig.getStorage() : new ApiConfig.StorageConfig();
+        this.resultStorage = Caffeine.newBuilder()
+                .maximumWeight(config.getMaxBytes())
+                .weigher((String key, StoredResult result) -> weigh(key, result))
+                .expireAfterWrite(config.getTtlMinutes(), TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+        this.versions = Caffeine.newBuilder()
+                .maximumSize(MAX_APPENDABLE_ENTRIES)
+                .expireAfterWrite(config.getTtlMinutes(), TimeUnit.MINUTES)
+                .build();
+        log.info("搜索结果存储初始化完成 - 存储位置: {}, 最大容量: {} 字节, 有效期: {} 分钟",
+                this.diskStore != null ? "磁盘段文件" : "内存", config.getMaxBytes(), config.getTtlMinutes());
+    }
     
     /**
-     * 存储搜索结果并返回唯一标识符
+     * 存储搜索结果并返回唯一标识符，相同内容返回同一个标识符
      * @param content 要存储的搜索结果内容
      * @return 存储内容的唯一标识符
      */
     public String storeResult(String content) {
-        String key = generateUniqueKey();
-        resultStorage.put(key, content);
-        log.info("存储搜索结果，key: {}", key);
+        return store(content, null);
+    }
+
+    /**
+     * @param appendState 可追加结果的初始版本，不可追加时为 null
+     */
+    private String store(String content, AppendState appendState) {
+        storeRequests.increment();
+        String digest = digest(content);
+        String key = digest.substring(0, KEY_LENGTH);
+        StoredResult existing = getLocal(key);
+        if (existing != null && !digest.equals(existing.digest())) {
+            keyCollisions.increment();
+            key = digest.substring(0, COLLISION_KEY_LENGTH);
+            existing = getLocal(key);
+            log.warn("搜索结果 key 冲突，改用 {} 位 key: {}", COLLISION_KEY_LENGTH, key);
+        }
+
+        if (appendState != null) {
+            versions.asMap().putIfAbsent(key, appendState);
+        }
+        if (existing != null && digest.equals(existing.digest())) {
+            // 已存过相同内容：重新放入以刷新有效期，共享存储只延长过期时间
+            deduplicated.increment();
+            bytesSaved.add(weigh(key, existing));
+            touchLocal(key, existing);
+            if (sharedStore != null) {
+                sharedStore.touchAsync(key);
+            }
+            log.info("搜索结果已存在，复用 key: {}", key);
+            return key;
+        }
+
+        byte[] utf8 = content.getBytes(StandardCharsets.UTF_8);
+        StoredResult result = new StoredResult(ZipUtil.gzip(utf8), digest);
+        rawBytesStored.add(utf8.length);
+        compressedBytesStored.add(result.gzipped.length);
+        putLocal(key, result);
+        if (sharedStore != null) {
+            sharedStore.putAsync(key, appendState == null ? new RedisResultStore.Entry(result.gzipped, null, null, false)
+                    : new RedisResultStore.Entry(result.gzipped, digest, appendState.version, true), utf8.length);
+        }
+        log.info("存储搜索结果，key: {}, 原始 {} 字节, 压缩后 {} 字节", key, utf8.length, result.gzipped.length);
         return key;
     }
     
+    /**
+     * 存储结构化的搜索结果，相同结果返回同一个标识符
+     * @param resultSet 合并后的搜索结果
+     * @return 存储内容的唯一标识符
+     */
+    public String storeResultSet(SearchResultSet resultSet) {
+        return store(JsonUtils.toCompactJson(resultSet),
+                resultSet.isPending() ? new AppendState(resultSet.getVersion(), true) : null);
+    }
+
+    /**
+     * 把回复后才完成的数据源结果追加到已存储的结构化结果中，key 不变
+     *
+     * @param key    结果唯一标识符
+     * @param source 完成的数据源
+     * @param items  该数据源的结果
+     * @return 是否有变化；结果不存在、已过期或不是结构化结果时返回 false
+     */
+    public synchronized boolean appendResultItems(String key, String source, List<SearchResultItem> items) {
+        StoredResult existing = lookup(key);
+        String content = existing == null ? null
+                : new String(ZipUtil.unGzip(existing.gzipped), StandardCharsets.UTF_8);
+        if (content == null || !content.startsWith(RESULT_SET_PREFIX)) {
+            log.warn("追加结果失败，结果不存在或不可追加，key: {}, 数据源: {}", key, source);
+            return false;
+        }
+        SearchResultSet resultSet = JsonUtils.fromJson(content, SearchResultSet.class);
+        if (!resultSet.append(source, items)) {
+            return false;
+        }
+
+        byte[] utf8 = JsonUtils.toCompactJson(resultSet).getBytes(StandardCharsets.UTF_8);
+        // 摘要保持为最初内容的摘要：key 仍代表这次搜索，相同的初始结果继续复用这个 key
+        StoredResult updated = new StoredResult(ZipUtil.gzip(utf8), existing.digest());
+        putLocal(key, updated);
+        versions.put(key, new AppendState(resultSet.getVersion(), resultSet.isPending()));
+        if (sharedStore != null) {
+            sharedStore.putAsync(key, new RedisResultStore.Entry(updated.gzipped, updated.digest(),
+                    resultSet.getVersion(), resultSet.isPending()), utf8.length);
+        }
+        appends.increment();
+        log.info("追加迟到的搜索结果，key: {}, 数据源: {}, 版本: {}, 共 {} 条{}", key, source, resultSet.getVersion(),
+                resultSet.getItems().size(), resultSet.isPending() ? "，仍有数据源未完成" : "");
+        return true;
+    }
+
+    /**
+     * 可追加结果的当前版本号；本节点没有的结果先从共享存储回填，仍有数据源未完成的结果读取共享存储中的最新版本
+     * @param key 唯一标识符
+     * @return 版本号；内容不会再变化的结果返回 null
+     */
+    public Integer getVersion(String key) {
+        if (key == null) {
+            return null;
+        }
+        if (versions.getIfPresent(key) == null && (sharedStore == null || getLocal(key) != null)) {
+            return null;
+        }
+        lookup(key);
+        AppendState state = versions.getIfPresent(key);
+        return state == null ? null : state.version;
+    }
+
     /**
      * 根据key获取搜索结果
      * @param key 唯一标识符
-     * @return 存储的内容，如果不存在则返回null
+     * @return 格式化后的文本，如果不存在或已过期则返回null
      */
     public String getResult(String key) {
-        return resultStorage.get(key);
+        String content = getStoredContent(key);
+        if (content == null || !content.startsWith(RESULT_SET_PREFIX)) {
+            return content;
+        }
+        return SearchResultFormatter.format(JsonUtils.fromJson(content, SearchResultSet.class));
+    }
+
+    /**
+     * 根据key获取结构化的搜索结果
+     * @param key 唯一标识符
+     * @return 结构化结果；不存在、已过期或是以前存入的纯文本结果时返回null
+     */
+    public SearchResultSet getResultSet(String key) {
+        String content = getStoredContent(key);
+        if (content == null || !content.startsWith(RESULT_SET_PREFIX)) {
+            return null;
+        }
+        return JsonUtils.fromJson(content, SearchResultSet.class);
+    }
+
+    private String getStoredContent(String key) {
+        StoredResult result = lookup(key);
+        return result == null ? null : new String(ZipUtil.unGzip(result.gzipped), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 根据key获取 gzip 压缩后的存储内容（结构化结果为 JSON），可直接作为 Content-Encoding: gzip 的响应体
+     * @param key 唯一标识符
+     * @return 压缩后的 UTF-8 内容，如果不存在或已过期则返回null；调用方不应修改返回的数组
+     */
+    public byte[] getCompressedResult(String key) {
+        StoredResult result = lookup(key);
+        return result == null ? null : result.gzipped;
+    }
+
+    /**
+     * 先读本地；本地没有，或是仍有数据源未完成的可追加结果时读取共享存储，共享存储中的版本更新时回填本地
+     */
+    private StoredResult lookup(String key) {
+        if (key == null) {
+            return null;
+        }
+        StoredResult result = getLocal(key);
+        if (sharedStore == null) {
+            return result;
+        }
+        AppendState state = versions.getIfPresent(key);
+        if (result != null && (state == null || !state.pending)) {
+            return result;
+        }
+        RedisResultStore.Entry entry = sharedStore.get(key);
+        if (entry == null) {
+            return result;
+        }
+        if (result != null && (entry.getVersion() == null || entry.getVersion() <= state.version)) {
+            return result;
+        }
+        return refill(key, entry);
+    }
+
+    private StoredResult refill(String key, RedisResultStore.Entry entry) {
+        // 可追加结果带有最初内容的摘要；其他结果的摘要在首次需要判断重复时才解压计算
+        StoredResult result = new StoredResult(entry.getGzipped(), entry.getDigest());
+        if (entry.getVersion() != null) {
+            versions.put(key, new AppendState(entry.getVersion(), entry.isPending()));
+        }
+        if (diskStore != null && !result.digest().startsWith(key)) {
+            // 没有记录最初摘要的旧版追加结果，内容摘要与 key 对不上，只返回不写入磁盘
+            log.warn("共享存储中的结果与 key 不匹配，不回填本地，key: {}", key);
+            return result;
+        }
+        putLocal(key, result);
+        log.info("从共享存储读取搜索结果，key: {}{}", key,
+                entry.getVersion() != null ? "，版本: " + entry.getVersion() : "");
+        return result;
+    }
+
+    private StoredResult getLocal(String key) {
+        if (diskStore == null) {
+            return resultStorage.getIfPresent(key);
+        }
+        SegmentFileResultStore.Record record = diskStore.get(key);
+        return record == null ? null : new StoredResult(record.getGzipped(), record.getDigest());
+    }
+
+    private void putLocal(String key, StoredResult result) {
+        if (diskStore == null) {
+            resultStorage.put(key, result);
+        } else {
+            diskStore.append(key, result.digest(), result.gzipped);
+        }
+    }
+
+    /**
+     * 重新放入已有结果以刷新有效期
+     */
+    private void touchLocal(String key, StoredResult existing) {
+        if (diskStore == null) {
+            resultStorage.put(key, existing);
+        } else {
+            diskStore.touch(key);
+        }
+    }
+
+    /**
+     * 当前占用：条目数、估算字节数以及读取命中和淘汰统计
+     */
+    public Map<String, Object> getStats() {
+        CacheStats stats = resultStorage.stats();
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("entries", resultStorage.estimatedSize());
+        map.put("weightedBytes", resultStorage.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L));
+        map.put("maxBytes", resultStorage.policy().eviction().map(eviction -> eviction.getMaximum()).orElse(0L));
+        map.put("hits", stats.hitCount());
+        map.put("misses", stats.missCount());
+        map.put("evictions", stats.evictionCount());
+        map.put("evictedBytes", stats.evictionWeight());
+        long requests = storeRequests.sum();
+        map.put("storeRequests", requests);
+        map.put("deduplicated", deduplicated.sum());
+        map.put("dedupeRatio", requests == 0 ? 0.0 : (double) deduplicated.sum() / requests);
+        map.put("bytesSaved", bytesSaved.sum());
+        map.put("keyCollisions", keyCollisions.sum());
+        map.put("appendableEntries", versions.estimatedSize());
+        map.put("appends", appends.sum());
+        long rawBytes = rawBytesStored.sum();
+        map.put("compressionRatio", rawBytes == 0 ? 0.0 : (double) compressedBytesStored.sum() / rawBytes);
+        if (sharedStore != null) {
+            map.put("shared", sharedStore.getStats());
+        }
+        if (diskStore != null) {
+            map.put("disk", diskStore.getStats());
+        }
+        return map;
+    }
+
+    /**
+     * 立即执行挂起的过期、淘汰等维护工作
+     */
+    void cleanUp() {
+        resultStorage.cleanUp();
+    }
+
+    /**
+     * 压缩后的字节数加上 key 和条目开销
+     */
+    private static int weigh(String key, StoredResult result) {
+        long bytes = result.gzipped.length + 2L * key.length() + ENTRY_OVERHEAD_BYTES;
+        return (int) Math.min(Integer.MAX_VALUE, bytes);
     }
     
     /**
-     * 生成短的唯一标识符
-     * @return 8位唯一标识符
+     * 内容 SHA-256 摘要的 base62 表示（取前16字节）
+     */
+    private static String digest(String content) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+            BigInteger value = new BigInteger(1, Arrays.copyOf(hash, 16));
+            BigInteger radix = BigInteger.valueOf(BASE62.length);
+            StringBuilder key = new StringBuilder(COLLISION_KEY_LENGTH);
+            while (key.length() < COLLISION_KEY_LENGTH) {
+                BigInteger[] divRem = value.divideAndRemainder(radix);
+                key.append(BASE62[divRem[1].intValue()]);
+                value = divRem[0];
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("当前JVM不支持 SHA-256", e);
+        }
+    }
+
+    // ================================ 内部类 ================================
+
+    /**
+     * 可追加结果的当前版本号，以及是否还有数据源会追加结果
+     */
+    private static final class AppendState {
+        private final int version;
+        private final boolean pending;
+
+        AppendState(int version, boolean pending) {
+            this.version = version;
+            this.pending = pending;
+        }
+    }
+
+    /**
+     * 存储的条目：gzip 后的内容和内容摘要
      */
-    private String generateUniqueKey() {
-        return UUID.randomUUID().toString().replace("-", "").substring(0, 8);
+    private static final class StoredResult {
+        private final byte[] gzipped;
+        private volatile String digest;
+
+        StoredResult(byte[] gzipped, String digest) {
+            this.gzipped = gzipped;
+            this.digest = digest;
+        }
+
+        String digest() {
+            String value = digest;
+            if (value == null) {
+                value = ResultStorageService.digest(new String(ZipUtil.unGzip(gzipped), StandardCharsets.UTF_8));
+                digest = value;
+            }
+            return value;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,142 @@
+package com.hc.wx.mp.service;
+
+import cn.hutool.core.util.StrUtil;
+import com.hc.wx.mp.entity.SearchResultItem;
+import com.hc.wx.mp.entity.SearchResultSet;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 把结构化的搜索结果格式化成展示用的文本
+ * <p>
+ * 文本只在展示时生成（结果页、纯文本接口），版式与原先各数据源直接拼接的文本一致：
+ * KKQWS 按【标题】分组列出链接，Makifx 按网盘平台分组并附带提取码和备注。
+ */
+public final class SearchResultFormatter {
+
+    private static final String SECTION_RULE = "═══════════════════════════════\n";
+    private static final String PLATFORM_RULE = "─────────────────────\n";
+    /** 备注超过这个长度时不展示 */
+    private static final int MAX_NOTE_LENGTH = 80;
+
+    private static final Map<String, String> SECTION_TITLES = new LinkedHashMap<>();
+    private static final Map<String, String> PLATFORM_NAMES = new LinkedHashMap<>();
+
+    static {
+        SECTION_TITLES.put(SearchResultItem.SOURCE_KKQWS, "📚 KKQWS 搜索结果");
+        SECTION_TITLES.put(SearchResultItem.SOURCE_MAKIFX, "🎬 Makifx 影视资源");
+
+        PLATFORM_NAMES.put("xunlei", "🚀 迅雷网盘");
+        PLATFORM_NAMES.put("quark", "⚡ 夸克网盘");
+        PLATFORM_NAMES.put("baidu", "☁️ 百度网盘");
+        PLATFORM_NAMES.put("aliyun", "☁️ 阿里云盘");
+        PLATFORM_NAMES.put("other", "🔗 其他链接");
+    }
+
+    private SearchResultFormatter() {
+    }
+
+    /**
+     * 格式化完整的搜索结果：关键词、各数据源分节和数据源统计
+     */
+    public static String format(SearchResultSet resultSet) {
+        if (resultSet == null || resultSet.isEmpty()) {
+            return "";
+        }
+        StringBuilder text = new StringBuilder(resultSet.getItems().size() * 100);
+        if (resultSet.isPartial()) {
+            text.append("⚡ 快速搜索结果\n");
+        }
+        text.append("🔍 搜索关键词: ").append(resultSet.getKeyword()).append("\n\n");
+
+        Map<String, List<SearchResultItem>> bySource = groupBy(resultSet.getItems(), true);
+        for (Map.Entry<String, List<SearchResultItem>> section : bySource.entrySet()) {
+            text.append(SECTION_TITLES.getOrDefault(section.getKey(), "📄 " + section.getKey())).append("\n")
+                .append(SECTION_RULE)
+                .append(formatSource(section.getKey(), section.getValue()))
+                .append("\n\n");
+        }
+        text.append("\n📊 共整合了 ").append(bySource.size()).append(" 个数据源的搜索结果");
+        return text.toString().trim();
+    }
+
+    /**
+     * 格式化同一个数据源的结果项
+     */
+    public static String formatSource(String source, List<SearchResultItem> items) {
+        if (items == null || items.isEmpty()) {
+            return "";
+        }
+        return SearchResultItem.SOURCE_MAKIFX.equals(source) ? formatByPlatform(items) : formatByTitle(items);
+    }
+
+    /**
+     * 【标题】\n链接\n链接\n\n，相邻的同标题条目合并到一组
+     */
+    private static String formatByTitle(List<SearchResultItem> items) {
+        StringBuilder text = new StringBuilder(items.size() * 100);
+        String currentTitle = null;
+        for (SearchResultItem item : items) {
+            String title = StrUtil.nullToEmpty(item.getTitle());
+            if (currentTitle == null || !currentTitle.equals(title)) {
+                if (currentTitle != null) {
+                    text.append("\n");
+                }
+                text.append("【").append(title).append("】\n");
+                currentTitle = title;
+            }
+            text.append(item.getUrl() != null ? item.getUrl() : StrUtil.nullToEmpty(item.getNote())).append("\n");
+            if (StrUtil.isNotBlank(item.getPassword())) {
+                text.append("提取码: ").append(item.getPassword()).append("\n");
+            }
+        }
+        return text.toString().trim();
+    }
+
+    /**
+     * 按网盘平台分组编号，附带提取码和备注
+     */
+    private static String formatByPlatform(List<SearchResultItem> items) {
+        StringBuilder text = new StringBuilder(items.size() * 100);
+        text.append("📊 找到网盘资源: ").append(items.size()).append(" 个\n\n");
+        for (Map.Entry<String, List<SearchResultItem>> platform : groupBy(items, false).entrySet()) {
+            List<SearchResultItem> platformItems = platform.getValue();
+            text.append(PLATFORM_NAMES.getOrDefault(platform.getKey(), PLATFORM_NAMES.get("other")))
+                .append(" (").append(platformItems.size()).append("个)\n")
+                .append(PLATFORM_RULE);
+            for (int i = 0; i < platformItems.size(); i++) {
+                SearchResultItem item = platformItems.get(i);
+                text.append(i + 1).append(". ").append(item.getUrl()).append("\n");
+                if (StrUtil.isNotBlank(item.getPassword())) {
+                    text.append("   🔑 提取码: ").append(item.getPassword()).append("\n");
+                }
+                if (StrUtil.isNotBlank(item.getNote()) && item.getNote().length() <= MAX_NOTE_LENGTH) {
+                    text.append("   📝 备注: ").append(item.getNote().trim()).append("\n");
+                }
+                text.append("\n");
+            }
+            text.append("\n");
+        }
+        return text.toString().trim();
+    }
+
+    /**
+     * 按数据源或网盘平台分组；平台按固定顺序排列，数据源按首次出现的顺序排列
+     */
+    private static Map<String, List<SearchResultItem>> groupBy(List<SearchResultItem> items, boolean bySource) {
+        Map<String, List<SearchResultItem>> groups = new LinkedHashMap<>();
+        if (!bySource) {
+            PLATFORM_NAMES.keySet().forEach(platform -> groups.put(platform, new ArrayList<>()));
+        }
+        for (SearchResultItem item : items) {
+            String group = bySource ? item.getSource()
+                    : PLATFORM_NAMES.containsKey(item.getPlatform()) ? item.getPlatform() : "other";
+            groups.computeIfAbsent(StrUtil.nullToEmpty(group), k -> new ArrayList<>()).add(item);
+        }
+        groups.values().removeIf(List::isEmpty);
+        return groups;
+    }
+}
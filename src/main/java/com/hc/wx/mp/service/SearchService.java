@@ -2,26 +2,40 @@ package com.hc.wx.mp.service;
 
 import cn.hutool.core.util.StrUtil;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.google.gson.reflect.TypeToken;
+import com.hc.wx.mp.cache.NegativeResultCache;
+import com.hc.wx.mp.cache.SearchResultCache;
+import com.hc.wx.mp.concurrent.CancellationToken;
+import com.hc.wx.mp.concurrent.Deadline;
+import com.hc.wx.mp.concurrent.FanIn;
+import com.hc.wx.mp.concurrent.HedgeBudget;
+import com.hc.wx.mp.concurrent.SearchExecutors;
+import com.hc.wx.mp.concurrent.SingleFlight;
 import com.hc.wx.mp.config.ApiConfig;
+import com.hc.wx.mp.entity.SearchResultItem;
 import com.hc.wx.mp.entity.TokenResponse;
+import com.hc.wx.mp.http.CircuitBreaker;
+import com.hc.wx.mp.http.CircuitBreakerRegistry;
+import com.hc.wx.mp.http.CircuitOpenException;
+import com.hc.wx.mp.http.UpstreamHttpClient;
 import com.hc.wx.mp.utils.JsonUtils;
+import com.hc.wx.mp.utils.KeywordNormalizer;
 import lombok.extern.slf4j.Slf4j;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
 import org.springframework.stereotype.Service;
 
-import javax.net.ssl.*;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStreamWriter;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Type;
 import java.net.URLEncoder;
-import java.security.cert.X509Certificate;
-import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.zip.GZIPInputStream;
 
 @Service
 @Slf4j
@@ -34,15 +48,41 @@ public class SearchService {
     private static final int MAKIFX_TIMEOUT_MILLIS = 4000;
     /** 最大重试次数 */
     private static final int MAX_RETRY_TIMES = 3;
-    /** 缓存结果的时间（分钟） */
-    private static final int CACHE_MINUTES = 10;
     /** 重试间隔基础时间（毫秒） */
     private static final int RETRY_BASE_DELAY = 500;
+    /** 重试前估算单次请求耗时使用的分位数 */
+    private static final double EXPECTED_LATENCY_PERCENTILE = 90;
+    /** 表单请求体类型 */
+    private static final MediaType FORM_MEDIA_TYPE = MediaType.get("application/x-www-form-urlencoded; charset=UTF-8");
+
+    // 上游接口名称（每个接口一个熔断器和耗时统计）
+    private static final String KKQWS_JUZI = "kkqws-juzi";
+    private static final String KKQWS_XIAOYU = "kkqws-xiaoyu";
+    private static final String KKQWS_SEARCH = "kkqws-search";
+    private static final String KKQWS_DYFX = "kkqws-dyfx";
+    private static final String UUKK_TOKEN = "uukk-token";
+    private static final String UUKK_DYFX = "uukk-dyfx";
+    private static final String UUKK_GGANG = "uukk-ggang";
+    private static final String MAKIFX = "makifx";
+    /** 缓存中结果项列表的 JSON 类型 */
+    private static final Type ITEM_LIST_TYPE = new TypeToken<List<SearchResultItem>>() { }.getType();
 
     // ================================ 成员变量 ================================
     private final ApiConfig apiConfig;
-    private final ExecutorService executorService;
-    private final Map<String, CacheEntry> searchCache = new ConcurrentHashMap<>();
+    private final UpstreamHttpClient httpClient;
+    private final CircuitBreakerRegistry circuitBreakers;
+    /** 上游请求使用阻塞 I/O 线程池，结果解析和格式化使用 CPU 线程池 */
+    private final SearchExecutors searchExecutors;
+    private final ScheduledExecutorService hedgeScheduler;
+    private final HedgeBudget hedgeBudget;
+    private final HedgeStats hedgeStats = new HedgeStats();
+    /** 相同关键词的并发搜索合并为一次 */
+    private final SingleFlight<String, String> mergeFlight = new SingleFlight<>();
+    private final SingleFlight<String, RawSearch> rawFlight = new SingleFlight<>();
+    private final SingleFlight<String, List<SearchResultItem>> makifxFlight = new SingleFlight<>();
+    private final SearchResultCache searchCache;
+    private final NegativeResultCache negativeCache;
+    private final CancellationStats cancellationStats = new CancellationStats();
 
     // ================================ 内部类 ================================
     @JsonIgnoreProperties(ignoreUnknown = true)
@@ -145,88 +185,57 @@ public class SearchService {
     }
 
     /**
-     * 缓存条目类
+     * 取消统计计数器
      */
-    private static class CacheEntry {
-        private final String result;
-        private final LocalDateTime expireTime;
-        
-        public CacheEntry(String result) {
-            this.result = result;
-            this.expireTime = LocalDateTime.now().plusMinutes(CACHE_MINUTES);
-        }
-        
-        public boolean isExpired() {
-            return LocalDateTime.now().isAfter(expireTime);
-        }
-        
-        public String getResult() {
-            return result;
-        }
+    private static class CancellationStats {
+        /** 搜索满足后被取消的数据源任务数 */
+        private final LongAdder futuresCancelled = new LongAdder();
+        /** 取消时仍在队列中、从未开始执行的任务数 */
+        private final LongAdder tasksSkipped = new LongAdder();
+        /** 因取消而省下的请求/重试次数 */
+        private final LongAdder attemptsSkipped = new LongAdder();
+        /** 剩余时间预算不足而未发起的请求/重试次数 */
+        private final LongAdder attemptsSkippedByDeadline = new LongAdder();
+    }
+
+    /**
+     * 对冲统计计数器
+     */
+    private static class HedgeStats {
+        /** 主请求数 */
+        private final LongAdder primaries = new LongAdder();
+        /** 实际发出的对冲请求数 */
+        private final LongAdder fired = new LongAdder();
+        /** 对冲请求先于主请求拿到有效结果的次数 */
+        private final LongAdder won = new LongAdder();
+        /** 达到对冲时机但因预算、线程池或剩余时间不足而未发出的次数 */
+        private final LongAdder denied = new LongAdder();
     }
 
     // ================================ 构造函数 ================================
-    public SearchService(ApiConfig apiConfig) {
+    public SearchService(ApiConfig apiConfig, UpstreamHttpClient httpClient, CircuitBreakerRegistry circuitBreakers,
+                         SearchResultCache searchCache, NegativeResultCache negativeCache,
+                         SearchExecutors searchExecutors) {
         this.apiConfig = apiConfig;
-        this.executorService = createOptimizedThreadPool();
-        // 初始化SSL上下文，信任所有证书（仅用于开发和测试）
-        initSSLContext();
+        this.searchExecutors = searchExecutors;
+        this.searchCache = searchCache;
+        this.negativeCache = negativeCache;
+        this.httpClient = httpClient;
+        this.circuitBreakers = circuitBreakers;
+        this.hedgeScheduler = createHedgeScheduler();
+        this.hedgeBudget = new HedgeBudget(apiConfig.getHedging().getBudgetRatio(), apiConfig.getHedging().getMaxBurst());
     }
 
-    private ThreadPoolExecutor createOptimizedThreadPool() {
-        return new ThreadPoolExecutor(
-            apiConfig.getThreadPool().getCoreSize(),
-            apiConfig.getThreadPool().getMaxSize(),
-            apiConfig.getThreadPool().getKeepAliveSeconds(),
-            TimeUnit.SECONDS,
-            new LinkedBlockingQueue<>(apiConfig.getThreadPool().getQueueCapacity()),
-            new ThreadPoolExecutor.CallerRunsPolicy()
-        );
+    private ScheduledExecutorService createHedgeScheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "search-hedge-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
     }
     
-    /**
-     * 初始化SSL上下文，信任所有证书
-     * 注意：这种做法仅适用于开发和测试环境
-     * 生产环境应该使用正确的证书验证
-     */
-    private void initSSLContext() {
-        try {
-            // 创建信任所有证书的TrustManager
-            TrustManager[] trustAllCerts = new TrustManager[] {
-                new X509TrustManager() {
-                    public X509Certificate[] getAcceptedIssuers() {
-                        return null;
-                    }
-                    public void checkClientTrusted(X509Certificate[] certs, String authType) {
-                        // 不做任何检查
-                    }
-                    public void checkServerTrusted(X509Certificate[] certs, String authType) {
-                        // 不做任何检查
-                    }
-                }
-            };
-            
-            // 创建SSL上下文
-            SSLContext sslContext = SSLContext.getInstance("TLS");
-            sslContext.init(null, trustAllCerts, new java.security.SecureRandom());
-            
-            // 设置默认的SSL Socket Factory
-            HttpsURLConnection.setDefaultSSLSocketFactory(sslContext.getSocketFactory());
-            
-            // 设置默认的Hostname Verifier
-            HttpsURLConnection.setDefaultHostnameVerifier(new HostnameVerifier() {
-                public boolean verify(String hostname, SSLSession session) {
-                    return true; // 信任所有hostname
-                }
-            });
-            
-            log.info("SSL上下文初始化完成，已设置信任所有证书");
-            
-        } catch (Exception e) {
-            log.error("SSL上下文初始化失败", e);
-        }
-    }
-
     // ================================ 主入口方法 ================================
 
     /**
@@ -234,14 +243,27 @@ public class SearchService {
      * 并发调用其核心API，并返回第一个有效结果。
      */
     public String searchAndMerge(String text) {
-        List<CompletableFuture<String>> futures = createKkqwsSearchFutures(text);
-        String jsonResponse = getFirstValidResult(futures, "searchAndMerge");
+        return searchAndMerge(text, defaultDeadline());
+    }
 
-        if (StrUtil.isBlank(jsonResponse)) {
-            return "";
-        }
+    public String searchAndMerge(String text, Deadline deadline) {
+        return searchAndMergeAsync(text, deadline).join();
+    }
 
-        return formatKkqwsSearchResult(jsonResponse, text);
+    /**
+     * {@link #searchAndMerge(String, Deadline)} 的异步版本，等待期间不占用调用方线程
+     */
+    public CompletableFuture<String> searchAndMergeAsync(String rawText, Deadline deadline) {
+        String text = normalizeKeyword(rawText);
+        if (text.isEmpty()) {
+            return CompletableFuture.completedFuture("");
+        }
+        return mergeFlight.executeAsync(text, () -> {
+            List<CompletableFuture<String>> futures = createKkqwsSearchFutures(text, deadline);
+            return getFirstValidResult(futures, "searchAndMerge", deadline)
+                    .thenApplyAsync(jsonResponse -> StrUtil.isBlank(jsonResponse) ? "" : formatKkqwsSearchResult(jsonResponse, text),
+                            searchExecutors.cpu());
+        });
     }
 
     /**
@@ -249,47 +271,197 @@ public class SearchService {
      * question作为展示名称，按照【标题】\n内容\n\n的格式输出
      */
     public String searchAndMergeRaw(String text) {
-        log.info("开始多线程数据获取并处理，查询内容: {}", text);
-        
-        // 检查缓存
-        String cachedResult = getCachedResult(text);
-        if (cachedResult != null) {
-            return cachedResult;
+        return searchAndMergeRaw(text, defaultDeadline());
+    }
+
+    public String searchAndMergeRaw(String text, Deadline deadline) {
+        return searchAndMergeRawAsync(text, deadline).join();
+    }
+
+    /**
+     * {@link #searchAndMergeRaw(String, Deadline)} 的异步版本，等待期间不占用调用方线程
+     */
+    public CompletableFuture<String> searchAndMergeRawAsync(String rawText, Deadline deadline) {
+        return searchItemsAsync(rawText, deadline)
+                .thenApplyAsync(items -> SearchResultFormatter.formatSource(SearchResultItem.SOURCE_KKQWS, items),
+                        searchExecutors.cpu());
+    }
+
+    /**
+     * 多线程获取 KKQWS 各数据源的结果，解析成结构化的结果项；搜不到时返回空列表
+     */
+    public CompletableFuture<List<SearchResultItem>> searchItemsAsync(String rawText, Deadline deadline) {
+        return searchItemsAsync(rawText, deadline, deadline, new CompletableFuture<>());
+    }
+
+    /**
+     * 多线程获取 KKQWS 各数据源的结果，汇聚只等到 deadline；截止时仍未返回的数据源不取消，
+     * 继续搜索到 lateDeadline，之后新增的结果项通过 lateItems 给出（没有时为空列表）。
+     * 共享了正在进行的同一关键词搜索时，迟到的结果以那次搜索的 lateDeadline 为准
+     */
+    public CompletableFuture<List<SearchResultItem>> searchItemsAsync(String rawText, Deadline deadline,
+                                                                      Deadline lateDeadline,
+                                                                      CompletableFuture<List<SearchResultItem>> lateItems) {
+        return searchRawAsync(rawText, deadline, lateDeadline).handle((raw, e) -> {
+            if (e != null) {
+                lateItems.complete(Collections.emptyList());
+                throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+            }
+            raw.late.whenComplete((items, lateError) ->
+                    lateItems.complete(lateError == null ? items : Collections.emptyList()));
+            return raw.items;
+        });
+    }
+
+    private CompletableFuture<RawSearch> searchRawAsync(String rawText, Deadline deadline, Deadline lateDeadline) {
+        String text = normalizeKeyword(rawText);
+        log.info("开始多线程数据获取并处理，查询内容: {}, 规范化后: {}, {}", rawText, text, deadline);
+        if (text.isEmpty()) {
+            return CompletableFuture.completedFuture(RawSearch.of(Collections.emptyList()));
         }
         
-        // 清理过期缓存
-        cleanExpiredCache();
-        
-        // 执行搜索并收集结果
-        List<String> allResults = executeSearchAndCollectResults(text);
-        
-        if (allResults.isEmpty()) {
-            log.warn("未获取到任何有效数据");
-            return "";
+        // 检查缓存：陈旧结果直接返回，同时在后台刷新
+        SearchResultCache.Lookup cached = searchCache.lookup(SearchResultCache.MERGED, text);
+        if (cached != null) {
+            log.info("命中缓存，直接返回结果: {}{}", text, cached.isStale() ? "（已过新鲜期，后台刷新）" : "");
+            if (cached.isStale()) {
+                refreshInBackground(SearchResultCache.MERGED, text,
+                        () -> loadRawAsync(text, Deadline.after(apiConfig.getDeadline().getApiBudgetMillis())));
+            }
+            return CompletableFuture.completedFuture(RawSearch.of(decodeItems(cached.getValue())));
+        }
+
+        // 最近确认搜不到结果的关键词：短期内直接返回，稍久一些的降级搜索
+        if (negativeCache.get(SearchResultCache.MERGED, text) != null) {
+            log.info("关键词最近搜不到结果，直接返回: {}", text);
+            return CompletableFuture.completedFuture(RawSearch.of(Collections.emptyList()));
+        }
+        if (negativeCache.isRecentlyEmpty(SearchResultCache.MERGED, text)) {
+            ApiConfig.CacheConfig cacheConfig = apiConfig.getCache();
+            log.info("关键词最近搜不到结果，降级搜索（{}个数据源，{}ms）: {}",
+                    cacheConfig.getDowngradedSources(), cacheConfig.getDowngradedBudgetMillis(), text);
+            Deadline downgraded = Deadline.after(deadline.cap(cacheConfig.getDowngradedBudgetMillis()));
+            return loadRawAsync(text, downgraded, downgraded, cacheConfig.getDowngradedSources());
         }
         
+        return loadRawAsync(text, deadline, lateDeadline, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 执行搜索并收集结果，同一关键词正在搜索时直接共享其结果
+     */
+    private CompletableFuture<RawSearch> loadRawAsync(String text, Deadline deadline) {
+        return loadRawAsync(text, deadline, deadline, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 只有数据源数量相同的搜索才合并：降级搜索与完整搜索不会共享彼此的结果
+     */
+    private CompletableFuture<RawSearch> loadRawAsync(String text, Deadline deadline, Deadline lateDeadline,
+                                                      int maxSources) {
+        String flightKey = maxSources == Integer.MAX_VALUE ? text : text + "#" + maxSources;
+        return rawFlight.executeAsync(flightKey, () -> executeSearchAndCollectResults(text, deadline, lateDeadline, maxSources)
+                .thenCompose(collected -> processResultsAsync(collected.results, text).thenApply(items -> {
+                    // 降级搜索只请求了部分数据源，没有结果不能说明关键词搜不到，不再记录，
+                    // 否则常被搜索的关键词会一直停留在降级状态，其余数据源上的结果永远搜不到
+                    recordResults(text, items, maxSources == Integer.MAX_VALUE && collected.allAnswered);
+                    return new RawSearch(items, collectLateItems(text, items, collected));
+                })));
+    }
+
+    /**
+     * 截止时仍在搜索的数据源返回后，与之前的结果一起重新解析并更新缓存，返回新增的结果项
+     */
+    private CompletableFuture<List<SearchResultItem>> collectLateItems(String text, List<SearchResultItem> items,
+                                                                       CollectedResults collected) {
+        if (collected.late == null) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        return collected.late.thenCompose(late -> {
+            if (late.results.isEmpty()) {
+                if (items.isEmpty()) {
+                    recordResults(text, items, late.allAnswered);
+                }
+                return CompletableFuture.completedFuture(Collections.<SearchResultItem>emptyList());
+            }
+            List<String> allResults = new ArrayList<>(collected.results);
+            allResults.addAll(late.results);
+            return processResultsAsync(allResults, text).thenApply(merged -> {
+                recordResults(text, merged, late.allAnswered);
+                List<SearchResultItem> added = merged.stream()
+                        .filter(item -> !items.contains(item))
+                        .collect(java.util.stream.Collectors.toList());
+                log.info("迟到的数据源返回，新增 {} 个结果项: {}", added.size(), text);
+                return added;
+            });
+        }).exceptionally(e -> {
+            log.warn("收集迟到的搜索结果失败: {}, 错误: {}", text, e.getMessage());
+            return Collections.emptyList();
+        });
+    }
+
+    /**
+     * 有结果时写入缓存；没有结果时只有所有数据源都正常应答才记为搜不到
+     */
+    private void recordResults(String text, List<SearchResultItem> items, boolean allAnswered) {
+        if (items.isEmpty()) {
+            // 所有数据源都正常应答且解析后确实没有结果，才认为关键词搜不到；
+            // 失败、熔断、时间不足而跳过或被取消的数据源都不算，上游故障不会记到关键词头上
+            if (allAnswered) {
+                log.info("所有数据源均未搜到结果，记录空结果: {}", text);
+                negativeCache.put(SearchResultCache.MERGED, text, "");
+            } else {
+                log.warn("未获取到任何有效数据");
+            }
+            return;
+        }
+
         // 处理结果并缓存
-        String finalResult = processAndFormatResults(allResults, text);
-        cacheResult(text, finalResult);
-        
-        return finalResult;
+        negativeCache.invalidate(SearchResultCache.MERGED, text);
+        cacheResult(text, items);
+    }
+
+    /**
+     * 一次 KKQWS 搜索的结果：汇聚截止时的结果项，以及截止时仍在搜索的数据源稍后新增的结果项
+     */
+    private static final class RawSearch {
+        private final List<SearchResultItem> items;
+        private final CompletableFuture<List<SearchResultItem>> late;
+
+        RawSearch(List<SearchResultItem> items, CompletableFuture<List<SearchResultItem>> late) {
+            this.items = items;
+            this.late = late;
+        }
+
+        static RawSearch of(List<SearchResultItem> items) {
+            return new RawSearch(items, CompletableFuture.completedFuture(Collections.emptyList()));
+        }
     }
 
     /**
      * uukk6.cn 的主搜索入口。
      * 自动获取Token，然后并发调用所有API，并返回第一个有效结果。
      */
-    public String searchUukkAll(String name) {
+    public String searchUukkAll(String rawName) {
+        return searchUukkAll(rawName, defaultDeadline(), new CancellationToken());
+    }
+
+    /**
+     * 在给定截止时间内搜索 uukk6.cn；令牌被取消时中止获取Token的请求和所有尚未返回的搜索
+     */
+    public String searchUukkAll(String rawName, Deadline deadline, CancellationToken cancellation) {
+        String name = normalizeKeyword(rawName);
         try {
-            TokenResponse tokenResponse = getToken();
+            TokenResponse tokenResponse = getToken(deadline, cancellation);
             if (tokenResponse == null || StrUtil.isEmpty(tokenResponse.getToken())) {
                 log.error("获取Token失败，无法继续搜索。");
                 return "";
             }
             String token = tokenResponse.getToken();
             
-            List<CompletableFuture<String>> futures = createUukkSearchFutures(name, token);
-            return getFirstValidResult(futures, "searchUukkAll");
+            List<CompletableFuture<String>> futures = createUukkSearchFutures(name, token, deadline);
+            cancellation.onCancel(() -> futures.forEach(future -> future.cancel(true)));
+            return getFirstValidResult(futures, "searchUukkAll", deadline).join();
         } catch (Exception e) {
             log.error("searchUukkAll 执行过程中发生异常", e);
             return "";
@@ -304,67 +476,131 @@ public class SearchService {
      * @return 格式化的搜索结果，只显示网盘链接
      */
     public String searchMakifx(String keyword) {
-        if (StrUtil.isBlank(keyword)) {
+        return searchMakifx(keyword, Deadline.after(MAKIFX_TIMEOUT_MILLIS));
+    }
+
+    /**
+     * 在给定截止时间内搜索 Makifx 资源，单次请求超时取 4秒 与剩余时间的较小值
+     */
+    public String searchMakifx(String rawKeyword, Deadline deadline) {
+        String keyword = StrUtil.isBlank(rawKeyword) ? "" : normalizeKeyword(rawKeyword);
+        if (keyword.isEmpty()) {
             return "搜索关键词不能为空";
         }
+        List<SearchResultItem> items = searchMakifxItems(keyword, deadline);
+        if (items.isEmpty()) {
+            return "未找到相关资源";
+        }
+        return "🔍 搜索关键词: " + keyword + "\n"
+                + SearchResultFormatter.formatSource(SearchResultItem.SOURCE_MAKIFX, items);
+    }
+
+    /**
+     * 在给定截止时间内搜索 Makifx 的网盘资源，返回结构化的结果项；搜不到、超时或失败时返回空列表
+     */
+    public List<SearchResultItem> searchMakifxItems(String rawKeyword, Deadline deadline) {
+        return searchMakifxItems(rawKeyword, deadline, new CancellationToken());
+    }
+
+    /**
+     * 可取消的 Makifx 搜索：令牌被取消时中止正在进行的请求，释放连接和主机许可。
+     * 同一关键词合并进来的其他请求仍在等待时，共享的请求不会因为其中一个调用方取消而中止
+     */
+    public List<SearchResultItem> searchMakifxItems(String rawKeyword, Deadline deadline,
+                                                    CancellationToken cancellation) {
+        String keyword = StrUtil.isBlank(rawKeyword) ? "" : normalizeKeyword(rawKeyword);
+        if (keyword.isEmpty()) {
+            return Collections.emptyList();
+        }
+        
+        log.info("开始搜索 Makifx 资源，关键词: [{}], 规范化后: [{}], {}", rawKeyword, keyword, deadline);
         
-        log.info("开始搜索 Makifx 资源，关键词: [{}]", keyword);
+        // 检查缓存：陈旧结果直接返回，同时在后台刷新
+        SearchResultCache.Lookup cached = searchCache.lookup(SearchResultCache.MAKIFX, keyword);
+        if (cached != null) {
+            log.info("Makifx 搜索命中缓存: {}{}", keyword, cached.isStale() ? "（已过新鲜期，后台刷新）" : "");
+            if (cached.isStale()) {
+                refreshInBackground(SearchResultCache.MAKIFX, keyword, () -> CompletableFuture.completedFuture(
+                        makifxFlight.execute(keyword, new CancellationToken(),
+                                shared -> fetchMakifx(keyword, Deadline.after(MAKIFX_TIMEOUT_MILLIS), shared))));
+            }
+            return decodeItems(cached.getValue());
+        }
+
+        // 最近确认搜不到结果的关键词：短期内直接返回，稍久一些的缩短预算
+        if (negativeCache.get(SearchResultCache.MAKIFX, keyword) != null) {
+            log.info("Makifx 关键词最近搜不到结果，直接返回: {}", keyword);
+            return Collections.emptyList();
+        }
+        Deadline searchDeadline = deadline;
+        if (negativeCache.isRecentlyEmpty(SearchResultCache.MAKIFX, keyword)) {
+            searchDeadline = Deadline.after(deadline.cap(apiConfig.getCache().getDowngradedBudgetMillis()));
+            log.info("Makifx 关键词最近搜不到结果，降级搜索: {}, {}", keyword, searchDeadline);
+        }
         
-        // 检查缓存
-        String cacheKey = "makifx_" + keyword.hashCode();
-        CacheEntry cached = searchCache.get(cacheKey);
-        if (cached != null && !cached.isExpired()) {
-            log.info("Makifx 搜索命中缓存: {}", keyword);
-            return cached.getResult();
+        Deadline finalDeadline = searchDeadline;
+        return makifxFlight.execute(keyword, cancellation, shared -> fetchMakifx(keyword, finalDeadline, shared));
+    }
+
+    private List<SearchResultItem> fetchMakifx(String keyword, Deadline deadline, CancellationToken cancellation) {
+        if (cancellation.isCancelled()) {
+            cancellationStats.attemptsSkipped.increment();
+            log.debug("Makifx 搜索已被取消，跳过此数据源");
+            return Collections.emptyList();
+        }
+        if (!deadline.hasAtLeast(minAttemptMillis())) {
+            cancellationStats.attemptsSkippedByDeadline.increment();
+            log.info("Makifx 搜索剩余时间不足 ({}ms)，跳过此数据源", deadline.remainingMillis());
+            return Collections.emptyList();
         }
         
         long searchStartTime = System.currentTimeMillis();
         
         try {
-            // 调用 Makifx API（4秒超时）
-            String jsonResponse = sendMakifxRequest(keyword);
+            // 调用 Makifx API（不超过4秒，也不超过剩余时间）
+            String jsonResponse = sendMakifxRequest(keyword, deadline, cancellation);
             
             long searchTime = System.currentTimeMillis() - searchStartTime;
             
             if (StrUtil.isBlank(jsonResponse)) {
                 log.warn("Makifx API 返回空响应，关键词: {}, 耗时: {}ms", keyword, searchTime);
-                // 超过4秒的情况下，返回空字符串让其他搜索接管
-                if (searchTime > MAKIFX_TIMEOUT_MILLIS) {
-                    log.info("Makifx 搜索超时 ({}ms)，跳过此数据源", searchTime);
-                    return "";
-                }
-                return "未获取到搜索结果";
+                return Collections.emptyList();
             }
             
-            // 解析并格式化结果
-            String formattedResult = formatMakifxResult(jsonResponse, keyword);
+            // 解析结果：null 表示响应异常，空列表表示确实搜不到
+            List<SearchResultItem> items = parseMakifxResult(jsonResponse, keyword);
             
             log.info("Makifx 搜索完成，关键词: {}, 总耗时: {}ms", keyword, searchTime);
             
-            // 只有成功的结果才缓存
-            if (StrUtil.isNotBlank(formattedResult) && 
-                !formattedResult.contains("未找到") && 
-                !formattedResult.contains("失败") && 
-                !formattedResult.contains("异常") &&
-                !formattedResult.contains("不可用")) {
-                searchCache.put(cacheKey, new CacheEntry(formattedResult));
-                log.info("Makifx 搜索结果已缓存，关键词: {}", keyword);
+            if (items == null) {
+                // 响应异常属于上游问题，由熔断处理，不缓存也不记到关键词头上
+                return Collections.emptyList();
             }
+            if (items.isEmpty()) {
+                // 只记录确实搜不到的关键词
+                negativeCache.put(SearchResultCache.MAKIFX, keyword, "");
+                return items;
+            }
+            negativeCache.invalidate(SearchResultCache.MAKIFX, keyword);
+            searchCache.put(SearchResultCache.MAKIFX, keyword, encodeItems(items));
+            log.info("Makifx 搜索结果已缓存，关键词: {}", keyword);
+            return items;
             
-            return formattedResult;
-            
-        } catch (java.net.SocketTimeoutException e) {
+        } catch (CircuitOpenException e) {
+            log.info("Makifx 已熔断，跳过此数据源");
+            return Collections.emptyList();
+        } catch (InterruptedIOException e) {
             long searchTime = System.currentTimeMillis() - searchStartTime;
             log.warn("Makifx 搜索超时，关键词: {}, 耗时: {}ms", keyword, searchTime);
-            return ""; // 超时直接返回空，让其他搜索数据源接管
+            return Collections.emptyList(); // 超时直接返回空，让其他搜索数据源接管
         } catch (Exception e) {
             long searchTime = System.currentTimeMillis() - searchStartTime;
-            log.error("Makifx 搜索失败，关键词: {}, 耗时: {}ms, 错误: {}", keyword, searchTime, e.getMessage());
-            // 如果是快速失败（没超过4秒），返回错误信息；如果超时了，返回空让其他接管
-            if (searchTime > MAKIFX_TIMEOUT_MILLIS) {
-                return "";
+            if (cancellation.isCancelled()) {
+                log.debug("Makifx 搜索已被取消，请求已中止，关键词: {}, 耗时: {}ms", keyword, searchTime);
+                return Collections.emptyList();
             }
-            return "搜索过程中发生错误: " + e.getMessage();
+            log.error("Makifx 搜索失败，关键词: {}, 耗时: {}ms, 错误: {}", keyword, searchTime, e.getMessage());
+            return Collections.emptyList();
         }
     }
 
@@ -410,7 +646,7 @@ public class SearchService {
         log.info("URL编码调试信息:\n{}", debugInfo);
         
         try {
-            String result = sendMakifxRequest(keyword);
+            String result = sendMakifxRequest(keyword, Deadline.after(MAKIFX_TIMEOUT_MILLIS), new CancellationToken());
             log.info("API调用完成，结果长度: {} 字符", result.length());
             return String.format("调试信息：\n%s\n\nAPI调用结果长度: %d 字符", debugInfo, result.length());
         } catch (Exception e) {
@@ -419,118 +655,176 @@ public class SearchService {
         }
     }
 
-    private String getCachedResult(String text) {
-        String cacheKey = "search_" + text.hashCode();
-        CacheEntry cached = searchCache.get(cacheKey);
-        if (cached != null && !cached.isExpired()) {
-            log.info("命中缓存，直接返回结果: {}", text);
-            return cached.getResult();
+    /**
+     * 搜索入口统一先规范化关键词，之后的缓存、并发合并、空结果记录和上游查询都使用规范化结果
+     */
+    private String normalizeKeyword(String keyword) {
+        return KeywordNormalizer.normalize(keyword);
+    }
+
+    /**
+     * 并发搜索合并统计
+     */
+    public Map<String, Object> getSingleFlightStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("searchAndMerge", mergeFlight.getStats());
+        stats.put("searchAndMergeRaw", rawFlight.getStats());
+        stats.put("searchMakifx", makifxFlight.getStats());
+        return stats;
+    }
+
+    /**
+     * 在阻塞 I/O 线程池中刷新陈旧的缓存结果；同一关键词同时只刷新一次，线程池已满时放弃本次刷新
+     */
+    private void refreshInBackground(String namespace, String keyword, Supplier<? extends CompletableFuture<?>> refresh) {
+        if (!searchCache.beginRefresh(namespace, keyword)) {
+            return;
+        }
+        try {
+            // 线程池排满时直接拒绝，不会在调用方线程执行而阻塞本次请求
+            searchExecutors.io().execute(() -> {
+                try {
+                    refresh.get().whenComplete((result, ex) -> {
+                        searchCache.endRefresh(namespace, keyword);
+                        if (ex != null) {
+                            log.warn("后台刷新缓存失败，关键词: {}, 错误: {}", keyword, ex.getMessage());
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    searchCache.endRefresh(namespace, keyword);
+                    log.warn("后台刷新缓存失败，关键词: {}, 错误: {}", keyword, e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            searchCache.endRefresh(namespace, keyword);
+            log.info("搜索线程池已满，跳过后台刷新: {}", keyword);
         }
-        return null;
     }
 
-    private void cleanExpiredCache() {
-        searchCache.entrySet().removeIf(entry -> entry.getValue().isExpired());
+    private void cacheResult(String text, List<SearchResultItem> items) {
+        if (!items.isEmpty()) {
+            searchCache.put(SearchResultCache.MERGED, text, encodeItems(items));
+            log.debug("结果已存储到缓存，关键词: {}", text);
+        }
     }
 
-    private void cacheResult(String text, String result) {
-        if (!result.isEmpty()) {
-            String cacheKey = "search_" + text.hashCode();
-            searchCache.put(cacheKey, new CacheEntry(result));
-            log.debug("结果已存储到缓存，cacheKey: {}", cacheKey);
+    /**
+     * 缓存中的结果项以 JSON 保存，L2 共享层里的条目也是同样格式
+     */
+    private static String encodeItems(List<SearchResultItem> items) {
+        return JsonUtils.toCompactJson(items);
+    }
+
+    private static List<SearchResultItem> decodeItems(String json) {
+        try {
+            List<SearchResultItem> items = JsonUtils.fromJson(json, ITEM_LIST_TYPE);
+            return items != null ? items : Collections.emptyList();
+        } catch (RuntimeException e) {
+            log.warn("缓存中的结果无法解析，按未命中处理: {}", e.getMessage());
+            return Collections.emptyList();
         }
     }
 
     // ================================ 搜索执行方法 ================================
 
-    private List<CompletableFuture<String>> createKkqwsSearchFutures(String text) {
+    private List<CompletableFuture<String>> createKkqwsSearchFutures(String text, Deadline deadline) {
+        return createKkqwsSearchFutures(text, deadline, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 只请求前 maxSources 个数据源（降级搜索时使用）
+     */
+    private List<CompletableFuture<String>> createKkqwsSearchFutures(String text, Deadline deadline, int maxSources) {
+        Map<String, UpstreamRequest> sources = new LinkedHashMap<>();
+        sources.put(KKQWS_JUZI, (d, cancellation) -> getJuziKkqws(text, d, cancellation));
+        sources.put(KKQWS_XIAOYU, (d, cancellation) -> getXiaoyuKkqws(text, d, cancellation));
+        sources.put(KKQWS_SEARCH, (d, cancellation) -> searchKkqws(text, d, cancellation));
+        sources.put(KKQWS_DYFX, (d, cancellation) -> getDyfxKkqws(text, d, cancellation));
+
         List<CompletableFuture<String>> futures = new ArrayList<>();
-        futures.add(createSearchFuture(() -> getJuziKkqws(text), "getJuziKkqws"));
-        futures.add(createSearchFuture(() -> getXiaoyuKkqws(text), "getXiaoyuKkqws"));
-        futures.add(createSearchFuture(() -> searchKkqws(text), "searchKkqws"));
-        futures.add(createSearchFuture(() -> getDyfxKkqws(text), "getDyfxKkqws"));
+        for (Map.Entry<String, UpstreamRequest> source : sources.entrySet()) {
+            if (futures.size() >= maxSources) {
+                break;
+            }
+            futures.add(createSearchFuture(source.getValue(), source.getKey(), deadline));
+        }
         return futures;
     }
 
-    private List<CompletableFuture<String>> createUukkSearchFutures(String name, String token) {
+    private List<CompletableFuture<String>> createUukkSearchFutures(String name, String token, Deadline deadline) {
         List<CompletableFuture<String>> futures = new ArrayList<>();
-        futures.add(createSearchFuture(() -> getDyfxUukk(name, token), "getDyfxUukk"));
-        futures.add(createSearchFuture(() -> getGGangUukk(name, token), "getGGangUukk"));
+        futures.add(createSearchFuture((d, cancellation) -> getDyfxUukk(name, token, d, cancellation), UUKK_DYFX, deadline));
+        futures.add(createSearchFuture((d, cancellation) -> getGGangUukk(name, token, d, cancellation), UUKK_GGANG, deadline));
         return futures;
     }
 
-    private List<String> executeSearchAndCollectResults(String text) {
-        List<CompletableFuture<String>> futures = createKkqwsSearchFutures(text);
-        List<String> allResults = new ArrayList<>();
-        
+    /**
+     * 并发请求各数据源，收集到2个有效结果或所有任务完成即结束，最多等到截止时间；
+     * lateDeadline 晚于截止时间时，截止时仍未返回的数据源继续搜索到 lateDeadline，另行汇聚
+     */
+    private CompletableFuture<CollectedResults> executeSearchAndCollectResults(String text, Deadline deadline,
+                                                                               Deadline lateDeadline, int maxSources) {
+        boolean collectLate = lateDeadline.remainingMillis() > deadline.remainingMillis();
+        List<CompletableFuture<String>> futures = createKkqwsSearchFutures(text, collectLate ? lateDeadline : deadline,
+                maxSources);
+        // 汇聚结束时会取消传入的 future，需要继续搜索时交给它各数据源的副本
+        List<CompletableFuture<String>> collecting = collectLate
+                ? futures.stream().map(CompletableFuture::copy).collect(java.util.stream.Collectors.toList())
+                : futures;
         long startTime = System.currentTimeMillis();
         
-        try {
-            // 使用轮询方式检查结果，避免等待所有任务完成
-            // 优先返回快速完成的结果，减少总等待时间
-            long maxWaitTime = TIMEOUT_MILLIS;
-            long pollInterval = 100; // 100ms轮询间隔
-            
-            while (System.currentTimeMillis() - startTime < maxWaitTime) {
-                boolean hasNewResults = false;
-                
-                // 检查已完成的任务
-                for (CompletableFuture<String> future : futures) {
-                    if (future.isDone() && !future.isCompletedExceptionally()) {
-                        try {
-                            String result = future.get(0, TimeUnit.MILLISECONDS); // 立即获取
-                            if (!result.isEmpty() && !isInvalidResult(result) && !allResults.contains(result)) {
-                                allResults.add(result);
-                                hasNewResults = true;
-                                log.info("获取到有效结果，长度: {} 字符，已收集: {} 个结果", result.length(), allResults.size());
-                            }
-                        } catch (Exception e) {
-                            // 忽略已处理的future
-                        }
-                    }
-                }
-                
-                // 如果已经收集到足够的结果，可以提前结束
-                if (allResults.size() >= 2) {
-                    log.info("已收集到 {} 个有效结果，提前结束等待", allResults.size());
-                    break;
-                }
-                
-                // 检查是否所有任务都已完成
-                boolean allDone = futures.stream().allMatch(CompletableFuture::isDone);
-                if (allDone) {
-                    log.info("所有任务已完成，结束等待");
-                    break;
-                }
-                
-                // 如果没有新结果且还有任务未完成，继续等待
-                if (!hasNewResults) {
-                    Thread.sleep(pollInterval);
-                }
+        return FanIn.firstNValid(collecting, 2, this::isValidResult, deadline.remainingMillis())
+                .thenApply(allResults -> {
+                    long totalTime = System.currentTimeMillis() - startTime;
+                    log.info("多线程数据获取完成，耗时: {}ms，共收集到 {} 个有效结果", totalTime, allResults.size());
+                    // 失败的数据源以异常结束，超时未完成的被汇聚取消，同样算作异常结束
+                    boolean allAnswered = allAnswered(futures);
+                    CompletableFuture<CollectedResults> late = collectLate
+                            ? collectUnfinished(futures, collecting, 2 - allResults.size(), lateDeadline) : null;
+                    return new CollectedResults(allResults, allAnswered, late);
+                });
+    }
+
+    /**
+     * 汇聚截止时没有结果的数据源继续搜索，再收集 wanted 个有效结果；不需要更多结果时直接取消它们
+     */
+    private CompletableFuture<CollectedResults> collectUnfinished(List<CompletableFuture<String>> futures,
+                                                                  List<CompletableFuture<String>> collecting,
+                                                                  int wanted, Deadline lateDeadline) {
+        List<CompletableFuture<String>> unfinished = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            // 副本能被取消说明汇聚结束时这个数据源还没有返回
+            if (collecting.get(i).cancel(true)) {
+                unfinished.add(futures.get(i));
             }
-            
-        } catch (Exception e) {
-            log.error("等待任务完成时发生异常", e);
         }
-        
-        // 最后一次收集剩余的已完成结果
-        for (CompletableFuture<String> future : futures) {
-            if (future.isDone() && !future.isCompletedExceptionally()) {
-                try {
-                    String result = future.get(0, TimeUnit.MILLISECONDS);
-                    if (!result.isEmpty() && !isInvalidResult(result) && !allResults.contains(result)) {
-                        allResults.add(result);
-                        log.info("最后收集到有效结果，长度: {} 字符", result.length());
-                    }
-                } catch (Exception e) {
-                    log.debug("获取剩余结果时发生异常: {}", e.getMessage());
-                }
-            }
+        if (unfinished.isEmpty() || wanted <= 0) {
+            unfinished.forEach(future -> future.cancel(true));
+            return null;
+        }
+        log.info("{} 个数据源在汇聚截止时仍未返回，继续搜索 {}ms", unfinished.size(), lateDeadline.remainingMillis());
+        return FanIn.firstNValid(unfinished, wanted, this::isValidResult, lateDeadline.remainingMillis())
+                .thenApply(lateResults -> new CollectedResults(lateResults, allAnswered(futures), null));
+    }
+
+    private static boolean allAnswered(List<CompletableFuture<String>> futures) {
+        return futures.stream().allMatch(f -> f.isDone() && !f.isCompletedExceptionally());
+    }
+
+    /**
+     * 汇聚到的各数据源原始响应、是否所有数据源都正常应答，
+     * 以及截止时仍在搜索的数据源稍后的汇聚结果（没有时为 null）
+     */
+    private static final class CollectedResults {
+        private final List<String> results;
+        private final boolean allAnswered;
+        private final CompletableFuture<CollectedResults> late;
+
+        CollectedResults(List<String> results, boolean allAnswered, CompletableFuture<CollectedResults> late) {
+            this.results = results;
+            this.allAnswered = allAnswered;
+            this.late = late;
         }
-        
-        long totalTime = System.currentTimeMillis() - startTime;
-        log.info("优化后的多线程数据获取完成，耗时: {}ms，共收集到 {} 个有效结果", totalTime, allResults.size());
-        return allResults;
     }
     // ================================ 结果处理方法 ================================
 
@@ -576,19 +870,32 @@ public class SearchService {
         return allLinks;
     }
 
-    private String processAndFormatResults(List<String> allResults, String text) {
+    /**
+     * 每个数据源的结果在 CPU 线程池中并行解析，全部解析完后按数据源顺序合并去重；
+     * 等待解析时不占用任何线程
+     */
+    private CompletableFuture<List<SearchResultItem>> processResultsAsync(List<String> allResults, String text) {
+        if (allResults.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
         long startTime = System.currentTimeMillis();
-        
-        // 使用并行流处理结果，减少数据合并时间
-        List<ResultItem> processedItems = allResults.parallelStream()
-            .flatMap(jsonResult -> {
+        List<CompletableFuture<List<ResultItem>>> parsed = allResults.stream()
+            .map(jsonResult -> CompletableFuture.supplyAsync(() -> {
                 try {
-                    return parseJsonToResultItems(jsonResult, text).stream();
+                    return parseJsonToResultItems(jsonResult, text);
                 } catch (Exception e) {
                     log.warn("解析结果时发生异常，跳过: {}", e.getMessage());
-                    return java.util.stream.Stream.empty();
+                    return Collections.<ResultItem>emptyList();
                 }
-            })
+            }, searchExecutors.cpu()))
+            .collect(java.util.stream.Collectors.toList());
+        return CompletableFuture.allOf(parsed.toArray(new CompletableFuture<?>[0]))
+                .thenApply(done -> mergeParsedResults(parsed, startTime));
+    }
+
+    private List<SearchResultItem> mergeParsedResults(List<CompletableFuture<List<ResultItem>>> parsed, long startTime) {
+        List<ResultItem> processedItems = parsed.stream()
+            .flatMap(future -> future.join().stream())
             .distinct() // 去重，基于equals和hashCode
             .limit(50) // 限制最大结果数量，避免过度处理
             .collect(java.util.stream.Collectors.toList());
@@ -597,17 +904,16 @@ public class SearchService {
         
         if (processedItems.isEmpty()) {
             log.warn("未能从 JSON 数据中提取到有效的内容项，解析耗时: {}ms", parseTime);
-            return "未找到相关内容";
+            return Collections.emptyList();
         }
         
-        // 快速格式化结果
-        String formattedResult = formatResultItemsOptimized(processedItems);
+        List<SearchResultItem> items = toSearchResultItems(processedItems);
         
         long totalTime = System.currentTimeMillis() - startTime;
-        log.info("优化后的结果处理完成，共提取 {} 个内容项，解析耗时: {}ms，总耗时: {}ms", 
-                processedItems.size(), parseTime, totalTime);
+        log.info("结果处理完成，共提取 {} 个内容项、{} 个链接，解析耗时: {}ms，总耗时: {}ms", 
+                processedItems.size(), items.size(), parseTime, totalTime);
         
-        return formattedResult;
+        return items;
     }
 
     private List<ResultItem> parseJsonToResultItems(String jsonResult, String defaultTitle) {
@@ -653,27 +959,24 @@ public class SearchService {
         return items;
     }
 
-    private String formatResultItems(List<ResultItem> processedItems) {
-        return formatResultItemsOptimized(processedItems);
-    }
-    
     /**
-     * 优化后的结果格式化方法，使用StringBuilder预分配容量，减少内存分配
+     * 每个链接一条结果项；内容里没有链接的保留原文作为备注
      */
-    private String formatResultItemsOptimized(List<ResultItem> processedItems) {
-        // 预估容量，减少StringBuilder扩容次数
-        int estimatedCapacity = processedItems.size() * 100; // 每个item平均100字符
-        StringBuilder finalResult = new StringBuilder(estimatedCapacity);
-        
+    private List<SearchResultItem> toSearchResultItems(List<ResultItem> processedItems) {
+        List<SearchResultItem> items = new ArrayList<>(processedItems.size() * 2);
         for (ResultItem item : processedItems) {
-            finalResult.append("【").append(item.getTitle()).append("】\n");
-            finalResult.append(item.getContent()).append("\n\n");
+            List<String> urls = extractUrlsFromText(item.getContent());
+            if (urls.isEmpty()) {
+                items.add(new SearchResultItem(SearchResultItem.SOURCE_KKQWS, "other", item.getTitle(),
+                        null, null, item.getContent(), null));
+                continue;
+            }
+            for (String url : urls) {
+                items.add(new SearchResultItem(SearchResultItem.SOURCE_KKQWS, SearchResultItem.platformOf(url),
+                        item.getTitle(), url, null, null, null));
+            }
         }
-        
-        String result = finalResult.toString().trim();
-        log.info("优化的格式化完成，共 {} 个项，总长度: {} 字符", processedItems.size(), result.length());
-        
-        return result;
+        return items;
     }
     
     /**
@@ -781,53 +1084,250 @@ public class SearchService {
     
     // ================================ 底层HTTP与并发逻辑 ================================
 
-    private String getFirstValidResult(List<CompletableFuture<String>> futures, String operationName) {
-        long startTime = System.currentTimeMillis();
-        while (System.currentTimeMillis() - startTime < TIMEOUT_MILLIS) {
-            for (CompletableFuture<String> future : futures) {
-                if (future.isDone()) {
-                    String result = future.getNow("");
-                    if (!result.isEmpty() && !isInvalidResult(result)) {
+    private CompletableFuture<String> getFirstValidResult(List<CompletableFuture<String>> futures, String operationName,
+                                                          Deadline deadline) {
+        long waitMillis = deadline.remainingMillis();
+        return FanIn.firstValid(futures, this::isValidResult, waitMillis, "")
+                .thenApply(result -> {
+                    if (result.isEmpty()) {
+                        log.warn("{} 所有并发任务在超时 {}ms 内均未返回有效结果。", operationName, waitMillis);
+                    } else {
                         log.info("{} 成功从一个并发任务中获取到结果。", operationName);
-                        return result;
                     }
-                }
+                    return result;
+                });
+    }
+
+    /**
+     * 提交一个可取消的数据源任务。
+     * 返回的 future 被取消时（例如汇聚已拿到足够结果），会同时：
+     * 跳过尚未开始的任务、中断重试等待、中止正在进行的HTTP连接。
+     * 任务排到时若剩余时间已不够一次请求，同样直接放弃。
+     * 主请求超过该接口近期耗时分位数仍未返回时，会按对冲预算再发一个相同请求。
+     */
+    private CompletableFuture<String> createSearchFuture(UpstreamRequest task, String operationName, Deadline deadline) {
+        return new SourceCall(task, operationName, deadline).start();
+    }
+
+    /**
+     * 一个数据源的调用：主请求（带重试）加上可能的一个对冲请求，
+     * 谁先拿到有效结果就用谁，另一个立即取消；两者都没有有效结果（失败、熔断、剩余时间不足或被取消）时
+     * 以 {@link SourceUnavailableException} 异常结束，与上游正常应答但没有结果区分开。
+     */
+    private final class SourceCall {
+        private final UpstreamRequest task;
+        private final String operationName;
+        private final Deadline deadline;
+        private final CompletableFuture<String> future = new CompletableFuture<>();
+        private final CancellationToken primaryToken = new CancellationToken();
+        private final CancellationToken hedgeToken = new CancellationToken();
+        /** 尚未结束的请求数（主请求 + 已发出的对冲请求） */
+        private final AtomicInteger outstanding = new AtomicInteger(1);
+        private volatile Future<?> primary;
+        private volatile Future<?> hedge;
+        private volatile ScheduledFuture<?> hedgeTimer;
+
+        SourceCall(UpstreamRequest task, String operationName, Deadline deadline) {
+            this.task = task;
+            this.operationName = operationName;
+            this.deadline = deadline;
+        }
+
+        CompletableFuture<String> start() {
+            hedgeStats.primaries.increment();
+            hedgeBudget.onRequest();
+            try {
+                primary = searchExecutors.io().submit(this::runPrimary);
+            } catch (RejectedExecutionException e) {
+                log.warn("搜索I/O线程池已满，跳过数据源: {}", operationName);
+                future.completeExceptionally(new SourceUnavailableException(operationName));
+                return future;
             }
+
+            long hedgeDelay = hedgeDelayMillis(operationName);
+            if (hedgeDelay >= 0 && !future.isDone()) {
+                hedgeTimer = hedgeScheduler.schedule(this::fireHedge, hedgeDelay, TimeUnit.MILLISECONDS);
+            }
+            future.whenComplete((result, e) -> onFinished());
+            return future;
+        }
+
+        private void runPrimary() {
+            if (future.isDone()) {
+                cancellationStats.tasksSkipped.increment();
+                return;
+            }
+            finish(executeWithRetry(task, operationName, deadline, primaryToken), false);
+        }
+
+        private void fireHedge() {
+            if (future.isDone()) {
+                return;
+            }
+            if (!deadline.hasAtLeast(minAttemptMillis()) || !hedgeBudget.tryAcquire()) {
+                hedgeStats.denied.increment();
+                return;
+            }
+            outstanding.incrementAndGet();
             try {
-                Thread.sleep(10);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                return "";
+                hedge = searchExecutors.io().submit(this::runHedge);
+            } catch (RejectedExecutionException e) {
+                // I/O 线程池已满时不对冲
+                hedgeStats.denied.increment();
+                finish("", true);
+                return;
+            }
+            log.info("{} 超过近期耗时分位数仍未返回，提交对冲请求", operationName);
+        }
+
+        private void runHedge() {
+            String result = "";
+            // 对冲请求可能在线程池中排队了一段时间，开始执行时剩余时间已不够一次请求则放弃
+            if (!future.isDone() && !deadline.hasAtLeast(minAttemptMillis())) {
+                hedgeStats.denied.increment();
+                log.info("{} 对冲请求开始执行时剩余时间不足 ({}ms)，放弃", operationName, deadline.remainingMillis());
+            } else if (!future.isDone()) {
+                hedgeStats.fired.increment();
+                try {
+                    result = task.call(deadline, hedgeToken);
+                } catch (Exception e) {
+                    log.debug("{} 对冲请求失败: {}", operationName, e.getMessage());
+                }
+            }
+            finish(result, true);
+        }
+
+        private void finish(String result, boolean fromHedge) {
+            if (isValidResult(result)) {
+                if (future.complete(result)) {
+                    if (fromHedge) {
+                        hedgeStats.won.increment();
+                        abort(primaryToken, primary);
+                    } else {
+                        abort(hedgeToken, hedge);
+                    }
+                }
+            } else if (outstanding.decrementAndGet() == 0) {
+                future.completeExceptionally(new SourceUnavailableException(operationName));
+            }
+        }
+
+        private void onFinished() {
+            if (hedgeTimer != null) {
+                hedgeTimer.cancel(false);
+            }
+            if (future.isCancelled()) {
+                cancellationStats.futuresCancelled.increment();
+                abort(primaryToken, primary);
+                abort(hedgeToken, hedge);
+            }
+        }
+
+        private void abort(CancellationToken token, Future<?> running) {
+            token.cancel();
+            if (running != null) {
+                running.cancel(true);
             }
         }
-        log.warn("{} 所有并发任务在超时 {}ms 内均未返回有效结果。", operationName, TIMEOUT_MILLIS);
-        return "";
     }
 
-    private CompletableFuture<String> createSearchFuture(Callable<String> task, String operationName) {
-        return CompletableFuture.supplyAsync(() -> executeWithRetry(task, operationName), executorService);
+    /**
+     * 数据源没有拿到有效应答
+     */
+    private static final class SourceUnavailableException extends RuntimeException {
+        SourceUnavailableException(String operationName) {
+            super(operationName + " 未返回有效结果", null, false, false);
+        }
+    }
+
+    /**
+     * 对冲触发时间：该接口近期耗时的 p90~p95 分位；
+     * 未启用、样本不足或熔断器不处于关闭状态时返回 -1，表示不对冲
+     */
+    private long hedgeDelayMillis(String operationName) {
+        ApiConfig.HedgingConfig hedging = apiConfig.getHedging();
+        CircuitBreaker breaker = circuitBreakers.get(operationName);
+        if (!hedging.isEnabled() || breaker.getState() != CircuitBreaker.State.CLOSED
+                || breaker.latencySampleCount() < hedging.getMinSamples()) {
+            return -1;
+        }
+        return breaker.latencyPercentile(hedging.getPercentile());
+    }
+
+    /**
+     * 对冲统计：主请求数、发出/胜出/被拒绝的对冲请求数以及当前预算
+     */
+    public Map<String, Object> getHedgingStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long primaries = hedgeStats.primaries.sum();
+        long fired = hedgeStats.fired.sum();
+        stats.put("primaries", primaries);
+        stats.put("hedgesFired", fired);
+        stats.put("hedgesWon", hedgeStats.won.sum());
+        stats.put("hedgesDenied", hedgeStats.denied.sum());
+        stats.put("hedgeRate", primaries == 0 ? 0.0 : (double) fired / primaries);
+        stats.put("availableBudget", hedgeBudget.getAvailableTokens());
+        return stats;
     }
 
-    private String executeWithRetry(Callable<String> request, String operationName) {
+    /**
+     * 按重试策略调用上游接口：
+     * 熔断器打开时不请求也不重试；每次重试前确认剩余时间够“退避 + 该接口近期p90耗时”，
+     * 否则放弃，避免把时间花在注定赶不上的请求上。
+     */
+    private String executeWithRetry(UpstreamRequest request, String operationName, Deadline deadline,
+                                    CancellationToken cancellation) {
         Exception lastException = null;
+        CircuitBreaker breaker = circuitBreakers.get(operationName);
         
         for (int i = 0; i < MAX_RETRY_TIMES; i++) {
+            if (cancellation.isCancelled()) {
+                cancellationStats.attemptsSkipped.add(MAX_RETRY_TIMES - i);
+                log.debug("{} 已被取消，跳过剩余 {} 次尝试", operationName, MAX_RETRY_TIMES - i);
+                return "";
+            }
+            if (!deadline.hasAtLeast(minAttemptMillis())) {
+                cancellationStats.attemptsSkippedByDeadline.add(MAX_RETRY_TIMES - i);
+                log.info("{} 剩余时间不足 ({}ms)，不再发起第 {} 次尝试", operationName, deadline.remainingMillis(), i + 1);
+                return "";
+            }
             try {
-                String result = request.call();
-                if (!result.isEmpty() && !isInvalidResult(result)) {
+                String result = request.call(deadline, cancellation);
+                if (isValidResult(result)) {
                     return result;
                 }
                 log.warn("{} 第 {} 次尝试获取到无效结果", operationName, i + 1);
+            } catch (CircuitOpenException e) {
+                log.info("{} 已熔断，跳过该数据源", operationName);
+                return "";
             } catch (Exception e) {
+                if (cancellation.isCancelled()) {
+                    cancellationStats.attemptsSkipped.add(MAX_RETRY_TIMES - i - 1);
+                    log.debug("{} 已被取消，请求已中止", operationName);
+                    return "";
+                }
                 lastException = e;
                 log.warn("{} 第 {} 次尝试失败: {}", operationName, i + 1, e.getMessage());
                 
                 if (i < MAX_RETRY_TIMES - 1) {
+                    if (breaker.getState() == CircuitBreaker.State.OPEN) {
+                        log.info("{} 失败后已熔断，不再重试", operationName);
+                        return "";
+                    }
+                    long delay = RETRY_BASE_DELAY * (i + 1);
+                    // 等待之后已经来不及再请求一次，就不必重试了
+                    if (!deadline.hasAtLeast(delay + expectedAttemptMillis(breaker))) {
+                        cancellationStats.attemptsSkippedByDeadline.add(MAX_RETRY_TIMES - i - 1);
+                        log.info("{} 剩余时间 {}ms 不足以重试，放弃", operationName, deadline.remainingMillis());
+                        return "";
+                    }
                     try {
-                        Thread.sleep(RETRY_BASE_DELAY * (i + 1));
+                        Thread.sleep(delay);
                     } catch (InterruptedException ie) {
                         Thread.currentThread().interrupt();
-                        break;
+                        cancellationStats.attemptsSkipped.add(MAX_RETRY_TIMES - i - 1);
+                        log.debug("{} 重试等待被中断", operationName);
+                        return "";
                     }
                 }
             }
@@ -837,149 +1337,248 @@ public class SearchService {
         return "";
     }
 
+    @FunctionalInterface
+    private interface UpstreamRequest {
+        String call(Deadline deadline, CancellationToken cancellation) throws Exception;
+    }
+
+    /**
+     * 调用方未指定截止时间时使用的默认预算
+     */
+    private Deadline defaultDeadline() {
+        return Deadline.after(apiConfig.getDeadline().getApiBudgetMillis());
+    }
+
+    private long minAttemptMillis() {
+        return apiConfig.getDeadline().getMinAttemptMillis();
+    }
+
+    /**
+     * 估算一次请求需要的时间：该接口近期的p90耗时，样本不足时取最小尝试时间
+     */
+    private long expectedAttemptMillis(CircuitBreaker breaker) {
+        return Math.max(minAttemptMillis(), breaker.latencyPercentile(EXPECTED_LATENCY_PERCENTILE));
+    }
+
+    /**
+     * 经熔断器调用上游接口：熔断打开时直接抛出 {@link CircuitOpenException}；
+     * 空响应和异常计为失败，主动取消或截止时间到达导致的中断不计入
+     */
+    private String callEndpoint(String endpoint, Deadline deadline, CancellationToken cancellation,
+                                UpstreamCall call) throws Exception {
+        CircuitBreaker breaker = circuitBreakers.get(endpoint);
+        if (!breaker.tryAcquire()) {
+            throw new CircuitOpenException(endpoint);
+        }
+        long startTime = System.currentTimeMillis();
+        try {
+            String result = call.call();
+            long elapsed = System.currentTimeMillis() - startTime;
+            if (StrUtil.isBlank(result)) {
+                breaker.onFailure(elapsed);
+            } else {
+                breaker.onSuccess(elapsed);
+            }
+            return result;
+        } catch (Exception e) {
+            if (cancellation.isCancelled() || deadline.isExpired()) {
+                breaker.onIgnored();
+            } else {
+                breaker.onFailure(System.currentTimeMillis() - startTime);
+            }
+            throw e;
+        }
+    }
+
+    @FunctionalInterface
+    private interface UpstreamCall {
+        String call() throws Exception;
+    }
+
+    /**
+     * 取消统计：因搜索已满足而节省下来的工作量
+     */
+    public Map<String, Object> getCancellationStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("futuresCancelled", cancellationStats.futuresCancelled.sum());
+        stats.put("tasksSkipped", cancellationStats.tasksSkipped.sum());
+        stats.put("attemptsSkipped", cancellationStats.attemptsSkipped.sum());
+        stats.put("attemptsSkippedByDeadline", cancellationStats.attemptsSkippedByDeadline.sum());
+        return stats;
+    }
+
     private boolean isInvalidResult(String result) {
         return result == null || result.contains("此链接失效，请返回首页");
     }
+
+    private boolean isValidResult(String result) {
+        return result != null && !result.isEmpty() && !isInvalidResult(result);
+    }
     // ================================ API 实现 ================================
 
     public TokenResponse getToken() throws Exception {
-        String jsonResponse = sendUukkGetRequest("/v/api/gettoken");
+        return getToken(Deadline.after(TIMEOUT_MILLIS));
+    }
+
+    public TokenResponse getToken(Deadline deadline) throws Exception {
+        return getToken(deadline, new CancellationToken());
+    }
+
+    public TokenResponse getToken(Deadline deadline, CancellationToken cancellation) throws Exception {
+        String jsonResponse = callEndpoint(UUKK_TOKEN, deadline, cancellation,
+                () -> sendUukkGetRequest("/v/api/gettoken", deadline, cancellation));
         return JsonUtils.fromJson(jsonResponse, TokenResponse.class);
     }
     
     public String getDyfxUukk(String name, String token) throws Exception {
-        return sendUukkPostRequest("/v/api/getDyfx", "name=" + URLEncoder.encode(name, "UTF-8") + "&token=" + token);
+        return getDyfxUukk(name, token, Deadline.after(TIMEOUT_MILLIS), new CancellationToken());
     }
-    
+
+    public String getDyfxUukk(String name, String token, Deadline deadline, CancellationToken cancellation) throws Exception {
+        String postData = "name=" + URLEncoder.encode(name, "UTF-8") + "&token=" + token;
+        return callEndpoint(UUKK_DYFX, deadline, cancellation,
+                () -> sendUukkPostRequest("/v/api/getDyfx", postData, deadline, cancellation));
+    }
+
     public String getGGangUukk(String name, String token) throws Exception {
-        return sendUukkPostRequest("/v/api/getGGang", "name=" + URLEncoder.encode(name, "UTF-8") + "&token=" + token);
+        return getGGangUukk(name, token, Deadline.after(TIMEOUT_MILLIS), new CancellationToken());
+    }
+
+    public String getGGangUukk(String name, String token, Deadline deadline, CancellationToken cancellation) throws Exception {
+        String postData = "name=" + URLEncoder.encode(name, "UTF-8") + "&token=" + token;
+        return callEndpoint(UUKK_GGANG, deadline, cancellation,
+                () -> sendUukkPostRequest("/v/api/getGGang", postData, deadline, cancellation));
     }
 
     public String getJuziKkqws(String text) throws Exception {
-        return sendKkqwsPostRequest(apiConfig.getJuziPath(), text);
+        return getJuziKkqws(text, Deadline.after(TIMEOUT_MILLIS), new CancellationToken());
+    }
+
+    public String getJuziKkqws(String text, Deadline deadline, CancellationToken cancellation) throws Exception {
+        return callEndpoint(KKQWS_JUZI, deadline, cancellation,
+                () -> sendKkqwsPostRequest(apiConfig.getJuziPath(), text, deadline, cancellation));
     }
 
     public String getXiaoyuKkqws(String text) throws Exception {
-        return sendKkqwsPostRequest(apiConfig.getXiaoyuPath(), text);
+        return getXiaoyuKkqws(text, Deadline.after(TIMEOUT_MILLIS), new CancellationToken());
+    }
+
+    public String getXiaoyuKkqws(String text, Deadline deadline, CancellationToken cancellation) throws Exception {
+        return callEndpoint(KKQWS_XIAOYU, deadline, cancellation,
+                () -> sendKkqwsPostRequest(apiConfig.getXiaoyuPath(), text, deadline, cancellation));
     }
 
     public String searchKkqws(String text) throws Exception {
-        return sendKkqwsPostRequest(apiConfig.getSearchPath(), text);
+        return searchKkqws(text, Deadline.after(TIMEOUT_MILLIS), new CancellationToken());
+    }
+
+    public String searchKkqws(String text, Deadline deadline, CancellationToken cancellation) throws Exception {
+        return callEndpoint(KKQWS_SEARCH, deadline, cancellation,
+                () -> sendKkqwsPostRequest(apiConfig.getSearchPath(), text, deadline, cancellation));
     }
 
     public String getDyfxKkqws(String text) throws Exception {
-        return sendKkqwsPostRequest(apiConfig.getDyfxPath(), text);
+        return getDyfxKkqws(text, Deadline.after(TIMEOUT_MILLIS), new CancellationToken());
+    }
+
+    public String getDyfxKkqws(String text, Deadline deadline, CancellationToken cancellation) throws Exception {
+        return callEndpoint(KKQWS_DYFX, deadline, cancellation,
+                () -> sendKkqwsPostRequest(apiConfig.getDyfxPath(), text, deadline, cancellation));
     }
 
     // ================================ HTTP请求方法 ================================
 
-    private String sendKkqwsPostRequest(String path, String text) throws Exception {
+    private String sendKkqwsPostRequest(String path, String text, Deadline deadline,
+                                        CancellationToken cancellation) throws Exception {
         String postData = "name=" + URLEncoder.encode(text, "UTF-8") + "&token=" + apiConfig.getKkqwsToken();
-        return sendPostRequest(apiConfig.getBaseUrl() + path, postData, this::setKkqwsHeaders);
+        return sendPostRequest(apiConfig.getBaseUrl() + path, postData, this::setKkqwsHeaders, deadline, cancellation);
     }
     
-    private String sendUukkPostRequest(String path, String postData) throws Exception {
-        return sendPostRequest(apiConfig.getUukkBaseUrl() + path, postData, this::setUukkHeaders);
+    private String sendUukkPostRequest(String path, String postData, Deadline deadline,
+                                       CancellationToken cancellation) throws Exception {
+        return sendPostRequest(apiConfig.getUukkBaseUrl() + path, postData, this::setUukkHeaders, deadline, cancellation);
     }
     
-    private String sendUukkGetRequest(String path) throws Exception {
-        return sendGetRequest(apiConfig.getUukkBaseUrl() + path, this::setUukkHeaders);
+    private String sendUukkGetRequest(String path, Deadline deadline, CancellationToken cancellation) throws Exception {
+        return sendGetRequest(apiConfig.getUukkBaseUrl() + path, this::setUukkHeaders, deadline, cancellation);
     }
 
-    private String sendPostRequest(String urlStr, String postData, HeaderSetter headerSetter) throws Exception {
-        return sendHttpRequest(urlStr, "POST", postData, headerSetter);
+    private String sendPostRequest(String urlStr, String postData, HeaderSetter headerSetter,
+                                   Deadline deadline, CancellationToken cancellation) throws Exception {
+        return sendHttpRequest(urlStr, "POST", postData, headerSetter, deadline, cancellation);
     }
 
-    private String sendGetRequest(String urlStr, HeaderSetter headerSetter) throws Exception {
-        return sendHttpRequest(urlStr, "GET", null, headerSetter);
+    private String sendGetRequest(String urlStr, HeaderSetter headerSetter, Deadline deadline,
+                                  CancellationToken cancellation) throws Exception {
+        return sendHttpRequest(urlStr, "GET", null, headerSetter, deadline, cancellation);
     }
 
-    private String sendHttpRequest(String urlStr, String method, String postData, HeaderSetter headerSetter) throws Exception {
-        URL url = new URL(urlStr);
-        HttpURLConnection httpConn = (HttpURLConnection) url.openConnection();
-        httpConn.setRequestMethod(method);
-        httpConn.setConnectTimeout(TIMEOUT_MILLIS);
-        httpConn.setReadTimeout(TIMEOUT_MILLIS);
-        
-        if ("POST".equals(method)) {
-            httpConn.setDoOutput(true);
+    /**
+     * 单次请求的总超时取 TIMEOUT_MILLIS 与截止时间剩余的较小值
+     */
+    private String sendHttpRequest(String urlStr, String method, String postData, HeaderSetter headerSetter,
+                                   Deadline deadline, CancellationToken cancellation) throws Exception {
+        if (deadline.isExpired()) {
+            throw new InterruptedIOException("已超过截止时间，放弃请求: " + urlStr);
         }
-        
-        headerSetter.setHeaders(httpConn);
 
-        if ("POST".equals(method) && postData != null) {
-            try (OutputStreamWriter writer = new OutputStreamWriter(httpConn.getOutputStream())) {
-                writer.write(postData);
-                writer.flush();
-            }
+        Request.Builder builder = new Request.Builder().url(urlStr);
+        headerSetter.setHeaders(builder);
+
+        if ("POST".equals(method)) {
+            builder.post(RequestBody.create(postData != null ? postData : "", FORM_MEDIA_TYPE));
+        } else {
+            builder.get();
         }
         
-        return handleResponse(httpConn);
+        return httpClient.execute(builder.build(), deadline.cap(TIMEOUT_MILLIS), cancellation);
     }
 
     @FunctionalInterface
     private interface HeaderSetter {
-        void setHeaders(HttpURLConnection connection);
-    }
-
-    private String handleResponse(HttpURLConnection httpConn) throws IOException {
-        int responseCode = httpConn.getResponseCode();
-        if (responseCode == HttpURLConnection.HTTP_OK) {
-            InputStream inputStream = httpConn.getInputStream();
-            String contentEncoding = httpConn.getContentEncoding();
-
-            if ("gzip".equalsIgnoreCase(contentEncoding)) {
-                inputStream = new GZIPInputStream(inputStream);
-            }
-
-            try (Scanner scanner = new Scanner(inputStream, "UTF-8")) {
-                return scanner.useDelimiter("\\A").hasNext() ? scanner.next() : "";
-            }
-        } else {
-            log.error("HTTP请求失败，响应码: {}", responseCode);
-            return "";
-        }
+        void setHeaders(Request.Builder builder);
     }
 
-    private void setUukkHeaders(HttpURLConnection httpConn) {
-        httpConn.setRequestProperty("Host", "uukk6.cn");
-        httpConn.setRequestProperty("Origin", "http://uukk6.cn");
-        httpConn.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36");
-        httpConn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded; charset=UTF-8");
-        httpConn.setRequestProperty("Accept", "application/json, text/javascript, */*; q=0.01");
-        httpConn.setRequestProperty("X-Requested-With", "XMLHttpRequest");
+    private void setUukkHeaders(Request.Builder builder) {
+        builder.header("Host", "uukk6.cn");
+        builder.header("Origin", "http://uukk6.cn");
+        builder.header("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36");
+        builder.header("Content-Type", "application/x-www-form-urlencoded; charset=UTF-8");
+        builder.header("Accept", "application/json, text/javascript, */*; q=0.01");
+        builder.header("X-Requested-With", "XMLHttpRequest");
     }
     
-    private void setKkqwsHeaders(HttpURLConnection httpConn) {
-        httpConn.setRequestProperty("Host", "m.kkqws.com");
-        httpConn.setRequestProperty("Origin", "http://m.kkqws.com");
-        httpConn.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36");
-        httpConn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded; charset=UTF-8");
-        httpConn.setRequestProperty("Accept", "application/json, text/javascript, */*; q=0.01");
+    private void setKkqwsHeaders(Request.Builder builder) {
+        builder.header("Host", "m.kkqws.com");
+        builder.header("Origin", "http://m.kkqws.com");
+        builder.header("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36");
+        builder.header("Content-Type", "application/x-www-form-urlencoded; charset=UTF-8");
+        builder.header("Accept", "application/json, text/javascript, */*; q=0.01");
     }
     
     /**
      * 设置 Makifx 请求头
      * 避免 Brotli 压缩，只接受 GZIP 或无压缩
      */
-    private void setMakifxHeaders(HttpURLConnection httpConn) {
-        httpConn.setRequestProperty("Accept", "application/json, text/plain, */*");
-        httpConn.setRequestProperty("Accept-Language", "zh-CN,zh-Hans;q=0.9");
-        httpConn.setRequestProperty("Accept-Encoding", "gzip, deflate"); // 不包含 br（Brotli）
-        httpConn.setRequestProperty("User-Agent", "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/18.6 Safari/605.1.15");
-        httpConn.setRequestProperty("Referer", "https://sou.makifx.com/");
-        httpConn.setRequestProperty("Origin", "https://sou.makifx.com");
-        httpConn.setRequestProperty("Sec-Fetch-Site", "same-origin");
-        httpConn.setRequestProperty("Sec-Fetch-Mode", "cors");
-        httpConn.setRequestProperty("Sec-Fetch-Dest", "empty");
-        httpConn.setRequestProperty("Connection", "keep-alive");
-        httpConn.setRequestProperty("Cache-Control", "no-cache");
+    private void setMakifxHeaders(Request.Builder builder) {
+        builder.header("Accept", "application/json, text/plain, */*");
+        builder.header("Accept-Language", "zh-CN,zh-Hans;q=0.9");
+        builder.header("Accept-Encoding", "gzip, deflate"); // 不包含 br（Brotli）
+        builder.header("User-Agent", "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/18.6 Safari/605.1.15");
+        builder.header("Referer", "https://sou.makifx.com/");
+        builder.header("Origin", "https://sou.makifx.com");
+        builder.header("Sec-Fetch-Site", "same-origin");
+        builder.header("Sec-Fetch-Mode", "cors");
+        builder.header("Sec-Fetch-Dest", "empty");
+        builder.header("Connection", "keep-alive");
+        builder.header("Cache-Control", "no-cache");
     }
     
     /**
      * 发送 Makifx 搜索请求（优化版：4秒超时，快速失败）
+     * 通过共享连接池发送，整个调用超过4秒会被直接中止
      */
-    private String sendMakifxRequest(String keyword) throws Exception {
+    private String sendMakifxRequest(String keyword, Deadline deadline, CancellationToken cancellation) throws Exception {
         long startTime = System.currentTimeMillis();
         
         // 详细记录原始关键词
@@ -994,140 +1593,41 @@ public class SearchService {
         String urlStr = "https://sou.makifx.com/?kw=" + encodedKeyword;
         log.info("Makifx 请求URL: {}", urlStr);
         
-        URL url = new URL(urlStr);
-        HttpURLConnection httpConn = (HttpURLConnection) url.openConnection();
-        
-        // 如果是HTTPS连接，设置SSL参数
-        if (httpConn instanceof HttpsURLConnection) {
-            HttpsURLConnection httpsConn = (HttpsURLConnection) httpConn;
-            configureMakifxSSL(httpsConn);
-        }
-        
-        httpConn.setRequestMethod("GET");
-        // 使用专门的Makifx超时时间：4秒
-        httpConn.setConnectTimeout(MAKIFX_TIMEOUT_MILLIS);
-        httpConn.setReadTimeout(MAKIFX_TIMEOUT_MILLIS);
-        
-        // 设置请求头
-        setMakifxHeaders(httpConn);
+        Request.Builder builder = new Request.Builder().url(urlStr).get();
+        setMakifxHeaders(builder);
+        Request request = builder.build();
         
         try {
-            int responseCode = httpConn.getResponseCode();
-            long elapsedTime = System.currentTimeMillis() - startTime;
-            log.info("Makifx API 响应码: {}, 耗时: {}ms, 实际请求URL: {}", responseCode, elapsedTime, urlStr);
-            
-            // 检查是否超过4秒限制
-            if (elapsedTime > MAKIFX_TIMEOUT_MILLIS) {
-                log.warn("Makifx 请求超过4秒限制 ({}ms)，直接放弃获取结果", elapsedTime);
-                httpConn.disconnect();
-                return "";
-            }
-            
-            if (responseCode == HttpURLConnection.HTTP_OK) {
-                return handleMakifxResponseWithTimeout(httpConn, startTime);
-            } else {
-                log.error("Makifx HTTP请求失败，响应码: {}", responseCode);
-                return "";
-            }
-        } catch (java.net.SocketTimeoutException e) {
-            long elapsedTime = System.currentTimeMillis() - startTime;
-            log.warn("Makifx 请求超时，耗时: {}ms，直接跳过", elapsedTime);
-            return "";
-        } finally {
-            httpConn.disconnect();
-        }
-    }
-    
-    /**
-     * 配置Makifx HTTPS连接的SSL参数
-     */
-    private void configureMakifxSSL(HttpsURLConnection httpsConn) {
-        try {
-            // 创建信任所有证书的TrustManager
-            TrustManager[] trustAllCerts = new TrustManager[] {
-                new X509TrustManager() {
-                    public X509Certificate[] getAcceptedIssuers() { return null; }
-                    public void checkClientTrusted(X509Certificate[] certs, String authType) { }
-                    public void checkServerTrusted(X509Certificate[] certs, String authType) { }
-                }
-            };
-            
-            // 为这个连接创建SSL上下文
-            SSLContext sslContext = SSLContext.getInstance("TLS");
-            sslContext.init(null, trustAllCerts, new java.security.SecureRandom());
-            
-            // 设置SSL Socket Factory和Hostname Verifier
-            httpsConn.setSSLSocketFactory(sslContext.getSocketFactory());
-            httpsConn.setHostnameVerifier(new HostnameVerifier() {
-                public boolean verify(String hostname, SSLSession session) {
-                    return true;
-                }
-            });
-            
-            log.debug("Makifx HTTPS连接SSL配置完成");
-            
-        } catch (Exception e) {
-            log.warn("Makifx SSL配置失败，将使用默认设置: {}", e.getMessage());
-        }
-    }
-    
-    /**
-     * 处理 Makifx 响应数据（带超时检查）
-     */
-    private String handleMakifxResponse(HttpURLConnection httpConn) throws IOException {
-        return handleMakifxResponseWithTimeout(httpConn, System.currentTimeMillis());
-    }
-    
-    /**
-     * 处理 Makifx 响应数据（优化版：带超时检查）
-     */
-    private String handleMakifxResponseWithTimeout(HttpURLConnection httpConn, long startTime) throws IOException {
-        // 检查是否已经超时
-        long elapsedTime = System.currentTimeMillis() - startTime;
-        if (elapsedTime > MAKIFX_TIMEOUT_MILLIS) {
-            log.warn("Makifx 响应处理前已超时 {}ms，直接跳过", elapsedTime);
-            return "";
-        }
-        
-        InputStream inputStream = httpConn.getInputStream();
-        String contentEncoding = httpConn.getContentEncoding();
-        String contentType = httpConn.getContentType();
-        
-        log.info("Makifx 响应头 - Content-Encoding: {}, Content-Type: {}", contentEncoding, contentType);
-        
-        // 处理压缩格式（GZIP 或 Brotli）
-        if ("gzip".equalsIgnoreCase(contentEncoding)) {
-            inputStream = new GZIPInputStream(inputStream);
-            log.info("检测到 GZIP 压缩，已解压");
-        } else if ("br".equalsIgnoreCase(contentEncoding)) {
-            log.warn("Makifx API 使用 Brotli 压缩，需要修改请求头以避免压缩");
-        }
-        
-        try (Scanner scanner = new Scanner(inputStream, "UTF-8")) {
-            String responseContent = scanner.useDelimiter("\\A").hasNext() ? scanner.next() : "";
-            
+            // 使用专门的Makifx超时时间：4秒，且不超过剩余时间
+            String responseContent = callEndpoint(MAKIFX, deadline, cancellation,
+                    () -> httpClient.execute(request, deadline.cap(MAKIFX_TIMEOUT_MILLIS), cancellation));
             long totalTime = System.currentTimeMillis() - startTime;
             log.info("Makifx 原始响应长度: {} 字符，总耗时: {}ms", responseContent.length(), totalTime);
-            
             return responseContent;
+        } catch (InterruptedIOException e) {
+            long elapsedTime = System.currentTimeMillis() - startTime;
+            log.warn("Makifx 请求超时，耗时: {}ms，直接跳过", elapsedTime);
+            return "";
         }
     }
     
     /**
-     * 格式化 Makifx 搜索结果
+     * 解析 Makifx 搜索结果
+     *
+     * @return 网盘资源结果项，确实搜不到时为空列表；响应异常、无法解析时返回 null
      */
-    private String formatMakifxResult(String jsonResponse, String keyword) {
+    private List<SearchResultItem> parseMakifxResult(String jsonResponse, String keyword) {
         try {
             // 检查响应内容是否为空或异常
             if (StrUtil.isBlank(jsonResponse)) {
                 log.warn("Makifx API 返回空响应");
-                return "API 返回空响应";
+                return null;
             }
             
             // 检查是否是HTML响应（可能是错误页面）
             if (jsonResponse.trim().startsWith("<")) {
                 log.warn("Makifx API 返回HTML页面，可能被限制访问");
-                return "搜索服务暂时不可用，请稍后再试";
+                return null;
             }
             
             // 尝试解析JSON
@@ -1145,7 +1645,7 @@ public class SearchService {
                 // 如果包含乱码，可能是编码问题
                 if (jsonResponse.contains("�")) {
                     log.error("响应内容包含乱码，可能是编码或压缩问题");
-                    return "响应数据编码异常，无法解析";
+                    return null;
                 }
                 
                 throw jsonError;
@@ -1154,49 +1654,30 @@ public class SearchService {
             if (response == null || response.getCode() != 0 || response.getData() == null) {
                 log.warn("Makifx API 返回异常响应: code={}, data=null", 
                         response != null ? response.getCode() : "null");
-                return "API 返回数据异常";
+                return null;
             }
             
-            return formatMakifxData(response.getData(), keyword);
+            return toMakifxItems(response.getData(), keyword);
             
         } catch (Exception e) {
-            log.error("格式化 Makifx 搜索结果失败，关键词: {}, 错误: {}", keyword, e.getMessage());
+            log.error("解析 Makifx 搜索结果失败，关键词: {}, 错误: {}", keyword, e.getMessage());
             log.error("错误的响应内容前500字符: {}", 
                      jsonResponse.length() > 500 ? jsonResponse.substring(0, 500) + "..." : jsonResponse);
-            return "结果解析失败: " + e.getMessage();
+            return null;
         }
     }
     
     /**
-     * 处理数组格式的Makifx响应
+     * 处理数组格式的Makifx响应，只提取其中的链接
      */
-    private String handleMakifxArrayResponse(String jsonResponse, String keyword) {
-        try {
-            log.info("尝试处理数组格式的Makifx响应");
-            // 简单的数组处理，提取URL链接
-            List<String> urls = extractUrlsFromText(jsonResponse);
-            if (urls.isEmpty()) {
-                return "未找到有效链接";
-            }
-            
-            StringBuilder result = new StringBuilder();
-            result.append(String.format("🔍 搜索关键词: %s\n", keyword));
-            result.append(String.format("📊 找到 %d 个链接\n\n", urls.size()));
-            
-            for (int i = 0; i < Math.min(urls.size(), 20); i++) {
-                result.append(String.format("%d. %s\n", i + 1, urls.get(i)));
-            }
-            
-            if (urls.size() > 20) {
-                result.append(String.format("\n... 还有 %d 个链接", urls.size() - 20));
-            }
-            
-            return result.toString();
-            
-        } catch (Exception e) {
-            log.error("处理数组格式响应失败: {}", e.getMessage());
-            return "无法解析数组格式响应";
+    private List<SearchResultItem> handleMakifxArrayResponse(String jsonResponse, String keyword) {
+        log.info("尝试处理数组格式的Makifx响应");
+        List<SearchResultItem> items = new ArrayList<>();
+        for (String url : extractUrlsFromText(jsonResponse)) {
+            items.add(new SearchResultItem(SearchResultItem.SOURCE_MAKIFX, SearchResultItem.platformOf(url),
+                    null, url, null, null, null));
         }
+        return items;
     }
     
     /**
@@ -1224,76 +1705,37 @@ public class SearchService {
     }
     
     /**
-     * 格式化标准的Makifx数据（仅网盘资源）
+     * 标准的Makifx数据转换成结果项（仅网盘资源，过滤掉磁力链接和其他资源）
      */
-    private String formatMakifxData(MakifxData data, String keyword) {
+    private List<SearchResultItem> toMakifxItems(MakifxData data, String keyword) {
+        List<SearchResultItem> items = new ArrayList<>();
         if (data.getTotal() == 0 || data.getMerged_by_type() == null || data.getMerged_by_type().isEmpty()) {
-            return "未找到相关资源";
+            return items;
         }
         
-        StringBuilder result = new StringBuilder();
-        result.append(String.format("🔍 搜索关键词: %s\n", keyword));
-        
         Map<String, List<MakifxItem>> mergedByType = data.getMerged_by_type();
-        
-        // 只处理网盘资源，过滤掉磁力链接和其他资源
         String[] platforms = {"xunlei", "quark", "baidu", "aliyun"};
-        String[] platformNames = {"🚀 迅雷网盘", "⚡ 夸克网盘", "☁️ 百度网盘", "☁️ 阿里云盘"};
-        
-        int totalNetdiskItems = 0;
-        StringBuilder contentBuilder = new StringBuilder();
         
-        for (int i = 0; i < platforms.length; i++) {
-            List<MakifxItem> items = mergedByType.get(platforms[i]);
-            if (items != null && !items.isEmpty()) {
+        for (String platform : platforms) {
+            List<MakifxItem> platformItems = mergedByType.get(platform);
+            if (platformItems == null) {
+                continue;
+            }
+            for (MakifxItem item : platformItems) {
                 // 过滤掉磁力链接和thunder链接（包含magnet:和thunder:开头的URL）
-                List<MakifxItem> filteredItems = items.stream()
-                    .filter(item -> item.getUrl() != null && 
-                            !item.getUrl().toLowerCase().startsWith("magnet:") &&
-                            !item.getUrl().toLowerCase().contains("magnet") &&
-                            !item.getUrl().toLowerCase().startsWith("thunder:") &&
-                            !item.getUrl().toLowerCase().contains("thunder:"))
-                    .collect(java.util.stream.Collectors.toList());
-                
-                if (!filteredItems.isEmpty()) {
-                    totalNetdiskItems += filteredItems.size();
-                    contentBuilder.append(String.format("%s (%d个)\n", platformNames[i], filteredItems.size()));
-                    contentBuilder.append("─────────────────────\n");
-                    
-                    for (int j = 0; j < filteredItems.size() && j < 8; j++) { // 每个平台最多显示8个
-                        MakifxItem item = filteredItems.get(j);
-                        contentBuilder.append(String.format("%d. %s\n", j + 1, item.getUrl()));
-                        
-                        if (StrUtil.isNotBlank(item.getPassword())) {
-                            contentBuilder.append(String.format("   🔑 提取码: %s\n", item.getPassword()));
-                        }
-                        
-                        if (StrUtil.isNotBlank(item.getNote()) && item.getNote().length() <= 80) {
-                            contentBuilder.append(String.format("   📝 备注: %s\n", item.getNote().trim()));
-                        }
-                        
-                        contentBuilder.append("\n");
-                    }
-                    
-                    if (filteredItems.size() > 8) {
-                        contentBuilder.append(String.format("   ... 还有 %d 个资源\n", filteredItems.size() - 8));
-                    }
-                    
-                    contentBuilder.append("\n");
+                if (item.getUrl() == null ||
+                        item.getUrl().toLowerCase().contains("magnet") ||
+                        item.getUrl().toLowerCase().contains("thunder:")) {
+                    continue;
                 }
+                items.add(new SearchResultItem(SearchResultItem.SOURCE_MAKIFX, platform, null, item.getUrl(),
+                        StrUtil.emptyToNull(item.getPassword()),
+                        StrUtil.isBlank(item.getNote()) ? null : item.getNote().trim(),
+                        item.getDatetime()));
             }
         }
         
-        if (totalNetdiskItems == 0) {
-            return "未找到网盘资源";
-        }
-        
-        result.append(String.format("📊 找到网盘资源: %d 个\n\n", totalNetdiskItems));
-        result.append(contentBuilder.toString());
-        
-        String finalResult = result.toString().trim();
-        log.info("Makifx 搜索完成（仅网盘资源），关键词: {}, 网盘资源数: {}, 结果长度: {} 字符", 
-                keyword, totalNetdiskItems, finalResult.length());
-        return finalResult;
+        log.info("Makifx 搜索完成（仅网盘资源），关键词: {}, 网盘资源数: {}", keyword, items.size());
+        return items;
     }
 }
@@ -3,6 +3,8 @@ package com.hc.wx.mp.utils;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
+import java.lang.reflect.Type;
+
 /**
  * @author <a href="https://github.com/binarywang">Binary Wang</a>
  */
@@ -21,4 +23,21 @@ public class JsonUtils {
             .create();
         return gson.toJson(obj);
     }
+
+    public static <T> T fromJson(String json, Type type) {
+        Gson gson = new GsonBuilder()
+            .disableHtmlEscaping()
+            .create();
+        return gson.fromJson(json, type);
+    }
+
+    /**
+     * 不带缩进的 JSON，用于缓存和存储
+     */
+    public static String toCompactJson(Object obj) {
+        Gson gson = new GsonBuilder()
+            .disableHtmlEscaping()
+            .create();
+        return gson.toJson(obj);
+    }
 }
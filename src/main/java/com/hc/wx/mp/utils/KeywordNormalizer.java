@@ -0,0 +1,145 @@
+package com.hc.wx.mp.utils;
+
+/**
+ * 搜索关键词规范化
+ * <p>
+ * "流浪地球2"、"流浪地球 2"、全角的"流浪地球２"以及繁体写法在用户看来是同一个搜索，
+ * 规范化之后得到同一个字符串，作为所有缓存、并发合并和去重结构的 key，同时作为发往上游的查询词：
+ * <ol>
+ *     <li>全角转半角（含全角空格）</li>
+ *     <li>繁体转简体（内置常用字对照表）</li>
+ *     <li>英文转小写</li>
+ *     <li>空白和标点符号一律视为分隔符：两个英文/数字之间保留一个空格，其余位置直接去掉</li>
+ * </ol>
+ * 单次遍历、查表实现，不依赖正则和 {@link java.text.Normalizer}，每个关键词耗时在微秒级。
+ */
+public final class KeywordNormalizer {
+
+    private static final char CJK_START = '\u4e00';
+    private static final char CJK_END = '\u9fff';
+
+    private static final String TRADITIONAL =
+            "萬與醜專業叢東絲兩嚴喪個豐臨為麗舉義烏樂喬習鄉書買亂爭於虧雲亞產畝親億僅從侖倉儀"
+            + "們價眾優會傘偉傳傷倫偽佇體傭僉俠侶僥偵側僑儈儕儂儉債傾僂償儲儺兒兌黨蘭關興養獸內"
+            + "岡冊寫軍農馮衝決況凍淨涼減湊凜幾鳳憑凱擊鑿芻劃劉則剛創刪別剗剄劑剮劍剝劇勸辦務勵"
+            + "勁勞勢勳勻區醫華協單賣盧衛卻廠廳曆厲壓厭廁廂廈縣參雙發變敘疊葉號嘆嘰嚇呂嗎啟吳嘸"
+            + "囈嘔嚦唄員咼嗆嗚詠響啞噠嘵嗶噦嘩喚喲嘮囀嘯噴嗩團園圍圖國圓聖場壞塊堅壇壩塢墳墜壘"
+            + "墾塹墊牆壯聲殼壺處備復夠頭誇夾奪奮獎妝婦媽嫵嬌婁孫學寧寶實寵審憲宮寬賓將爾塵嘗堯"
+            + "尷屍盡層屆屬歲豈嶼嶺島嶄巔鞏幣帥師帳帶幫幹廣莊慶廬庫應廟龐廢開異棄張彌彎彈強歸當"
+            + "錄彥徹徑後憶懷態憐總戀惡惱悅懸驚慣憤願懲戲戰戶紮撲託執擴掃揚擾撫搶護報擔擬擁揀擇"
+            + "掛擋撈損換揮撐攜擺搖攝擠擲攢敵斂數齋斬斷無舊時曠暢曉暈暫顯晉術機殺雜權條來楊傑極"
+            + "構槍樞櫃檸標棧樹樣橋檔夢檢樓歡歐殘毀氣漢湯溝沒滬瀋灘潑淚潔灑濃測濟渾澆濤澀漁漲溫"
+            + "滅燈災爐煉熾爍燒熱煥獅獄貓獵獻瑪環現瑣畫療瘋癢盤盜監盞睜礦碼磚確禮禍離禿種稱穩窮"
+            + "竊競筆築簡籃類糧糾紅約級紀紙紛純紗紋線練組細織終紹經結絕統給絡絢繪繼續緒綠維綿網"
+            + "緊緣編縮繞罰羅聯聽職聰肅腸膚腦臉艦艱藝節蘇蘋範莖薦藥蓋蟲蝦螞蠶衆襪裝製複見規視覽"
+            + "覺觀訂計討讓訓記講許論設訪證評識詞譯試詩誠話誕該詳語說誰課調談請諸讀謀謝謠譽讚貝"
+            + "負財責賢敗貨質販貪貧購貫貴貸費賀資賊賈賭賽贏趕趙趨躍跡蹤車軌軟轉輪輕載較輔輝輸轟"
+            + "辭邊遼達遷過邁運還這進遠違連遲適選遺郵鄰鄭醬釋裡鑒針釣鈴鐵鉛銀銳鋒鋼錢錦錯鍋鍵鍾"
+            + "鐘鏡鑽長門閃閉問闖閒間閱闊闆隊陽陰陣階際陸陳險隱難雞電霧靈靜韓頁頂項順須預領頻題"
+            + "額顏顧風飛飯飲飽餅館餘饑馬駕驅驗騎騙髮鬆鬥鬧魚魯鮮鯨鳥鳴鴨鵝鷹鹽麥黃點齊齒龍龜妳"
+            + "愛憂歷啓撥滾熒瑩營榮縱襲屢陝滿濱瀟鑰匯彙傢衹隻檯臺颱籤簽係繫鹹麵髒蔔穀薑禦鬱舖鋪"
+            + "噸幟摯擷攤攬攔攏擰懶殲滯瀏瀾灣灤犧瑤璽睏碩穌窩篩糞紐紡絨綁綜緩縫繩罷臟艙蒼蔣薩藍"
+            + "蘆虛蠟衊補覓詐詛諾謊謹譜豎豬貍賠賦賴賺贊踐軀轎辯迴遞邏鄧醞鈔鉤銅鋁鍊鎖鎮鏈鐳閣闡"
+            + "隨雖頓頸顆颳飄餓馳騰驕驢髏鯊鴿鶴麼黴齡龔諜緝飆蘿鏢襯懼儘兇峽廚壽嬰巖巒慮慚擄濁燭"
+            + "爺猶獲癡瞞礎穫竄籌紳蠻觸譚貞賤轄遜釀鈞閩隸韻頌駐驛骯鬍鱗鸞黽齣";
+
+    private static final String SIMPLIFIED =
+            "万与丑专业丛东丝两严丧个丰临为丽举义乌乐乔习乡书买乱争于亏云亚产亩亲亿仅从仑仓仪"
+            + "们价众优会伞伟传伤伦伪伫体佣佥侠侣侥侦侧侨侩侪侬俭债倾偻偿储傩儿兑党兰关兴养兽内"
+            + "冈册写军农冯冲决况冻净凉减凑凛几凤凭凯击凿刍划刘则刚创删别刬刭剂剐剑剥剧劝办务励"
+            + "劲劳势勋匀区医华协单卖卢卫却厂厅历厉压厌厕厢厦县参双发变叙叠叶号叹叽吓吕吗启吴呒"
+            + "呓呕呖呗员呙呛呜咏响哑哒哓哔哕哗唤哟唠啭啸喷唢团园围图国圆圣场坏块坚坛坝坞坟坠垒"
+            + "垦堑垫墙壮声壳壶处备复够头夸夹夺奋奖妆妇妈妩娇娄孙学宁宝实宠审宪宫宽宾将尔尘尝尧"
+            + "尴尸尽层届属岁岂屿岭岛崭巅巩币帅师帐带帮干广庄庆庐库应庙庞废开异弃张弥弯弹强归当"
+            + "录彦彻径后忆怀态怜总恋恶恼悦悬惊惯愤愿惩戏战户扎扑托执扩扫扬扰抚抢护报担拟拥拣择"
+            + "挂挡捞损换挥撑携摆摇摄挤掷攒敌敛数斋斩断无旧时旷畅晓晕暂显晋术机杀杂权条来杨杰极"
+            + "构枪枢柜柠标栈树样桥档梦检楼欢欧残毁气汉汤沟没沪沈滩泼泪洁洒浓测济浑浇涛涩渔涨温"
+            + "灭灯灾炉炼炽烁烧热焕狮狱猫猎献玛环现琐画疗疯痒盘盗监盏睁矿码砖确礼祸离秃种称稳穷"
+            + "窃竞笔筑简篮类粮纠红约级纪纸纷纯纱纹线练组细织终绍经结绝统给络绚绘继续绪绿维绵网"
+            + "紧缘编缩绕罚罗联听职聪肃肠肤脑脸舰艰艺节苏苹范茎荐药盖虫虾蚂蚕众袜装制复见规视览"
+            + "觉观订计讨让训记讲许论设访证评识词译试诗诚话诞该详语说谁课调谈请诸读谋谢谣誉赞贝"
+            + "负财责贤败货质贩贪贫购贯贵贷费贺资贼贾赌赛赢赶赵趋跃迹踪车轨软转轮轻载较辅辉输轰"
+            + "辞边辽达迁过迈运还这进远违连迟适选遗邮邻郑酱释里鉴针钓铃铁铅银锐锋钢钱锦错锅键钟"
+            + "钟镜钻长门闪闭问闯闲间阅阔板队阳阴阵阶际陆陈险隐难鸡电雾灵静韩页顶项顺须预领频题"
+            + "额颜顾风飞饭饮饱饼馆余饥马驾驱验骑骗发松斗闹鱼鲁鲜鲸鸟鸣鸭鹅鹰盐麦黄点齐齿龙龟你"
+            + "爱忧历启拨滚荧莹营荣纵袭屡陕满滨潇钥汇汇家只只台台台签签系系咸面脏卜谷姜御郁铺铺"
+            + "吨帜挚撷摊揽拦拢拧懒歼滞浏澜湾滦牺瑶玺困硕稣窝筛粪纽纺绒绑综缓缝绳罢脏舱苍蒋萨蓝"
+            + "芦虚蜡蔑补觅诈诅诺谎谨谱竖猪狸赔赋赖赚赞践躯轿辩回递逻邓酝钞钩铜铝链锁镇链镭阁阐"
+            + "随虽顿颈颗刮飘饿驰腾骄驴髅鲨鸽鹤么霉龄龚谍缉飙萝镖衬惧尽凶峡厨寿婴岩峦虑惭掳浊烛"
+            + "爷犹获痴瞒础获窜筹绅蛮触谭贞贱辖逊酿钧闽隶韵颂驻驿肮胡鳞鸾黾出";
+
+    /** 繁体字在 [CJK_START, CJK_END] 中的偏移 -> 简体字，0 表示无需转换 */
+    private static final char[] SIMPLIFIED_TABLE = buildTable();
+
+    private KeywordNormalizer() {
+    }
+
+    private static char[] buildTable() {
+        char[] table = new char[CJK_END - CJK_START + 1];
+        for (int i = 0; i < TRADITIONAL.length(); i++) {
+            table[TRADITIONAL.charAt(i) - CJK_START] = SIMPLIFIED.charAt(i);
+        }
+        return table;
+    }
+
+    /**
+     * 规范化搜索关键词，null 返回空字符串
+     */
+    public static String normalize(String keyword) {
+        if (keyword == null || keyword.isEmpty()) {
+            return "";
+        }
+        StringBuilder out = new StringBuilder(keyword.length());
+        boolean pendingSeparator = false;
+        for (int i = 0; i < keyword.length(); ) {
+            int cp = keyword.codePointAt(i);
+            i += Character.charCount(cp);
+
+            cp = foldWidth(cp);
+            if (!Character.isLetterOrDigit(cp)) {
+                pendingSeparator = out.length() > 0;
+                continue;
+            }
+            cp = Character.toLowerCase(toSimplified(cp));
+            if (pendingSeparator && isAsciiLetterOrDigit(out.charAt(out.length() - 1)) && isAsciiLetterOrDigit(cp)) {
+                out.append(' ');
+            }
+            pendingSeparator = false;
+            out.appendCodePoint(cp);
+        }
+        return out.toString();
+    }
+
+    /**
+     * 只做全角转半角并去掉首尾空白，保留换行和标点，用于彩票号码等需要保留格式的输入
+     */
+    public static String foldWidth(String content) {
+        if (content == null) {
+            return null;
+        }
+        StringBuilder out = new StringBuilder(content.length());
+        for (int i = 0; i < content.length(); i++) {
+            out.append((char) foldWidth(content.charAt(i)));
+        }
+        return out.toString().trim();
+    }
+
+    private static int foldWidth(int cp) {
+        if (cp >= '\uff01' && cp <= '\uff5e') {
+            return cp - 0xfee0;
+        }
+        return cp == '\u3000' ? ' ' : cp;
+    }
+
+    private static int toSimplified(int cp) {
+        if (cp < CJK_START || cp > CJK_END) {
+            return cp;
+        }
+        char simplified = SIMPLIFIED_TABLE[cp - CJK_START];
+        return simplified == 0 ? cp : simplified;
+    }
+
+    private static boolean isAsciiLetterOrDigit(int cp) {
+        return (cp >= 'a' && cp <= 'z') || (cp >= 'A' && cp <= 'Z') || (cp >= '0' && cp <= '9');
+    }
+}
@@ -0,0 +1,31 @@
+package com.hc.wx.mp.cache;
+
+import com.hc.wx.mp.config.ApiConfig;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 空结果缓存测试类
+ */
+class NegativeResultCacheTest {
+
+    @Test
+    void testRecordAndInvalidate() {
+        NegativeResultCache cache = new NegativeResultCache(new ApiConfig());
+
+        assertNull(cache.get(SearchResultCache.MAKIFX, "asdfgh"));
+        assertFalse(cache.isRecentlyEmpty(SearchResultCache.MAKIFX, "asdfgh"));
+
+        cache.put(SearchResultCache.MAKIFX, "asdfgh", "未找到相关资源");
+
+        assertEquals("未找到相关资源", cache.get(SearchResultCache.MAKIFX, "asdfgh"));
+        assertNull(cache.get(SearchResultCache.MERGED, "asdfgh"), "不同命名空间互不影响");
+        assertTrue(cache.isRecentlyEmpty(SearchResultCache.MAKIFX, "asdfgh"));
+
+        cache.invalidate(SearchResultCache.MAKIFX, "asdfgh");
+        assertNull(cache.get(SearchResultCache.MAKIFX, "asdfgh"), "搜到结果后不再直接返回空结果");
+        assertTrue(cache.isRecentlyEmpty(SearchResultCache.MAKIFX, "asdfgh"), "过滤器只在轮换后遗忘");
+        assertEquals(1L, cache.getStats().get("hits"));
+    }
+}
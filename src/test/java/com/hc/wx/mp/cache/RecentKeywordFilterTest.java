@@ -0,0 +1,55 @@
+package com.hc.wx.mp.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 最近关键词过滤器测试类
+ */
+class RecentKeywordFilterTest {
+
+    @Test
+    void testNoFalseNegatives() {
+        RecentKeywordFilter filter = new RecentKeywordFilter(1000, 0.01, 60_000);
+
+        for (int i = 0; i < 1000; i++) {
+            filter.add("search:乱码关键词" + i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(filter.mightContain("search:乱码关键词" + i));
+        }
+    }
+
+    @Test
+    void testFalsePositiveRateNearTarget() {
+        RecentKeywordFilter filter = new RecentKeywordFilter(10000, 0.01, 60_000);
+        for (int i = 0; i < 10000; i++) {
+            filter.add("search:empty-" + i);
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (filter.mightContain("search:other-" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 300, "误判率应接近1%，实际: " + falsePositives);
+        assertTrue(filter.sizeInBytes() < 64 * 1024, "1万个关键词只需要几十KB");
+    }
+
+    @Test
+    void testForgetsAfterTwoWindows() {
+        AtomicLong now = new AtomicLong(0);
+        RecentKeywordFilter filter = new RecentKeywordFilter(100, 0.01, 1000, now::get);
+        filter.add("makifx:asdfgh");
+
+        now.set(1500);
+        assertTrue(filter.mightContain("makifx:asdfgh"), "上一个窗口写入的仍然记得");
+
+        now.set(2500);
+        assertFalse(filter.mightContain("makifx:asdfgh"), "两个窗口之后遗忘");
+    }
+}
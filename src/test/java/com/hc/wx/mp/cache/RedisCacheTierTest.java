@@ -0,0 +1,87 @@
+package com.hc.wx.mp.cache;
+
+import com.hc.wx.mp.config.ApiConfig;
+import com.hc.wx.mp.http.CircuitBreakerRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Redis 共享缓存层测试类
+ */
+class RedisCacheTierTest {
+
+    private StringRedisTemplate redisTemplate;
+    private ValueOperations<String, String> valueOperations;
+    private ApiConfig apiConfig;
+    private RedisCacheTier tier;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate = mock(StringRedisTemplate.class);
+        valueOperations = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        apiConfig = new ApiConfig();
+        tier = new RedisCacheTier(redisTemplate, apiConfig, new CircuitBreakerRegistry(apiConfig));
+    }
+
+    @AfterEach
+    void tearDown() {
+        tier.shutdown();
+    }
+
+    @Test
+    void testEncodeRoundTrip() throws Exception {
+        String shortValue = "【标题】\nhttps://pan.example.com/s/1";
+        StringBuilder longValue = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            longValue.append("【流浪地球").append(i).append("】\nhttps://pan.quark.cn/s/abcdef").append(i).append("\n\n");
+        }
+
+        assertEquals(shortValue, tier.decode(tier.encode(shortValue)));
+        String encoded = tier.encode(longValue.toString());
+        assertTrue(encoded.length() < longValue.length(), "长结果应压缩存储");
+        assertEquals(longValue.toString(), tier.decode(encoded));
+    }
+
+    @Test
+    void testSlowRedisTreatedAsMiss() {
+        when(valueOperations.get(anyString())).thenAnswer(invocation -> {
+            Thread.sleep(1000);
+            return "r:太慢了";
+        });
+
+        long start = System.currentTimeMillis();
+        assertNull(tier.get("search:关键词"));
+        assertTrue(System.currentTimeMillis() - start < 500, "读取超时不应超过配置值太多");
+        assertEquals(1L, tier.getStats().get("timeouts"));
+    }
+
+    @Test
+    void testLocalTierFilledFromRedis() {
+        when(valueOperations.get("wx:search-cache:search-items:三体")).thenReturn("r:三体的结果");
+        SearchResultCache cache = new SearchResultCache(apiConfig, tier);
+
+        assertEquals("三体的结果", cache.get(SearchResultCache.MERGED, "三体"));
+        assertEquals("三体的结果", cache.get(SearchResultCache.MERGED, "三体"));
+        verify(valueOperations, times(1)).get(anyString());
+    }
+
+    @Test
+    void testRemoteInvalidationEvictsLocalCopy() {
+        when(valueOperations.get("wx:search-cache:search-items:三体")).thenReturn("r:新结果");
+        SearchResultCache cache = new SearchResultCache(apiConfig, tier);
+        cache.put(SearchResultCache.MERGED, "三体", "旧结果");
+
+        cache.onRemoteInvalidation("other-node|search-items:三体");
+
+        assertEquals("新结果", cache.get(SearchResultCache.MERGED, "三体"));
+    }
+}
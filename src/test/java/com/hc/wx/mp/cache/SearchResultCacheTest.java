@@ -0,0 +1,131 @@
+package com.hc.wx.mp.cache;
+
+import com.hc.wx.mp.config.ApiConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 搜索结果缓存测试类
+ */
+class SearchResultCacheTest {
+
+    private SearchResultCache createCache(long maxBytes) {
+        ApiConfig apiConfig = new ApiConfig();
+        apiConfig.getCache().setMaxBytes(maxBytes);
+        return new SearchResultCache(apiConfig);
+    }
+
+    @Test
+    void testPutAndGet() {
+        SearchResultCache cache = createCache(1024 * 1024);
+
+        cache.put(SearchResultCache.MERGED, "流浪地球", "结果");
+
+        assertEquals("结果", cache.get(SearchResultCache.MERGED, "流浪地球"));
+        assertNull(cache.get(SearchResultCache.MAKIFX, "流浪地球"), "不同命名空间互不影响");
+        assertNull(cache.get(SearchResultCache.MERGED, "三体"));
+    }
+
+    @Test
+    void testKeywordsWithSameHashCodeDoNotCollide() {
+        SearchResultCache cache = createCache(1024 * 1024);
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+
+        cache.put(SearchResultCache.MAKIFX, "Aa", "Aa的结果");
+
+        assertNull(cache.get(SearchResultCache.MAKIFX, "BB"));
+        assertEquals("Aa的结果", cache.get(SearchResultCache.MAKIFX, "Aa"));
+    }
+
+    @Test
+    void testSizeBoundedByBytes() {
+        long maxBytes = 64 * 1024;
+        SearchResultCache cache = createCache(maxBytes);
+        String value = new String(new char[1000]).replace('\0', 'x');
+
+        for (int i = 0; i < 1000; i++) {
+            cache.put(SearchResultCache.MERGED, "关键词" + i, value);
+        }
+        cache.cleanUp();
+
+        long weighted = (long) cache.getStats().get("weightedBytes");
+        assertTrue(weighted <= maxBytes, "缓存占用不应超过上限: " + weighted);
+        assertTrue((long) cache.getStats().get("evictions") > 0);
+    }
+
+    @Test
+    void testStatsRecordHitsAndMisses() {
+        SearchResultCache cache = createCache(1024 * 1024);
+        cache.put(SearchResultCache.MERGED, "a", "1");
+
+        cache.get(SearchResultCache.MERGED, "a");
+        cache.get(SearchResultCache.MERGED, "b");
+
+        assertEquals(1L, cache.getStats().get("hits"));
+        assertEquals(1L, cache.getStats().get("misses"));
+    }
+
+    @Test
+    void testStaleWithinHardTtl() {
+        AtomicLong now = new AtomicLong(1_000_000L);
+        ApiConfig apiConfig = new ApiConfig();
+        apiConfig.getCache().setTtlMinutes(10);
+        apiConfig.getCache().setHardTtlMinutes(30);
+        SearchResultCache cache = new SearchResultCache(apiConfig, null, now::get);
+        cache.put(SearchResultCache.MERGED, "三体", "结果");
+
+        assertFalse(cache.lookup(SearchResultCache.MERGED, "三体").isStale());
+
+        now.addAndGet(TimeUnit.MINUTES.toMillis(15));
+        SearchResultCache.Lookup stale = cache.lookup(SearchResultCache.MERGED, "三体");
+        assertEquals("结果", stale.getValue(), "超过新鲜期仍返回旧结果");
+        assertTrue(stale.isStale());
+
+        now.addAndGet(TimeUnit.MINUTES.toMillis(20));
+        assertNull(cache.lookup(SearchResultCache.MERGED, "三体"), "超过最长保留时间后不再返回");
+    }
+
+    @Test
+    void testRefillFromSharedTierKeepsOriginalWriteTime() {
+        AtomicLong now = new AtomicLong(TimeUnit.HOURS.toMillis(1));
+        ApiConfig apiConfig = new ApiConfig();
+        apiConfig.getCache().setTtlMinutes(10);
+        apiConfig.getCache().setHardTtlMinutes(30);
+        RedisCacheTier l2 = mock(RedisCacheTier.class);
+        SearchResultCache cache = new SearchResultCache(apiConfig, l2, now::get);
+        long writtenAt = now.get() - TimeUnit.MINUTES.toMillis(25);
+        when(l2.get(anyString())).thenReturn(writtenAt + "|结果");
+
+        SearchResultCache.Lookup refilled = cache.lookup(SearchResultCache.MERGED, "三体");
+        assertEquals("结果", refilled.getValue());
+        assertTrue(refilled.isStale());
+
+        // 回填后仍按最初的写入时间计算，5 分钟后达到最长保留时间
+        when(l2.get(anyString())).thenReturn(null);
+        now.addAndGet(TimeUnit.MINUTES.toMillis(6));
+        assertNull(cache.lookup(SearchResultCache.MERGED, "三体"), "本地副本不应比写入时间多保留一个周期");
+
+        when(l2.get(anyString())).thenReturn(writtenAt + "|结果");
+        assertNull(cache.lookup(SearchResultCache.MERGED, "三体"), "L2 中已超过最长保留时间的条目不回填");
+    }
+
+    @Test
+    void testSingleRefreshPerKey() {
+        SearchResultCache cache = createCache(1024 * 1024);
+
+        assertTrue(cache.beginRefresh(SearchResultCache.MERGED, "三体"));
+        assertFalse(cache.beginRefresh(SearchResultCache.MERGED, "三体"), "同一关键词只允许一个后台刷新");
+        assertTrue(cache.beginRefresh(SearchResultCache.MAKIFX, "三体"));
+
+        cache.endRefresh(SearchResultCache.MERGED, "三体");
+        assertTrue(cache.beginRefresh(SearchResultCache.MERGED, "三体"));
+        assertEquals(1L, cache.getStats().get("refreshesCoalesced"));
+    }
+}
@@ -0,0 +1,143 @@
+package com.hc.wx.mp.cache;
+
+import cn.hutool.core.util.ZipUtil;
+import com.hc.wx.mp.config.ApiConfig;
+import com.hc.wx.mp.service.ResultStorageService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 磁盘段文件结果存储测试类
+ */
+class SegmentFileResultStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private final AtomicLong now = new AtomicLong(1_000_000L);
+
+    private ApiConfig apiConfig(int segmentBytes, long diskMaxBytes) {
+        ApiConfig apiConfig = new ApiConfig();
+        apiConfig.getStorage().setDiskEnabled(true);
+        apiConfig.getStorage().setDiskDirectory(directory.toString());
+        apiConfig.getStorage().setSegmentBytes(segmentBytes);
+        apiConfig.getStorage().setDiskMaxBytes(diskMaxBytes);
+        return apiConfig;
+    }
+
+    private SegmentFileResultStore open(ApiConfig apiConfig) {
+        return new SegmentFileResultStore(apiConfig.getStorage(), now::get);
+    }
+
+    @Test
+    void testLinksSurviveRestart() {
+        ApiConfig apiConfig = apiConfig(64 * 1024, 1024 * 1024);
+        SegmentFileResultStore store = open(apiConfig);
+        ResultStorageService storage = new ResultStorageService(apiConfig, null, store);
+        String content = "【流浪地球】\nhttps://pan.quark.cn/s/abc\n";
+        String key = storage.storeResult(content);
+        store.shutdown();
+
+        SegmentFileResultStore reopened = open(apiConfig);
+        ResultStorageService restarted = new ResultStorageService(apiConfig, null, reopened);
+
+        assertEquals(content, restarted.getResult(key));
+        assertEquals(key, restarted.storeResult(content), "重启后相同内容仍复用原来的 key");
+        assertEquals(1L, reopened.getStats().get("recoveredEntries"));
+        reopened.shutdown();
+    }
+
+    @Test
+    void testExpiredSegmentsReclaimedWhole() throws Exception {
+        ApiConfig apiConfig = apiConfig(4 * 1024, 1024 * 1024);
+        SegmentFileResultStore store = open(apiConfig);
+        ResultStorageService storage = new ResultStorageService(apiConfig, null, store);
+        String oldKey = storage.storeResult(randomText(1500));
+        storage.storeResult(randomText(1500));
+
+        now.addAndGet(TimeUnit.MINUTES.toMillis(apiConfig.getStorage().getTtlMinutes()) - 1000);
+        String freshKey = storage.storeResult(randomText(1500));
+        now.addAndGet(2000);
+        store.reclaimExpired();
+
+        assertNull(storage.getResult(oldKey));
+        assertNotNull(storage.getResult(freshKey));
+        assertEquals(1, store.getStats().get("segments"));
+        assertEquals(1, store.getStats().get("indexEntries"));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count(), "过期的段文件应被删除");
+        }
+        store.shutdown();
+    }
+
+    @Test
+    void testTotalDiskBytesBounded() {
+        int segmentBytes = 4 * 1024;
+        ApiConfig apiConfig = apiConfig(segmentBytes, 3L * segmentBytes);
+        SegmentFileResultStore store = open(apiConfig);
+        ResultStorageService storage = new ResultStorageService(apiConfig, null, store);
+
+        String lastKey = null;
+        for (int i = 0; i < 20; i++) {
+            lastKey = storage.storeResult(randomText(1500));
+        }
+
+        assertTrue((long) store.getStats().get("diskBytes") <= 3L * segmentBytes);
+        assertTrue((long) store.getStats().get("segmentsReclaimed") > 0);
+        assertNotNull(storage.getResult(lastKey));
+        store.shutdown();
+    }
+
+    @Test
+    void testTornRecordIgnoredOnRecovery() throws Exception {
+        ApiConfig apiConfig = apiConfig(64 * 1024, 1024 * 1024);
+        SegmentFileResultStore store = open(apiConfig);
+        byte[] first = ZipUtil.gzip("第一条".getBytes(StandardCharsets.UTF_8));
+        byte[] second = ZipUtil.gzip("第二条".getBytes(StandardCharsets.UTF_8));
+        store.append("AAAAAAAA", "AAAAAAAAAAAA", first);
+        store.append("BBBBBBBB", "BBBBBBBBBBBB", second);
+        store.shutdown();
+
+        // 模拟第二条写到一半时进程退出：破坏其内容，CRC 校验不通过
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.findFirst().orElseThrow();
+        }
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            long secondPayloadEnd = 2L * 30 + first.length + second.length;
+            file.seek(secondPayloadEnd - 1);
+            int lastByte = file.read();
+            file.seek(secondPayloadEnd - 1);
+            file.write(lastByte ^ 0xFF);
+        }
+
+        SegmentFileResultStore reopened = open(apiConfig);
+        assertArrayEquals(first, reopened.get("AAAAAAAA").getGzipped());
+        assertNull(reopened.get("BBBBBBBB"));
+
+        // 损坏记录之后的空间继续用于追加
+        reopened.append("CCCCCCCC", "CCCCCCCCCCCC", second);
+        assertArrayEquals(second, reopened.get("CCCCCCCC").getGzipped());
+        reopened.shutdown();
+    }
+
+    private static String randomText(int chars) {
+        Random random = new Random();
+        StringBuilder text = new StringBuilder(chars);
+        for (int i = 0; i < chars; i++) {
+            text.append((char) (0x4E00 + random.nextInt(0x5000)));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,98 @@
+package com.hc.wx.mp.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 有界线程池测试类
+ */
+class BoundedExecutorTest {
+
+    @Test
+    void testNamedThreadsAndStats() throws Exception {
+        BoundedExecutor executor = new BoundedExecutor("test-io", 2, 10, new ThreadPoolExecutor.AbortPolicy());
+        try {
+            String threadName = CompletableFuture.supplyAsync(() -> Thread.currentThread().getName(), executor)
+                    .get(5, TimeUnit.SECONDS);
+            assertTrue(threadName.startsWith("test-io-"));
+
+            waitForCompleted(executor, 1L);
+            Map<String, Object> stats = executor.getStats();
+            assertEquals("test-io", stats.get("name"));
+            assertEquals(2, stats.get("threads"));
+            assertEquals(1L, stats.get("submitted"));
+            assertEquals(0L, stats.get("rejected"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testRejectionCountedWhenQueueFull() throws Exception {
+        BoundedExecutor executor = new BoundedExecutor("test-io", 1, 1, new ThreadPoolExecutor.AbortPolicy());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            executor.execute(() -> {
+                started.countDown();
+                await(release);
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            executor.execute(() -> { });
+
+            assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> { }));
+            assertEquals(1L, executor.getStats().get("rejected"));
+            assertEquals(1, executor.getStats().get("queued"));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testCallerRunsWhenCpuQueueFull() throws Exception {
+        SearchExecutors executors = new SearchExecutors(1, 1, 1, 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            executors.cpu().execute(() -> {
+                started.countDown();
+                await(release);
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            executors.cpu().execute(() -> { });
+
+            String caller = Thread.currentThread().getName();
+            String ranOn = CompletableFuture.supplyAsync(() -> Thread.currentThread().getName(), executors.cpu())
+                    .get(5, TimeUnit.SECONDS);
+            assertEquals(caller, ranOn, "计算线程池排满时在调用方线程执行");
+            assertEquals(1L, executors.cpu().getStats().get("rejected"));
+        } finally {
+            release.countDown();
+            executors.shutdown();
+        }
+    }
+
+    private static void waitForCompleted(BoundedExecutor executor, long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!executor.getStats().get("completed").equals(expected) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
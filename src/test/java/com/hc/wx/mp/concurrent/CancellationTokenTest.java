@@ -0,0 +1,50 @@
+package com.hc.wx.mp.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 取消令牌测试类
+ */
+class CancellationTokenTest {
+
+    @Test
+    void testCallbacksRunOnceOnCancel() {
+        CancellationToken token = new CancellationToken();
+        AtomicInteger calls = new AtomicInteger();
+        token.onCancel(calls::incrementAndGet);
+
+        assertTrue(token.cancel());
+        assertFalse(token.cancel(), "重复取消不应再次执行回调");
+        assertEquals(1, calls.get());
+        assertTrue(token.isCancelled());
+    }
+
+    @Test
+    void testUnregisteredCallbackNotRun() {
+        CancellationToken token = new CancellationToken();
+        AtomicInteger calls = new AtomicInteger();
+        Runnable unregister = token.onCancel(calls::incrementAndGet);
+
+        unregister.run();
+        token.cancel();
+
+        assertEquals(0, calls.get());
+    }
+
+    @Test
+    void testCallbackRunsImmediatelyWhenAlreadyCancelled() {
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        AtomicInteger calls = new AtomicInteger();
+
+        token.onCancel(calls::incrementAndGet);
+
+        assertEquals(1, calls.get());
+        assertThrows(CancellationException.class, token::throwIfCancelled);
+    }
+}
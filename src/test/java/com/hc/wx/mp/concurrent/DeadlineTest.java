@@ -0,0 +1,56 @@
+package com.hc.wx.mp.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 截止时间测试类
+ */
+class DeadlineTest {
+
+    @Test
+    void testRemainingAndCap() {
+        Deadline deadline = Deadline.after(1000);
+
+        assertFalse(deadline.isExpired());
+        assertTrue(deadline.remainingMillis() <= 1000);
+        assertTrue(deadline.hasAtLeast(500));
+        assertEquals(200, deadline.cap(200));
+        assertTrue(deadline.cap(5000) <= 1000);
+    }
+
+    @Test
+    void testExpiredDeadline() {
+        Deadline deadline = Deadline.after(0);
+
+        assertTrue(deadline.isExpired());
+        assertEquals(0, deadline.remainingMillis());
+        assertFalse(deadline.hasAtLeast(1));
+        assertEquals(0, deadline.cap(5000));
+    }
+
+    @Test
+    void testReserve() {
+        Deadline deadline = Deadline.after(1000);
+        Deadline searchBudget = deadline.reserve(800);
+
+        assertTrue(searchBudget.remainingMillis() <= 200);
+        assertTrue(deadline.reserve(2000).isExpired());
+    }
+
+    @Test
+    void testFromContext() {
+        Deadline deadline = Deadline.after(1000);
+        Map<String, Object> context = new HashMap<>();
+        context.put(Deadline.CONTEXT_KEY, deadline);
+
+        assertSame(deadline, Deadline.fromContext(context, 5000));
+        assertFalse(Deadline.fromContext(Collections.emptyMap(), 5000).isExpired());
+        assertFalse(Deadline.fromContext(null, 5000).isExpired());
+    }
+}
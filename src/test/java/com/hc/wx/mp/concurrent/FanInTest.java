@@ -0,0 +1,96 @@
+package com.hc.wx.mp.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 结果汇聚测试类
+ */
+class FanInTest {
+
+    @Test
+    void testFirstValidCompletesOnFirstValidResult() {
+        CompletableFuture<String> slow = new CompletableFuture<>();
+        CompletableFuture<String> invalid = new CompletableFuture<>();
+        CompletableFuture<String> fast = new CompletableFuture<>();
+
+        CompletableFuture<String> result = FanIn.firstValid(Arrays.asList(slow, invalid, fast),
+                s -> !s.isEmpty(), 5000, "");
+
+        invalid.complete("");
+        assertFalse(result.isDone());
+
+        fast.complete("结果");
+        // 无需等待慢任务，有效结果到达即完成
+        assertEquals("结果", result.getNow(null));
+    }
+
+    @Test
+    void testFirstNValidStopsEarly() {
+        CompletableFuture<String> f1 = new CompletableFuture<>();
+        CompletableFuture<String> f2 = new CompletableFuture<>();
+        CompletableFuture<String> f3 = new CompletableFuture<>();
+        CompletableFuture<String> f4 = new CompletableFuture<>();
+
+        CompletableFuture<List<String>> result = FanIn.firstNValid(Arrays.asList(f1, f2, f3, f4), 2,
+                s -> !s.isEmpty(), 5000);
+
+        f3.complete("a");
+        f1.complete("a");
+        assertFalse(result.isDone(), "重复结果不应计数");
+
+        f2.complete("b");
+        assertEquals(Arrays.asList("a", "b"), result.getNow(null));
+    }
+
+    @Test
+    void testPendingSourcesCancelledAfterResult() {
+        CompletableFuture<String> winner = new CompletableFuture<>();
+        CompletableFuture<String> loser = new CompletableFuture<>();
+
+        FanIn.firstValid(Arrays.asList(winner, loser), s -> !s.isEmpty(), 5000, "");
+        winner.complete("结果");
+
+        // 已满足的汇聚不再需要落后的数据源
+        assertTrue(loser.isCancelled());
+        assertFalse(winner.isCancelled());
+    }
+
+    @Test
+    void testAllByDeadlineReturnsPartialResultsOnTimeout() throws Exception {
+        CompletableFuture<String> done = CompletableFuture.completedFuture("a");
+        CompletableFuture<String> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new RuntimeException("失败"));
+        CompletableFuture<String> never = new CompletableFuture<>();
+
+        List<String> results = FanIn.allByDeadline(Arrays.asList(done, failed, never), s -> true, 100)
+                .get(2, TimeUnit.SECONDS);
+
+        assertEquals(Collections.singletonList("a"), results);
+    }
+
+    @Test
+    void testCompletesWhenAllSourcesFinish() {
+        CompletableFuture<String> f1 = new CompletableFuture<>();
+        CompletableFuture<String> f2 = new CompletableFuture<>();
+
+        CompletableFuture<String> result = FanIn.firstValid(Arrays.asList(f1, f2), s -> !s.isEmpty(), 5000, "无");
+        f1.complete("");
+        f2.complete("");
+
+        assertEquals("无", result.getNow(null));
+    }
+
+    @Test
+    void testEmptySources() {
+        assertEquals(Collections.emptyList(),
+                FanIn.allByDeadline(Collections.<CompletableFuture<String>>emptyList(), s -> true, 100).getNow(null));
+    }
+}
@@ -0,0 +1,39 @@
+package com.hc.wx.mp.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 对冲预算测试类
+ */
+class HedgeBudgetTest {
+
+    @Test
+    void testHedgesBoundedByRatio() {
+        HedgeBudget budget = new HedgeBudget(0.1, 5);
+        assertFalse(budget.tryAcquire(), "没有主请求时不允许对冲");
+
+        int hedges = 0;
+        for (int i = 0; i < 100; i++) {
+            budget.onRequest();
+            if (budget.tryAcquire()) {
+                hedges++;
+            }
+        }
+        // 0.1 的比例累加有浮点误差，100 个主请求最多换来 10 个对冲
+        assertTrue(hedges >= 9 && hedges <= 10, "对冲数应约为主请求的10%: " + hedges);
+    }
+
+    @Test
+    void testBurstIsCapped() {
+        HedgeBudget budget = new HedgeBudget(0.5, 2);
+        for (int i = 0; i < 100; i++) {
+            budget.onRequest();
+        }
+
+        assertTrue(budget.tryAcquire());
+        assertTrue(budget.tryAcquire());
+        assertFalse(budget.tryAcquire(), "令牌积累不应超过上限");
+    }
+}
@@ -0,0 +1,115 @@
+package com.hc.wx.mp.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 并发请求合并测试类
+ */
+class SingleFlightTest {
+
+    @Test
+    void testConcurrentAsyncCallsShareOneExecution() {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CompletableFuture<String> source = new CompletableFuture<>();
+        AtomicInteger loads = new AtomicInteger();
+
+        CompletableFuture<String> first = flight.executeAsync("key", () -> {
+            loads.incrementAndGet();
+            return source;
+        });
+        CompletableFuture<String> second = flight.executeAsync("key", () -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture("不应执行");
+        });
+
+        source.complete("结果");
+
+        assertEquals("结果", first.join());
+        assertEquals("结果", second.join());
+        assertEquals(1, loads.get());
+        assertEquals(1L, flight.getStats().get("coalesced"));
+        assertEquals(0, flight.getStats().get("inFlight"));
+    }
+
+    @Test
+    void testCancellingJoinerDoesNotCancelSharedComputation() {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CompletableFuture<String> source = new CompletableFuture<>();
+
+        CompletableFuture<String> first = flight.executeAsync("key", () -> source);
+        CompletableFuture<String> second = flight.executeAsync("key", () -> source);
+        second.cancel(true);
+
+        source.complete("结果");
+        assertEquals("结果", first.join());
+        assertFalse(source.isCancelled());
+    }
+
+    @Test
+    void testNewExecutionAfterCompletion() {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+
+        flight.executeAsync("key", () -> CompletableFuture.completedFuture("a")).join();
+        String second = flight.executeAsync("key", () -> CompletableFuture.completedFuture("b")).join();
+
+        assertEquals("b", second);
+        assertEquals(0L, flight.getStats().get("coalesced"));
+    }
+
+    @Test
+    void testSharedComputationCancelledOnlyWhenAllCallersCancel() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch joined = new CountDownLatch(1);
+        CancellationToken leaderToken = new CancellationToken();
+        CancellationToken followerToken = new CancellationToken();
+        AtomicReference<CancellationToken> shared = new AtomicReference<>();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            Future<String> leader = executor.submit(() -> flight.execute("key", leaderToken, token -> {
+                shared.set(token);
+                leaderStarted.countDown();
+                awaitQuietly(joined);
+                leaderToken.cancel();
+                assertFalse(token.isCancelled(), "还有调用方在等待，共享的计算继续进行");
+                followerToken.cancel();
+                return token.isCancelled() ? "已取消" : "结果";
+            }));
+            assertTrue(leaderStarted.await(5, TimeUnit.SECONDS));
+            Future<String> follower = executor.submit(() -> flight.execute("key", followerToken, token -> "不应执行"));
+            while (!flight.getStats().get("coalesced").equals(1L)) {
+                Thread.onSpinWait();
+            }
+            joined.countDown();
+
+            assertEquals("已取消", leader.get(5, TimeUnit.SECONDS));
+            assertEquals("已取消", follower.get(5, TimeUnit.SECONDS));
+            assertTrue(shared.get().isCancelled());
+
+            String next = flight.execute("key", new CancellationToken(), token -> "新的结果");
+            assertEquals("新的结果", next, "计算结束后重新执行");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
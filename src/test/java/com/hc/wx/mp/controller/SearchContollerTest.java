@@ -1,5 +1,8 @@
 package com.hc.wx.mp.controller;
 
+import cn.hutool.core.util.ZipUtil;
+import com.hc.wx.mp.config.ApiConfig;
+import com.hc.wx.mp.service.ResultPageService;
 import com.hc.wx.mp.service.ResultStorageService;
 import com.hc.wx.mp.service.SearchService;
 import org.junit.jupiter.api.BeforeEach;
@@ -7,8 +10,19 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -17,6 +31,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
  * 搜索控制器测试类
  */
 @WebMvcTest(SearchController.class)
+@Import(ApiConfig.class)
 class SearchContollerTest {
 
     @Autowired
@@ -24,35 +39,56 @@ class SearchContollerTest {
 
     @MockBean
     private ResultStorageService resultStorageService;
+
+    @MockBean
+    private ResultPageService resultPageService;
     
     @MockBean
     private SearchService searchService;
 
     private String testKey;
     private String testContent;
+    private String testPage;
 
     @BeforeEach
     void setUp() {
         testKey = "abc12345";
         testContent = "测试搜索结果:\nhttp://example1.com\nhttp://example2.com\n更多内容信息";
+        testPage = "<html><body><pre>" + testContent + "</pre></body></html>";
+        // Mockito 对 Integer 默认返回 0，这里按不可追加的结果处理
+        when(resultPageService.getVersion(anyString())).thenReturn(null);
+    }
+
+    private static byte[] gzip(String text) {
+        return ZipUtil.gzip(text.getBytes(StandardCharsets.UTF_8));
     }
 
     @Test
     void testShowResult_Success() throws Exception {
-        // 模拟服务返回测试内容
-        when(resultStorageService.getResult(testKey)).thenReturn(testContent);
+        // 模拟返回预渲染的页面
+        when(resultPageService.getCompressedPage(testKey, 1, 20)).thenReturn(gzip(testPage));
 
         mockMvc.perform(get("/result/" + testKey))
                 .andExpect(status().isOk())
-                .andExpect(view().name("search_result"))
-                .andExpect(model().attribute("content", testContent))
-                .andExpect(model().attribute("key", testKey));
+                .andExpect(content().contentType("text/html;charset=UTF-8"))
+                .andExpect(content().bytes(testPage.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void testShowResult_ServesPrecompressedPage() throws Exception {
+        byte[] page = gzip(testPage);
+        when(resultPageService.getCompressedPage(testKey, 1, 20)).thenReturn(page);
+
+        mockMvc.perform(get("/result/" + testKey).header("Accept-Encoding", "gzip"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Encoding", "gzip"))
+                .andExpect(content().bytes(page));
     }
 
     @Test
     void testShowResult_NotFound() throws Exception {
         // 模拟服务返回null（结果不存在）
-        when(resultStorageService.getResult(testKey)).thenReturn(null);
+        when(resultPageService.getCompressedPage(testKey, 1, 20)).thenReturn(null);
 
         mockMvc.perform(get("/result/" + testKey))
                 .andExpect(status().isOk())
@@ -64,15 +100,107 @@ class SearchContollerTest {
     void testShowResult_WithSpecialCharacters() throws Exception {
         // 测试包含特殊字符的key
         String specialKey = "test123@";
-        String specialContent = "包含特殊字符的搜索结果\n@#$%^&*()";
+        String specialPage = "<pre>包含特殊字符的搜索结果\n@#$%^&amp;*()</pre>";
         
-        when(resultStorageService.getResult(specialKey)).thenReturn(specialContent);
+        when(resultPageService.getCompressedPage(specialKey, 1, 20)).thenReturn(gzip(specialPage));
 
         mockMvc.perform(get("/result/" + specialKey))
                 .andExpect(status().isOk())
-                .andExpect(view().name("search_result"))
-                .andExpect(model().attribute("content", specialContent))
-                .andExpect(model().attribute("key", specialKey));
+                .andExpect(content().bytes(specialPage.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void testShowResult_PlainTextServesStoredGzip() throws Exception {
+        // 纯文本请求返回压缩好的文本，支持 gzip 的客户端直接拿到压缩字节
+        byte[] gzipped = gzip(testContent);
+        when(resultPageService.getCompressedText(testKey)).thenReturn(gzipped);
+
+        mockMvc.perform(get("/result/" + testKey)
+                        .header("Accept", "text/plain")
+                        .header("Accept-Encoding", "gzip, deflate"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Encoding", "gzip"))
+                .andExpect(content().bytes(gzipped));
+
+        mockMvc.perform(get("/result/" + testKey).header("Accept", "text/plain"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Content-Encoding"))
+                .andExpect(content().bytes(testContent.getBytes(StandardCharsets.UTF_8)));
+        verify(resultStorageService, never()).getResult(anyString());
+    }
+
+    @Test
+    void testShowResult_ConditionalRequestNotModified() throws Exception {
+        when(resultPageService.getCompressedPage(testKey, 1, 20)).thenReturn(gzip(testPage));
+
+        MvcResult first = mockMvc.perform(get("/result/" + testKey))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andExpect(header().string("Cache-Control", "max-age=86400, public"))
+                .andReturn();
+        String etag = first.getResponse().getHeader("ETag");
+        clearInvocations(resultPageService);
+
+        // 再次打开同一链接：直接 304，不读存储也不渲染模板
+        mockMvc.perform(get("/result/" + testKey).header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", etag))
+                .andExpect(content().string(""));
+        verifyNoInteractions(resultStorageService, resultPageService);
+
+        // 纯文本表示使用不同的 ETag，不会误用 HTML 的缓存
+        when(resultPageService.getCompressedText(testKey))
+                .thenReturn(gzip(testContent));
+        mockMvc.perform(get("/result/" + testKey).header("Accept", "text/plain").header("If-None-Match", etag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void testShowResult_PagedRequestUsesOwnPageAndEtag() throws Exception {
+        String secondPage = "<html><body><pre>第二页</pre></body></html>";
+        when(resultPageService.getCompressedPage(testKey, 1, 20)).thenReturn(gzip(testPage));
+        when(resultPageService.getCompressedPage(testKey, 2, 10)).thenReturn(gzip(secondPage));
+
+        String firstEtag = mockMvc.perform(get("/result/" + testKey))
+                .andReturn().getResponse().getHeader("ETag");
+        mockMvc.perform(get("/result/" + testKey).param("page", "2").param("size", "10")
+                        .header("If-None-Match", firstEtag))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(secondPage.getBytes(StandardCharsets.UTF_8)));
+
+        // 每页条数超出范围时按上限取
+        mockMvc.perform(get("/result/" + testKey).param("size", "1000"))
+                .andExpect(status().isOk());
+        verify(resultPageService).getCompressedPage(testKey, 1, ResultPageService.MAX_PAGE_SIZE);
+    }
+
+    @Test
+    void testShowResult_AppendableResultRevalidatedByVersion() throws Exception {
+        when(resultPageService.getVersion(testKey)).thenReturn(2);
+        when(resultPageService.getCompressedPage(testKey, 1, 20)).thenReturn(gzip(testPage));
+
+        String etag = mockMvc.perform(get("/result/" + testKey))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Cache-Control", containsString("no-cache")))
+                .andReturn().getResponse().getHeader("ETag");
+        assertTrue(etag.contains("-v2-"));
+        mockMvc.perform(get("/result/" + testKey).header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+
+        // 追加了新结果后旧 ETag 失效
+        when(resultPageService.getVersion(testKey)).thenReturn(3);
+        mockMvc.perform(get("/result/" + testKey).header("If-None-Match", etag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void testShowResult_NotFoundNotCached() throws Exception {
+        when(resultPageService.getCompressedPage(testKey, 1, 20)).thenReturn(null);
+
+        mockMvc.perform(get("/result/" + testKey))
+                .andExpect(view().name("error"))
+                .andExpect(header().doesNotExist("ETag"))
+                .andExpect(header().doesNotExist("Cache-Control"));
     }
 
     @Test
@@ -0,0 +1,182 @@
+package com.hc.wx.mp.handler;
+
+import com.hc.wx.mp.concurrent.CancellationToken;
+import com.hc.wx.mp.concurrent.Deadline;
+import com.hc.wx.mp.concurrent.SearchExecutors;
+import com.hc.wx.mp.config.ApiConfig;
+import com.hc.wx.mp.entity.SearchResultItem;
+import com.hc.wx.mp.entity.SearchResultSet;
+import com.hc.wx.mp.service.SearchService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * 消息处理器并发搜索测试类
+ */
+class MsgHandlerTest {
+
+    private static final SearchResultItem KKQWS_ITEM = new SearchResultItem(SearchResultItem.SOURCE_KKQWS, "quark",
+            "三体", "https://pan.quark.cn/s/kkqws", null, null, null);
+    private static final SearchResultItem MAKIFX_ITEM = new SearchResultItem(SearchResultItem.SOURCE_MAKIFX, "baidu",
+            "三体", "https://pan.baidu.com/s/makifx", "abcd", null, null);
+
+    private SearchService searchService;
+    private SearchExecutors searchExecutors;
+    private MsgHandler msgHandler;
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() {
+        searchService = mock(SearchService.class);
+        searchExecutors = new SearchExecutors(4, 10, 2, 10);
+        ApiConfig apiConfig = new ApiConfig();
+        apiConfig.getDeadline().setReplyReserveMillis(300);
+        msgHandler = new MsgHandler();
+        msgHandler.setSearchService(searchService);
+        msgHandler.setSearchExecutors(searchExecutors);
+        msgHandler.setApiConfig(apiConfig);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        searchExecutors.shutdown();
+    }
+
+    @Test
+    void testCompleteResults() {
+        stubKkqws(CompletableFuture.completedFuture(Collections.singletonList(KKQWS_ITEM)));
+        when(searchService.searchMakifxItems(anyString(), any(), any())).thenReturn(Collections.singletonList(MAKIFX_ITEM));
+
+        SearchResultSet resultSet = msgHandler.performConcurrentSearchResults("三体", "openid", Deadline.after(2000));
+
+        assertEquals(2, resultSet.getItems().size());
+        assertFalse(resultSet.isPartial());
+    }
+
+    @Test
+    void testTimeoutHarvestsFinishedSourcesWithoutNewRequests() {
+        stubKkqws(CompletableFuture.completedFuture(Collections.singletonList(KKQWS_ITEM)));
+        when(searchService.searchMakifxItems(anyString(), any(), any())).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return Collections.singletonList(MAKIFX_ITEM);
+        });
+
+        long start = System.currentTimeMillis();
+        SearchResultSet resultSet = msgHandler.performConcurrentSearchResults("三体", "openid", Deadline.after(700));
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(Collections.singletonList(KKQWS_ITEM), resultSet.getItems());
+        assertTrue(resultSet.isPartial(), "Makifx 未完成，标记为部分结果");
+        assertTrue(elapsed < 700, "不应在截止时间后继续等待: " + elapsed + "ms");
+        verify(searchService, times(1)).searchItemsAsync(anyString(), any(), any(), any());
+        verify(searchService, times(1)).searchMakifxItems(anyString(), any(), any());
+    }
+
+    @Test
+    void testAbandonedMakifxRequestCancelled() {
+        stubKkqws(CompletableFuture.completedFuture(Collections.singletonList(KKQWS_ITEM)));
+        AtomicReference<CancellationToken> token = new AtomicReference<>();
+        when(searchService.searchMakifxItems(anyString(), any(), any())).thenAnswer(invocation -> {
+            token.set(invocation.getArgument(2));
+            release.await(5, TimeUnit.SECONDS);
+            return Collections.singletonList(MAKIFX_ITEM);
+        });
+
+        msgHandler.performConcurrentSearchResults("三体", "openid", Deadline.after(700));
+
+        assertTrue(token.get().isCancelled(), "不再等待也不追加时中止 Makifx 请求");
+    }
+
+    @Test
+    void testSourceFinishingAtDeadlineIsHarvested() {
+        CompletableFuture<List<SearchResultItem>> kkqws = new CompletableFuture<>();
+        // 汇聚在搜索截止时间（700 - 300 = 400ms）之后稍晚完成，落在宽限期内
+        CompletableFuture.delayedExecutor(430, TimeUnit.MILLISECONDS)
+                .execute(() -> kkqws.complete(Collections.singletonList(KKQWS_ITEM)));
+        stubKkqws(kkqws);
+        when(searchService.searchMakifxItems(anyString(), any(), any())).thenReturn(Collections.singletonList(MAKIFX_ITEM));
+
+        SearchResultSet resultSet = msgHandler.performConcurrentSearchResults("三体", "openid", Deadline.after(700));
+
+        assertEquals(2, resultSet.getItems().size());
+        assertFalse(resultSet.isPartial());
+        verify(searchService, times(1)).searchItemsAsync(anyString(), any(), any(), any());
+    }
+
+    @Test
+    void testUnfinishedSourceKeptForLateAppend() throws Exception {
+        stubKkqws(CompletableFuture.completedFuture(Collections.singletonList(KKQWS_ITEM)));
+        when(searchService.searchMakifxItems(anyString(), any(), any())).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return Collections.singletonList(MAKIFX_ITEM);
+        });
+
+        Map<String, CompletableFuture<List<SearchResultItem>>> pending = new LinkedHashMap<>();
+        SearchResultSet resultSet = msgHandler.performConcurrentSearchResults("三体", "openid", Deadline.after(700), pending);
+
+        assertEquals(Collections.singletonList(KKQWS_ITEM), resultSet.getItems());
+        assertEquals(Collections.singletonList(SearchResultItem.SOURCE_MAKIFX), resultSet.getPendingSources());
+        assertTrue(resultSet.isPending());
+        assertEquals(Collections.singleton(SearchResultItem.SOURCE_MAKIFX), pending.keySet());
+
+        release.countDown();
+        assertEquals(Collections.singletonList(MAKIFX_ITEM),
+                pending.get(SearchResultItem.SOURCE_MAKIFX).get(5, TimeUnit.SECONDS), "截止后仍继续搜索");
+    }
+
+    @Test
+    void testKkqwsCollectedAtSearchDeadlineAndLateItemsAppended() throws Exception {
+        AtomicReference<Deadline> collectDeadline = new AtomicReference<>();
+        AtomicReference<Deadline> lateDeadline = new AtomicReference<>();
+        CompletableFuture<List<SearchResultItem>> lateItems = new CompletableFuture<>();
+        when(searchService.searchItemsAsync(anyString(), any(), any(), any())).thenAnswer(invocation -> {
+            collectDeadline.set(invocation.getArgument(1));
+            lateDeadline.set(invocation.getArgument(2));
+            CompletableFuture<List<SearchResultItem>> late = invocation.getArgument(3);
+            lateItems.thenAccept(late::complete);
+            return CompletableFuture.completedFuture(Collections.singletonList(KKQWS_ITEM));
+        });
+        when(searchService.searchMakifxItems(anyString(), any(), any())).thenReturn(Collections.singletonList(MAKIFX_ITEM));
+
+        Map<String, CompletableFuture<List<SearchResultItem>>> pending = new LinkedHashMap<>();
+        SearchResultSet resultSet = msgHandler.performConcurrentSearchResults("三体", "openid", Deadline.after(700), pending);
+
+        // 汇聚只等到搜索截止时间（700 - 300 = 400ms），未返回的数据源继续搜索到延迟结果预算
+        assertTrue(collectDeadline.get().remainingMillis() <= 400, "KKQWS 汇聚不应使用延长后的截止时间");
+        assertTrue(lateDeadline.get().remainingMillis() > 1000);
+        assertEquals(2, resultSet.getItems().size());
+        assertEquals(Collections.singletonList(SearchResultItem.SOURCE_KKQWS), resultSet.getPendingSources());
+
+        SearchResultItem lateItem = new SearchResultItem(SearchResultItem.SOURCE_KKQWS, "quark", "三体",
+                "https://pan.quark.cn/s/late", null, null, null);
+        lateItems.complete(Collections.singletonList(lateItem));
+        assertEquals(Collections.singletonList(lateItem),
+                pending.get(SearchResultItem.SOURCE_KKQWS).get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * KKQWS 汇聚返回 items，截止时没有仍在搜索的数据源
+     */
+    private void stubKkqws(CompletableFuture<List<SearchResultItem>> items) {
+        when(searchService.searchItemsAsync(anyString(), any(), any(), any())).thenAnswer(invocation -> {
+            invocation.<CompletableFuture<List<SearchResultItem>>>getArgument(3).complete(Collections.emptyList());
+            return items;
+        });
+    }
+}
@@ -0,0 +1,118 @@
+package com.hc.wx.mp.handler;
+
+import com.hc.wx.mp.concurrent.Deadline;
+import com.hc.wx.mp.config.ApiConfig;
+import me.chanjar.weixin.mp.bean.message.WxMpXmlMessage;
+import me.chanjar.weixin.mp.bean.message.WxMpXmlOutMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 微信重试消息去重测试类
+ */
+class WxRetryDeduplicatorTest {
+
+    private final WxRetryDeduplicator deduplicator = new WxRetryDeduplicator(new ApiConfig());
+
+    @Test
+    void testRetryAttachesToInFlightHandling() throws Exception {
+        WxMpXmlMessage message = textMessage(10001L);
+        WxMpXmlOutMessage reply = reply("🔍 搜索完成！");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger handled = new AtomicInteger();
+
+        CompletableFuture<WxMpXmlOutMessage> original = CompletableFuture.supplyAsync(() ->
+                deduplicator.handle(message, Deadline.after(5000), () -> {
+                    handled.incrementAndGet();
+                    started.countDown();
+                    await(release);
+                    return reply;
+                }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<WxMpXmlOutMessage> retry = CompletableFuture.supplyAsync(() ->
+                deduplicator.handle(textMessage(10001L), Deadline.after(5000), () -> {
+                    handled.incrementAndGet();
+                    return reply("不应执行");
+                }));
+        release.countDown();
+
+        assertSame(reply, original.get(5, TimeUnit.SECONDS));
+        assertSame(reply, retry.get(5, TimeUnit.SECONDS));
+        assertEquals(1, handled.get());
+        assertEquals(1L, deduplicator.getStats().get("retries"));
+    }
+
+    @Test
+    void testRetryAfterCompletionReplaysReply() {
+        WxMpXmlOutMessage reply = reply("结果");
+        deduplicator.handle(textMessage(10002L), Deadline.after(5000), () -> reply);
+
+        assertSame(reply, deduplicator.handle(textMessage(10002L), Deadline.after(5000), () -> reply("不应执行")));
+        assertEquals(1L, deduplicator.getStats().get("replayedCompleted"));
+    }
+
+    @Test
+    void testRetryGivesUpAtItsDeadline() {
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture.runAsync(() -> deduplicator.handle(textMessage(10003L), Deadline.after(5000), () -> {
+            await(release);
+            return reply("结果");
+        }));
+        waitUntil(() -> deduplicator.getStats().get("messages").equals(1L));
+
+        assertNull(deduplicator.handle(textMessage(10003L), Deadline.after(50), () -> reply("不应执行")));
+        assertEquals(1L, deduplicator.getStats().get("timeouts"));
+        release.countDown();
+    }
+
+    @Test
+    void testFailedHandlingRetriedAndEventsKeyedBySenderAndTime() {
+        assertThrows(IllegalStateException.class, () ->
+                deduplicator.handle(textMessage(10004L), Deadline.after(5000), () -> {
+                    throw new IllegalStateException("路由失败");
+                }));
+        WxMpXmlOutMessage reply = reply("重试成功");
+        assertSame(reply, deduplicator.handle(textMessage(10004L), Deadline.after(5000), () -> reply));
+
+        WxMpXmlMessage event = new WxMpXmlMessage();
+        event.setFromUser("openid");
+        event.setCreateTime(1700000000L);
+        assertEquals("openid:1700000000", WxRetryDeduplicator.messageId(event));
+    }
+
+    private static WxMpXmlMessage textMessage(long msgId) {
+        WxMpXmlMessage message = new WxMpXmlMessage();
+        message.setMsgId(msgId);
+        message.setFromUser("openid");
+        message.setCreateTime(1700000000L);
+        return message;
+    }
+
+    private static WxMpXmlOutMessage reply(String content) {
+        return WxMpXmlOutMessage.TEXT().content(content).fromUser("gh").toUser("openid").build();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitUntil(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.hc.wx.mp.http;
+
+import com.hc.wx.mp.config.ApiConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 熔断器测试类
+ */
+class CircuitBreakerTest {
+
+    private CircuitBreaker breaker;
+
+    @BeforeEach
+    void setUp() {
+        ApiConfig.CircuitBreakerConfig config = new ApiConfig.CircuitBreakerConfig();
+        config.setWindowSize(10);
+        config.setMinimumCalls(4);
+        config.setFailureRateThreshold(50);
+        config.setOpenMillis(100);
+        config.setHalfOpenProbes(1);
+        breaker = new CircuitBreaker("test", config);
+    }
+
+    @Test
+    void testOpensWhenFailureRateExceeded() {
+        breaker.onSuccess(10);
+        breaker.onSuccess(10);
+        breaker.onFailure(10);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(), "调用次数不足时不应熔断");
+
+        breaker.onFailure(10);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire(), "熔断期间应拒绝请求");
+    }
+
+    @Test
+    void testHalfOpenProbeSuccessCloses() throws Exception {
+        openBreaker();
+        Thread.sleep(150);
+
+        assertTrue(breaker.tryAcquire(), "熔断时间过后应放行探测请求");
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire(), "半开状态只放行一个探测请求");
+
+        breaker.onSuccess(10);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void testHalfOpenProbeFailureReopens() throws Exception {
+        openBreaker();
+        Thread.sleep(150);
+
+        assertTrue(breaker.tryAcquire());
+        breaker.onFailure(10);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    void testIgnoredProbeReleasesSlot() throws Exception {
+        openBreaker();
+        Thread.sleep(150);
+
+        assertTrue(breaker.tryAcquire());
+        breaker.onIgnored();
+
+        assertTrue(breaker.tryAcquire(), "被取消的探测不应占用名额");
+    }
+
+    @Test
+    void testLatencyPercentiles() {
+        assertEquals(-1, breaker.latencyPercentile(90));
+        for (int i = 1; i <= 10; i++) {
+            breaker.onSuccess(i * 100);
+        }
+        assertEquals(500, breaker.latencyPercentile(50));
+        assertEquals(900, breaker.latencyPercentile(90));
+        assertEquals(1000, breaker.latencyPercentile(99));
+    }
+
+    private void openBreaker() {
+        for (int i = 0; i < 4; i++) {
+            breaker.onFailure(10);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+}
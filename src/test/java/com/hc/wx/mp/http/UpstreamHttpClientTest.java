@@ -0,0 +1,48 @@
+package com.hc.wx.mp.http;
+
+import com.hc.wx.mp.concurrent.CancellationToken;
+import com.hc.wx.mp.concurrent.Deadline;
+import com.hc.wx.mp.config.ApiConfig;
+import okhttp3.Request;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.InterruptedIOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 上游HTTP客户端测试类
+ */
+class UpstreamHttpClientTest {
+
+    private ApiConfig apiConfig;
+    private UpstreamHttpClient client;
+
+    @BeforeEach
+    void setUp() {
+        apiConfig = new ApiConfig();
+        client = new UpstreamHttpClient(apiConfig);
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.shutdown();
+    }
+
+    @Test
+    void testSpentBudgetFailsWithoutRequest() {
+        Request request = new Request.Builder().url("http://upstream.test/search").build();
+        Deadline spent = Deadline.after(0);
+
+        long start = System.currentTimeMillis();
+        assertThrows(InterruptedIOException.class,
+                () -> client.execute(request, spent.cap(5000), new CancellationToken()));
+        assertThrows(InterruptedIOException.class, () -> client.execute(request, -1));
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertTrue(elapsed < apiConfig.getHttp().getConnectTimeout(), "不应等待连接许可: " + elapsed + "ms");
+        assertEquals(apiConfig.getHttp().getMaxConnections(), client.getPoolStats().get("availablePermits"));
+    }
+}
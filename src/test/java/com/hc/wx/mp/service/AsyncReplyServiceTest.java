@@ -0,0 +1,131 @@
+package com.hc.wx.mp.service;
+
+import com.hc.wx.mp.config.ApiConfig;
+import me.chanjar.weixin.common.error.WxError;
+import me.chanjar.weixin.common.error.WxErrorException;
+import me.chanjar.weixin.mp.api.WxMpKefuService;
+import me.chanjar.weixin.mp.api.WxMpService;
+import me.chanjar.weixin.mp.bean.kefu.WxMpKefuMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 微信异步回复服务测试类
+ */
+class AsyncReplyServiceTest {
+
+    private WxMpService weixinService;
+    private WxMpKefuService kefuService;
+    private AsyncReplyService asyncReplyService;
+
+    @BeforeEach
+    void setUp() {
+        weixinService = mock(WxMpService.class);
+        kefuService = mock(WxMpKefuService.class);
+        when(weixinService.getKefuService()).thenReturn(kefuService);
+    }
+
+    @AfterEach
+    void tearDown() {
+        asyncReplyService.shutdown();
+    }
+
+    private AsyncReplyService create(int searchThreads, int searchQueueCapacity) {
+        ApiConfig apiConfig = new ApiConfig();
+        apiConfig.getAsyncReply().setEnabled(true);
+        apiConfig.getAsyncReply().setSearchThreads(searchThreads);
+        apiConfig.getAsyncReply().setSearchQueueCapacity(searchQueueCapacity);
+        asyncReplyService = new AsyncReplyService(apiConfig);
+        return asyncReplyService;
+    }
+
+    @Test
+    void testResultPushedAsKefuMessage() throws Exception {
+        create(2, 10);
+
+        assertTrue(asyncReplyService.submit("1001", "openid-1", weixinService, () -> "🔍 搜索完成！\nhttp://t.cn/abc"));
+
+        awaitState("1001", AsyncReplyService.State.DELIVERED);
+        ArgumentCaptor<WxMpKefuMessage> message = ArgumentCaptor.forClass(WxMpKefuMessage.class);
+        verify(kefuService).sendKefuMessage(message.capture());
+        assertEquals("openid-1", message.getValue().getToUser());
+        assertEquals("🔍 搜索完成！\nhttp://t.cn/abc", message.getValue().getContent());
+        assertEquals(1L, asyncReplyService.getStats().get("delivered"));
+    }
+
+    @Test
+    void testRejectedWhenSearchStageFull() throws Exception {
+        create(1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger searches = new AtomicInteger();
+
+        assertTrue(asyncReplyService.submit("1", "openid", weixinService, () -> {
+            searches.incrementAndGet();
+            await(release);
+            return "结果";
+        }));
+        awaitState("1", AsyncReplyService.State.SEARCHING);
+        assertTrue(asyncReplyService.submit("2", "openid", weixinService, () -> "结果"), "排队中");
+        assertFalse(asyncReplyService.submit("3", "openid", weixinService, () -> "结果"), "队列已满，改为同步回复");
+        assertNull(asyncReplyService.getStatus("3"));
+
+        // 同一条消息再次提交不会重复搜索
+        assertTrue(asyncReplyService.submit("1", "openid", weixinService, () -> "重复"));
+        release.countDown();
+        awaitState("2", AsyncReplyService.State.DELIVERED);
+        assertEquals(1, searches.get());
+        assertEquals(1L, asyncReplyService.getStats().get("rejected"));
+        assertEquals(1L, asyncReplyService.getStats().get("duplicates"));
+        Map<?, ?> searchStage = (Map<?, ?>) asyncReplyService.getExecutorStats().get("search");
+        assertEquals("wx-reply-search", searchStage.get("name"));
+        assertEquals(1L, searchStage.get("rejected"));
+    }
+
+    @Test
+    void testFailuresTracked() throws Exception {
+        create(2, 10);
+        when(kefuService.sendKefuMessage(any()))
+                .thenThrow(new WxErrorException(WxError.builder().errorCode(45015).errorMsg("response out of time limit").build()));
+
+        asyncReplyService.submit("2001", "openid", weixinService, () -> {
+            throw new IllegalStateException("上游全部失败");
+        });
+
+        awaitState("2001", AsyncReplyService.State.FAILED);
+        ArgumentCaptor<WxMpKefuMessage> message = ArgumentCaptor.forClass(WxMpKefuMessage.class);
+        verify(kefuService).sendKefuMessage(message.capture());
+        assertEquals("搜索服务暂时不可用，请稍后再试", message.getValue().getContent());
+        assertTrue(asyncReplyService.getStatus("2001").getError().contains("45015"));
+    }
+
+    private void awaitState(String messageId, AsyncReplyService.State state) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            AsyncReplyService.ReplyStatus status = asyncReplyService.getStatus(messageId);
+            if (status != null && status.getState() == state) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        fail("消息 " + messageId + " 未进入状态 " + state);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.hc.wx.mp.service;
+
+import cn.hutool.core.util.ZipUtil;
+import com.hc.wx.mp.config.ApiConfig;
+import com.hc.wx.mp.entity.SearchResultItem;
+import com.hc.wx.mp.entity.SearchResultSet;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.spring5.SpringTemplateEngine;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 结果页预渲染服务测试类
+ */
+@Slf4j
+class ResultPageServiceTest {
+
+    private ResultStorageService resultStorageService;
+    private SpringTemplateEngine templateEngine;
+    private ResultPageService resultPageService;
+    private String content;
+
+    @BeforeEach
+    void setUp() {
+        ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+        resolver.setPrefix("templates/");
+        resolver.setSuffix(".html");
+        resolver.setTemplateMode(TemplateMode.HTML);
+        resolver.setCharacterEncoding("UTF-8");
+        templateEngine = new SpringTemplateEngine();
+        templateEngine.setTemplateResolver(resolver);
+
+        resultStorageService = new ResultStorageService();
+        resultPageService = new ResultPageService(resultStorageService, templateEngine, new ApiConfig());
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            text.append("【流浪地球").append(i).append(" <4K> & 国语】\nhttps://pan.quark.cn/s/").append(i).append("\n\n");
+        }
+        content = text.toString();
+    }
+
+    @Test
+    void testRenderedOnceAndServedFromCache() {
+        String key = resultStorageService.storeResult(content);
+
+        byte[] first = resultPageService.getCompressedPage(key);
+        byte[] second = resultPageService.getCompressedPage(key);
+
+        assertSame(first, second);
+        String html = new String(ZipUtil.unGzip(first), StandardCharsets.UTF_8);
+        assertTrue(html.contains("流浪地球49 &lt;4K&gt; &amp; 国语"), "内容按 th:text 转义后嵌入页面");
+        assertTrue(html.contains("ID: <span>" + key + "</span>"));
+        Map<String, Object> stats = resultPageService.getStats();
+        assertEquals(1L, stats.get("renders"));
+        assertEquals(1L, stats.get("hits"));
+    }
+
+    @Test
+    void testMissingResult() {
+        assertNull(resultPageService.getCompressedPage("12345678"));
+        assertNull(resultPageService.getCompressedPage(null));
+        assertEquals(0L, resultPageService.getStats().get("renders"));
+    }
+
+    @Test
+    void testResultSetRenderedPerPage() {
+        List<SearchResultItem> items = new ArrayList<>();
+        for (int i = 0; i < 45; i++) {
+            items.add(new SearchResultItem(SearchResultItem.SOURCE_KKQWS, "quark", "资源" + i,
+                    "https://pan.quark.cn/s/item" + i + "x", null, null, null));
+        }
+        String key = resultStorageService.storeResultSet(new SearchResultSet("流浪地球", items));
+
+        String first = html(resultPageService.getCompressedPage(key));
+        assertTrue(first.contains("item0x") && first.contains("item19x"));
+        assertFalse(first.contains("item20x"), "第一页只包含前 20 条");
+        assertTrue(first.contains("第 1 / 3 页 · 共 45 条"));
+        assertTrue(first.contains("href=\"?page=2&amp;size=20\""));
+
+        String last = html(resultPageService.getCompressedPage(key, 3, 20));
+        assertTrue(last.contains("item44x") && !last.contains("item39x"));
+        assertTrue(last.contains("href=\"?page=2&amp;size=20\"") && !last.contains("下一页"));
+        assertEquals(last, html(resultPageService.getCompressedPage(key, 9, 20)), "页码超出时显示最后一页");
+
+        String text = new String(ZipUtil.unGzip(resultPageService.getCompressedText(key)), StandardCharsets.UTF_8);
+        assertTrue(text.contains("item0x") && text.contains("item44x"), "纯文本返回完整结果");
+        assertSame(resultPageService.getCompressedText(key), resultPageService.getCompressedText(key));
+    }
+
+    @Test
+    void testLegacyTextNotPaged() {
+        String key = resultStorageService.storeResult(content);
+
+        String page = html(resultPageService.getCompressedPage(key, 2, 10));
+        assertTrue(page.contains("流浪地球0") && page.contains("流浪地球49"));
+        assertFalse(page.contains("下一页"));
+    }
+
+    @Test
+    void testAppendedResultRerendered() {
+        List<SearchResultItem> items = new ArrayList<>();
+        items.add(new SearchResultItem(SearchResultItem.SOURCE_KKQWS, "quark", "资源", "https://pan.quark.cn/s/early",
+                null, null, null));
+        SearchResultSet resultSet = new SearchResultSet("流浪地球", items);
+        resultSet.getPendingSources().add(SearchResultItem.SOURCE_MAKIFX);
+        String key = resultStorageService.storeResultSet(resultSet);
+
+        String before = html(resultPageService.getCompressedPage(key));
+        assertTrue(before.contains("class=\"late-results\"") && before.contains("data-after=\"1\""),
+                "还有数据源未完成时页面轮询新增结果");
+
+        resultStorageService.appendResultItems(key, SearchResultItem.SOURCE_MAKIFX, Collections.singletonList(
+                new SearchResultItem(SearchResultItem.SOURCE_MAKIFX, "baidu", "资源", "https://pan.baidu.com/s/late",
+                        null, null, null)));
+
+        String after = html(resultPageService.getCompressedPage(key));
+        assertTrue(after.contains("pan.baidu.com/s/late"), "追加后按新版本重新渲染");
+        assertFalse(after.contains("class=\"late-results\""));
+        assertTrue(html(resultPageService.getCompressedText(key)).contains("pan.baidu.com/s/late"));
+    }
+
+    private static String html(byte[] gzipped) {
+        return new String(ZipUtil.unGzip(gzipped), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 每次请求都渲染模板（改动前）与返回预渲染页面（改动后）的吞吐对比。
+     * 结果依赖机器负载，默认不运行，需要时加 -Dbenchmark=true 执行
+     */
+    @Test
+    @Tag("benchmark")
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void testBenchmarkRenderPerRequestVsPrerendered() {
+        String key = resultStorageService.storeResult(content);
+        int iterations = 3000;
+
+        // 预热
+        for (int i = 0; i < 500; i++) {
+            renderPerRequest(key);
+            resultPageService.getCompressedPage(key);
+        }
+
+        long start = System.nanoTime();
+        long bytes = 0;
+        for (int i = 0; i < iterations; i++) {
+            bytes += renderPerRequest(key).length;
+        }
+        double beforePerSecond = iterations / ((System.nanoTime() - start) / 1e9);
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            bytes += resultPageService.getCompressedPage(key).length;
+        }
+        double afterPerSecond = iterations / ((System.nanoTime() - start) / 1e9);
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            bytes += ZipUtil.unGzip(resultPageService.getCompressedPage(key)).length;
+        }
+        double afterInflatedPerSecond = iterations / ((System.nanoTime() - start) / 1e9);
+
+        log.info("结果页吞吐 - 每次渲染: {} req/s, 预渲染(gzip客户端): {} req/s, 预渲染(解压后返回): {} req/s ({})",
+                Math.round(beforePerSecond), Math.round(afterPerSecond), Math.round(afterInflatedPerSecond), bytes);
+        assertTrue(afterPerSecond > beforePerSecond * 10,
+                "预渲染页面应明显快于每次渲染: " + afterPerSecond + " vs " + beforePerSecond);
+    }
+
+    /**
+     * 改动前每个请求的工作：读取结果并渲染模板
+     */
+    private byte[] renderPerRequest(String key) {
+        Context context = new Context(Locale.SIMPLIFIED_CHINESE);
+        context.setVariable("content", resultStorageService.getResult(key));
+        context.setVariable("key", key);
+        return templateEngine.process(ResultPageService.TEMPLATE, context).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -1,11 +1,33 @@
 package com.hc.wx.mp.service;
 
+import cn.hutool.core.util.ZipUtil;
+import com.hc.wx.mp.cache.RedisResultStore;
+import com.hc.wx.mp.cache.SegmentFileResultStore;
+import com.hc.wx.mp.config.ApiConfig;
+import com.hc.wx.mp.entity.SearchResultItem;
+import com.hc.wx.mp.entity.SearchResultSet;
+import com.hc.wx.mp.http.CircuitBreakerRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
 import org.springframework.test.context.TestPropertySource;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
 
 /**
  * 结果存储服务测试类
@@ -71,12 +93,258 @@ class ResultStorageServiceTest {
 
     @Test
     void testKeyUniqueness() {
-        // 测试key的唯一性
+        // key由内容摘要生成：相同内容只存一份、共用同一个key，不同内容key不同
         String content = "测试内容";
         String key1 = resultStorageService.storeResult(content);
         String key2 = resultStorageService.storeResult(content);
-        
-        // 即使内容相同，key也应该不同
-        assertNotEquals(key1, key2);
+        String key3 = resultStorageService.storeResult(content + "2");
+
+        assertEquals(key1, key2);
+        assertNotEquals(key1, key3);
+        assertEquals(8, key3.length());
+        assertTrue(key1.matches("[0-9A-Za-z]{8}"), "key只包含字母和数字: " + key1);
+    }
+
+    @Test
+    void testDedupeStats() {
+        String content = "热门关键词的搜索结果\nhttps://pan.quark.cn/s/abc";
+        for (int i = 0; i < 50; i++) {
+            resultStorageService.storeResult(content);
+        }
+
+        Map<String, Object> stats = resultStorageService.getStats();
+        assertEquals(50L, stats.get("storeRequests"));
+        assertEquals(49L, stats.get("deduplicated"));
+        assertEquals(0.98, (double) stats.get("dedupeRatio"), 1e-9);
+        assertTrue((long) stats.get("bytesSaved") >= 49L * 2 * content.length());
+        assertEquals(1L, stats.get("entries"));
+    }
+
+    @Test
+    void testStoredCompressed() {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            content.append("【流浪地球").append(i).append("】\nhttps://pan.quark.cn/s/").append(i).append("\n\n");
+        }
+        byte[] raw = content.toString().getBytes(StandardCharsets.UTF_8);
+
+        String key = resultStorageService.storeResult(content.toString());
+        byte[] gzipped = resultStorageService.getCompressedResult(key);
+
+        assertArrayEquals(raw, ZipUtil.unGzip(gzipped));
+        assertTrue(gzipped.length * 4 < raw.length, "重复文本压缩后应明显变小: " + gzipped.length + "/" + raw.length);
+        assertTrue((long) resultStorageService.getStats().get("weightedBytes") < raw.length);
+        assertNull(resultStorageService.getCompressedResult("12345678"));
+    }
+
+    @Test
+    void testStoreResultSet() {
+        List<SearchResultItem> items = new ArrayList<>();
+        items.add(new SearchResultItem(SearchResultItem.SOURCE_KKQWS, "quark", "流浪地球", "https://pan.quark.cn/s/1",
+                null, null, null));
+        items.add(new SearchResultItem(SearchResultItem.SOURCE_MAKIFX, "baidu", null, "https://pan.baidu.com/s/2",
+                "abcd", "4K", "2024-01-01"));
+        SearchResultSet resultSet = new SearchResultSet("流浪地球", items);
+
+        String key = resultStorageService.storeResultSet(resultSet);
+
+        assertEquals(key, resultStorageService.storeResultSet(new SearchResultSet("流浪地球", new ArrayList<>(items))),
+                "相同结果复用同一个 key");
+        assertEquals(resultSet, resultStorageService.getResultSet(key));
+        String text = resultStorageService.getResult(key);
+        assertTrue(text.contains("【流浪地球】\nhttps://pan.quark.cn/s/1"));
+        assertTrue(text.contains("🔑 提取码: abcd"));
+        assertTrue(text.endsWith("📊 共整合了 2 个数据源的搜索结果"));
+
+        // 以前存入的纯文本结果没有结构化数据
+        String legacyKey = resultStorageService.storeResult("【流浪地球】\nhttps://pan.quark.cn/s/1");
+        assertNull(resultStorageService.getResultSet(legacyKey));
+        assertNull(resultStorageService.getResultSet("12345678"));
+    }
+
+    @Test
+    void testAppendLateResults() {
+        List<SearchResultItem> items = new ArrayList<>();
+        items.add(new SearchResultItem(SearchResultItem.SOURCE_KKQWS, "quark", "流浪地球", "https://pan.quark.cn/s/1",
+                null, null, null));
+        SearchResultSet resultSet = new SearchResultSet("流浪地球", items);
+        resultSet.setPartial(true);
+        resultSet.getPendingSources().add(SearchResultItem.SOURCE_MAKIFX);
+        String key = resultStorageService.storeResultSet(resultSet);
+        assertEquals(0, resultStorageService.getVersion(key));
+
+        List<SearchResultItem> late = new ArrayList<>();
+        late.add(new SearchResultItem(SearchResultItem.SOURCE_MAKIFX, "quark", null, "https://pan.quark.cn/s/1",
+                null, null, null));
+        late.add(new SearchResultItem(SearchResultItem.SOURCE_MAKIFX, "baidu", null, "https://pan.baidu.com/s/2",
+                "abcd", null, null));
+        assertTrue(resultStorageService.appendResultItems(key, SearchResultItem.SOURCE_MAKIFX, late));
+
+        SearchResultSet appended = resultStorageService.getResultSet(key);
+        assertEquals(1, resultStorageService.getVersion(key));
+        assertEquals(2, appended.getItems().size(), "已有的链接不重复追加");
+        assertFalse(appended.isPending());
+        assertFalse(appended.isPartial());
+        assertEquals("https://pan.baidu.com/s/2", appended.itemsAfter(1).get(0).getUrl());
+        assertTrue(resultStorageService.getResult(key).contains("🔑 提取码: abcd"));
+        assertEquals(key, resultStorageService.storeResultSet(resultSet), "相同的初始结果继续复用这个 key");
+        assertEquals(2, resultStorageService.getResultSet(key).getItems().size());
+
+        assertFalse(resultStorageService.appendResultItems(key, SearchResultItem.SOURCE_MAKIFX, late), "没有变化");
+        assertFalse(resultStorageService.appendResultItems("12345678", SearchResultItem.SOURCE_MAKIFX, late));
+        String legacyKey = resultStorageService.storeResult("【流浪地球】\nhttps://pan.quark.cn/s/1");
+        assertFalse(resultStorageService.appendResultItems(legacyKey, SearchResultItem.SOURCE_MAKIFX, late));
+        assertNull(resultStorageService.getVersion(legacyKey), "不可追加的结果没有版本号");
+    }
+
+    @Test
+    void testTotalBytesBounded() {
+        long maxBytes = 64 * 1024;
+        ApiConfig apiConfig = new ApiConfig();
+        apiConfig.getStorage().setMaxBytes(maxBytes);
+        ResultStorageService storage = new ResultStorageService(apiConfig);
+        // 存储按压缩后的大小计算，用随机汉字避免内容被压缩得太小
+        Random random = new Random(42);
+
+        for (int i = 0; i < 500; i++) {
+            StringBuilder content = new StringBuilder();
+            for (int j = 0; j < 1000; j++) {
+                content.append((char) (0x4E00 + random.nextInt(0x5000)));
+            }
+            storage.storeResult(content.toString());
+        }
+        storage.cleanUp();
+
+        Map<String, Object> stats = storage.getStats();
+        assertTrue((long) stats.get("weightedBytes") <= maxBytes, "存储占用不应超过上限: " + stats);
+        assertTrue((long) stats.get("evictions") > 0);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testResultReadableFromAnotherNode() throws Exception {
+        Map<String, String> redis = new ConcurrentHashMap<>();
+        StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        ValueOperations<String, String> valueOperations = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        doAnswer(invocation -> redis.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(valueOperations).set(anyString(), anyString(), anyLong(), any(TimeUnit.class));
+        when(valueOperations.get(anyString())).thenAnswer(invocation -> redis.get(invocation.<String>getArgument(0)));
+
+        ApiConfig apiConfig = new ApiConfig();
+        RedisResultStore sharedStore = new RedisResultStore(redisTemplate, apiConfig, new CircuitBreakerRegistry(apiConfig));
+        ResultStorageService nodeA = new ResultStorageService(apiConfig, sharedStore);
+        ResultStorageService nodeB = new ResultStorageService(apiConfig, sharedStore);
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            content.append("【流浪地球").append(i).append("】\nhttps://pan.quark.cn/s/").append(i).append("\n\n");
+        }
+
+        String key = nodeA.storeResult(content.toString());
+        for (int i = 0; i < 100 && redis.isEmpty(); i++) {
+            Thread.sleep(10);
+        }
+
+        assertTrue(redis.get("wx:result:" + key).startsWith("z:"), "较大的结果压缩后写入 Redis");
+        assertEquals(content.toString(), nodeB.getResult(key));
+        assertEquals(content.toString(), nodeB.getResult(key));
+        verify(valueOperations, times(1)).get(anyString());
+        sharedStore.shutdown();
+    }
+
+    @Test
+    void testAppendVisibleOnAnotherNode() throws Exception {
+        Map<String, String> redis = new ConcurrentHashMap<>();
+        ApiConfig apiConfig = new ApiConfig();
+        RedisResultStore sharedStore = sharedStore(apiConfig, redis);
+        ResultStorageService nodeA = new ResultStorageService(apiConfig, sharedStore);
+        ResultStorageService nodeB = new ResultStorageService(apiConfig, sharedStore);
+        String key = nodeA.storeResultSet(pendingResultSet());
+        waitFor(() -> redis.containsKey("wx:result:" + key));
+
+        // 另一个节点先读到初始版本，并知道这是可追加的结果
+        assertEquals(0, nodeB.getVersion(key));
+        assertEquals(1, nodeB.getResultSet(key).getItems().size());
+
+        assertTrue(nodeA.appendResultItems(key, SearchResultItem.SOURCE_MAKIFX, lateItems()));
+        waitFor(() -> redis.get("wx:result:" + key).startsWith("a:") && !redis.get("wx:result:" + key).contains(":0+:"));
+
+        // 本地已有旧版本，仍要从共享存储读到追加后的版本
+        assertEquals(1, nodeB.getVersion(key));
+        SearchResultSet appended = nodeB.getResultSet(key);
+        assertEquals(2, appended.getItems().size());
+        assertFalse(appended.isPending());
+        sharedStore.shutdown();
+    }
+
+    @Test
+    void testAppendedResultRefilledToDiskOnAnotherNode(@TempDir Path directory) throws Exception {
+        Map<String, String> redis = new ConcurrentHashMap<>();
+        ApiConfig apiConfigA = diskConfig(directory.resolve("a"));
+        ApiConfig apiConfigB = diskConfig(directory.resolve("b"));
+        RedisResultStore sharedStore = sharedStore(apiConfigA, redis);
+        SegmentFileResultStore diskA = new SegmentFileResultStore(apiConfigA);
+        SegmentFileResultStore diskB = new SegmentFileResultStore(apiConfigB);
+        ResultStorageService nodeA = new ResultStorageService(apiConfigA, sharedStore, diskA);
+        ResultStorageService nodeB = new ResultStorageService(apiConfigB, sharedStore, diskB);
+
+        String key = nodeA.storeResultSet(pendingResultSet());
+        assertTrue(nodeA.appendResultItems(key, SearchResultItem.SOURCE_MAKIFX, lateItems()));
+        waitFor(() -> redis.containsKey("wx:result:" + key) && !redis.get("wx:result:" + key).contains(":0+:"));
+
+        // 追加后的内容摘要与 key 不同，回填磁盘时使用共享存储中记录的最初摘要
+        SearchResultSet appended = nodeB.getResultSet(key);
+        assertEquals(2, appended.getItems().size());
+        assertEquals(1, nodeB.getVersion(key));
+        assertNotNull(diskB.get(key), "回填到本节点磁盘");
+        assertEquals(key, nodeB.storeResultSet(pendingResultSet()), "相同的初始结果继续复用这个 key");
+        sharedStore.shutdown();
+        diskA.shutdown();
+        diskB.shutdown();
+    }
+
+    private static SearchResultSet pendingResultSet() {
+        List<SearchResultItem> items = new ArrayList<>();
+        items.add(new SearchResultItem(SearchResultItem.SOURCE_KKQWS, "quark", "流浪地球", "https://pan.quark.cn/s/1",
+                null, null, null));
+        SearchResultSet resultSet = new SearchResultSet("流浪地球", items);
+        resultSet.setPartial(true);
+        resultSet.getPendingSources().add(SearchResultItem.SOURCE_MAKIFX);
+        return resultSet;
+    }
+
+    private static List<SearchResultItem> lateItems() {
+        List<SearchResultItem> late = new ArrayList<>();
+        late.add(new SearchResultItem(SearchResultItem.SOURCE_MAKIFX, "baidu", null, "https://pan.baidu.com/s/2",
+                "abcd", null, null));
+        return late;
+    }
+
+    private static ApiConfig diskConfig(Path directory) {
+        ApiConfig apiConfig = new ApiConfig();
+        apiConfig.getStorage().setDiskEnabled(true);
+        apiConfig.getStorage().setDiskDirectory(directory.toString());
+        return apiConfig;
+    }
+
+    /**
+     * 以 Map 模拟 Redis 的共享存储
+     */
+    @SuppressWarnings("unchecked")
+    private static RedisResultStore sharedStore(ApiConfig apiConfig, Map<String, String> redis) {
+        StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        ValueOperations<String, String> valueOperations = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        doAnswer(invocation -> redis.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(valueOperations).set(anyString(), anyString(), anyLong(), any(TimeUnit.class));
+        when(valueOperations.get(anyString())).thenAnswer(invocation -> redis.get(invocation.<String>getArgument(0)));
+        return new RedisResultStore(redisTemplate, apiConfig, new CircuitBreakerRegistry(apiConfig));
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 200 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,74 @@
+package com.hc.wx.mp.service;
+
+import com.hc.wx.mp.entity.SearchResultItem;
+import com.hc.wx.mp.entity.SearchResultSet;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 搜索结果格式化测试类
+ */
+class SearchResultFormatterTest {
+
+    private static SearchResultItem kkqws(String title, String url) {
+        return new SearchResultItem(SearchResultItem.SOURCE_KKQWS, SearchResultItem.platformOf(url), title, url,
+                null, null, null);
+    }
+
+    private static SearchResultItem makifx(String url, String password, String note) {
+        return new SearchResultItem(SearchResultItem.SOURCE_MAKIFX, SearchResultItem.platformOf(url), null, url,
+                password, note, "2024-01-01 12:00:00");
+    }
+
+    @Test
+    void testKkqwsGroupedByTitle() {
+        List<SearchResultItem> items = Arrays.asList(
+                kkqws("流浪地球", "https://pan.quark.cn/s/1"),
+                kkqws("流浪地球", "https://pan.baidu.com/s/2"),
+                kkqws("流浪地球2", "https://pan.quark.cn/s/3"));
+
+        assertEquals("【流浪地球】\nhttps://pan.quark.cn/s/1\nhttps://pan.baidu.com/s/2\n\n【流浪地球2】\nhttps://pan.quark.cn/s/3",
+                SearchResultFormatter.formatSource(SearchResultItem.SOURCE_KKQWS, items));
+    }
+
+    @Test
+    void testMakifxGroupedByPlatform() {
+        List<SearchResultItem> items = Arrays.asList(
+                makifx("https://pan.quark.cn/s/a", null, "4K 国语"),
+                makifx("https://pan.xunlei.com/s/b", "x1y2", null),
+                makifx("https://pan.quark.cn/s/c", null, null));
+
+        String text = SearchResultFormatter.formatSource(SearchResultItem.SOURCE_MAKIFX, items);
+
+        assertTrue(text.startsWith("📊 找到网盘资源: 3 个"));
+        assertTrue(text.indexOf("🚀 迅雷网盘 (1个)") < text.indexOf("⚡ 夸克网盘 (2个)"), "平台按固定顺序排列");
+        assertTrue(text.contains("1. https://pan.xunlei.com/s/b\n   🔑 提取码: x1y2"));
+        assertTrue(text.contains("1. https://pan.quark.cn/s/a\n   📝 备注: 4K 国语"));
+        assertTrue(text.contains("2. https://pan.quark.cn/s/c"));
+    }
+
+    @Test
+    void testResultSetSectionsAndPaging() {
+        SearchResultSet resultSet = new SearchResultSet("流浪地球", Arrays.asList(
+                kkqws("流浪地球", "https://pan.quark.cn/s/1"),
+                makifx("https://pan.baidu.com/s/2", null, null)));
+
+        String text = SearchResultFormatter.format(resultSet);
+        assertTrue(text.startsWith("🔍 搜索关键词: 流浪地球\n\n📚 KKQWS 搜索结果"));
+        assertTrue(text.indexOf("📚 KKQWS 搜索结果") < text.indexOf("🎬 Makifx 影视资源"));
+        assertTrue(text.endsWith("📊 共整合了 2 个数据源的搜索结果"));
+        assertEquals(Arrays.asList(SearchResultItem.SOURCE_KKQWS, SearchResultItem.SOURCE_MAKIFX),
+                resultSet.getSources());
+
+        SearchResultSet second = resultSet.page(2, 1);
+        assertEquals(Collections.singletonList(SearchResultItem.SOURCE_MAKIFX), second.getSources());
+        assertEquals(2, resultSet.getTotalPages(1));
+        assertTrue(resultSet.page(3, 1).isEmpty());
+        assertEquals("", SearchResultFormatter.format(new SearchResultSet("流浪地球", null)));
+    }
+}
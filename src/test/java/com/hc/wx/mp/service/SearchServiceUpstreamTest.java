@@ -0,0 +1,247 @@
+package com.hc.wx.mp.service;
+
+import com.hc.wx.mp.cache.NegativeResultCache;
+import com.hc.wx.mp.cache.SearchResultCache;
+import com.hc.wx.mp.concurrent.CancellationToken;
+import com.hc.wx.mp.concurrent.Deadline;
+import com.hc.wx.mp.concurrent.SearchExecutors;
+import com.hc.wx.mp.config.ApiConfig;
+import com.hc.wx.mp.entity.SearchResultItem;
+import com.hc.wx.mp.http.CircuitBreakerRegistry;
+import com.hc.wx.mp.http.UpstreamHttpClient;
+import okhttp3.Request;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 搜索服务测试类（上游接口用模拟的 HTTP 客户端代替，不访问网络）
+ */
+class SearchServiceUpstreamTest {
+
+    private static final String KKQWS_RESPONSE =
+            "{\"list\":[{\"question\":\"三体\",\"answer\":\"https://pan.quark.cn/s/santi\"}]}";
+
+    private ApiConfig apiConfig;
+    private UpstreamHttpClient httpClient;
+    private NegativeResultCache negativeCache;
+    private SearchExecutors searchExecutors;
+    private SearchService searchService;
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() {
+        apiConfig = new ApiConfig();
+        apiConfig.setBaseUrl("http://kkqws.test");
+        apiConfig.setJuziPath("/juzi");
+        apiConfig.setXiaoyuPath("/xiaoyu");
+        apiConfig.setSearchPath("/search");
+        apiConfig.setDyfxPath("/dyfx");
+        httpClient = mock(UpstreamHttpClient.class);
+        negativeCache = new NegativeResultCache(apiConfig);
+        searchExecutors = new SearchExecutors(8, 16, 2, 16);
+        searchService = new SearchService(apiConfig, httpClient, new CircuitBreakerRegistry(apiConfig),
+                new SearchResultCache(apiConfig), negativeCache, searchExecutors);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        searchExecutors.shutdown();
+    }
+
+    @Test
+    void testDowngradedSearchDoesNotJoinFullSearch() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        when(httpClient.execute(any(Request.class), anyLong(), any(CancellationToken.class))).thenAnswer(invocation -> {
+            requests.incrementAndGet();
+            release.await(5, TimeUnit.SECONDS);
+            return KKQWS_RESPONSE;
+        });
+
+        CompletableFuture<List<SearchResultItem>> full = searchService.searchItemsAsync("三体", Deadline.after(3000));
+        waitUntil(requests, 4);
+        // 关键词被记为最近搜不到结果后，新的请求降级搜索，不应共享正在进行的完整搜索
+        negativeCache.put(SearchResultCache.MERGED, "三体", "");
+        negativeCache.invalidate(SearchResultCache.MERGED, "三体");
+        CompletableFuture<List<SearchResultItem>> downgraded =
+                searchService.searchItemsAsync("三体", Deadline.after(3000));
+        waitUntil(requests, 4 + apiConfig.getCache().getDowngradedSources());
+        release.countDown();
+
+        assertFalse(full.get(5, TimeUnit.SECONDS).isEmpty());
+        assertFalse(downgraded.get(5, TimeUnit.SECONDS).isEmpty());
+        assertEquals(2L, flightStats("searchAndMergeRaw").get("executions"));
+    }
+
+    @Test
+    void testUpstreamFailureNotRecordedAsEmptyKeyword() throws Exception {
+        when(httpClient.execute(any(Request.class), anyLong(), any(CancellationToken.class)))
+                .thenThrow(new IOException("connection refused"));
+
+        List<SearchResultItem> items = searchService.searchItemsAsync("三体", Deadline.after(3000))
+                .get(5, TimeUnit.SECONDS);
+
+        assertTrue(items.isEmpty());
+        assertNull(negativeCache.get(SearchResultCache.MERGED, "三体"), "上游故障不应记为关键词搜不到");
+        assertFalse(negativeCache.isRecentlyEmpty(SearchResultCache.MERGED, "三体"), "也不应导致之后降级搜索");
+    }
+
+    @Test
+    void testEmptyAnswerFromAllSourcesRecorded() throws Exception {
+        when(httpClient.execute(any(Request.class), anyLong(), any(CancellationToken.class)))
+                .thenReturn("{\"list\":[]}");
+
+        List<SearchResultItem> items = searchService.searchItemsAsync("三体", Deadline.after(3000))
+                .get(5, TimeUnit.SECONDS);
+
+        assertTrue(items.isEmpty());
+        assertNotNull(negativeCache.get(SearchResultCache.MERGED, "三体"), "所有数据源都应答且没有结果才记录");
+    }
+
+    @Test
+    void testDowngradedEmptySearchNotRecordedAgain() throws Exception {
+        Set<String> paths = ConcurrentHashMap.newKeySet();
+        when(httpClient.execute(any(Request.class), anyLong(), any(CancellationToken.class))).thenAnswer(invocation -> {
+            String path = invocation.<Request>getArgument(0).url().encodedPath();
+            paths.add(path);
+            // 只有排在后面的数据源能搜到
+            return path.equals("/juzi") || path.equals("/xiaoyu") ? "{\"list\":[]}" : KKQWS_RESPONSE;
+        });
+        negativeCache.put(SearchResultCache.MERGED, "三体", "");
+        negativeCache.invalidate(SearchResultCache.MERGED, "三体");
+
+        List<SearchResultItem> items = searchService.searchItemsAsync("三体", Deadline.after(3000))
+                .get(5, TimeUnit.SECONDS);
+
+        assertTrue(items.isEmpty());
+        assertEquals(new HashSet<>(Arrays.asList("/juzi", "/xiaoyu")), paths, "降级搜索只请求前两个数据源");
+        assertNull(negativeCache.get(SearchResultCache.MERGED, "三体"), "降级搜索没有结果不应再次记为搜不到");
+        assertEquals(0L, negativeCache.getStats().get("entries"));
+    }
+
+    @Test
+    void testQueuedHedgeSkippedWhenDeadlineNearlySpent() throws Exception {
+        apiConfig.getHedging().setMinSamples(1);
+        apiConfig.getHedging().setBudgetRatio(1);
+        CircuitBreakerRegistry breakers = new CircuitBreakerRegistry(apiConfig);
+        for (String source : Arrays.asList("kkqws-juzi", "kkqws-xiaoyu", "kkqws-search", "kkqws-dyfx")) {
+            breakers.get(source).onSuccess(1);
+        }
+        // 两个 I/O 线程都被主请求占满，对冲请求在队列中等到剩余时间不够一次请求
+        SearchExecutors twoThreads = new SearchExecutors(2, 16, 1, 16);
+        SearchService service = new SearchService(apiConfig, httpClient, breakers, new SearchResultCache(apiConfig),
+                negativeCache, twoThreads);
+        AtomicInteger requests = new AtomicInteger();
+        when(httpClient.execute(any(Request.class), anyLong(), any(CancellationToken.class))).thenAnswer(invocation -> {
+            requests.incrementAndGet();
+            Thread.sleep(450);
+            return "";
+        });
+
+        try {
+            service.searchItemsAsync("三体", Deadline.after(700)).get(5, TimeUnit.SECONDS);
+            Thread.sleep(200);
+
+            assertEquals(2, requests.get(), "排队过久的对冲请求不应再发出");
+            assertTrue((long) service.getHedgingStats().get("hedgesDenied") >= 2);
+        } finally {
+            twoThreads.shutdown();
+        }
+    }
+
+    @Test
+    void testUpstreamCallsRunOnSearchIoExecutor() throws Exception {
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        when(httpClient.execute(any(Request.class), anyLong(), any(CancellationToken.class))).thenAnswer(invocation -> {
+            threads.add(Thread.currentThread().getName());
+            return KKQWS_RESPONSE;
+        });
+
+        List<SearchResultItem> items = searchService.searchItemsAsync("三体", Deadline.after(3000))
+                .get(5, TimeUnit.SECONDS);
+
+        assertFalse(items.isEmpty());
+        assertFalse(threads.isEmpty());
+        assertTrue(threads.stream().allMatch(name -> name.startsWith("search-io-")), "上游请求应在 search-io 线程池执行: " + threads);
+    }
+
+    @Test
+    void testUnfinishedSourcesContinueAfterCollectDeadline() throws Exception {
+        when(httpClient.execute(any(Request.class), anyLong(), any(CancellationToken.class))).thenAnswer(invocation -> {
+            Request request = invocation.getArgument(0);
+            if (request.url().encodedPath().equals("/juzi")) {
+                return KKQWS_RESPONSE;
+            }
+            release.await(5, TimeUnit.SECONDS);
+            return "{\"list\":[{\"question\":\"三体\",\"answer\":\"https://pan.quark.cn/s/" + request.url().encodedPath().substring(1) + "\"}]}";
+        });
+
+        CompletableFuture<List<SearchResultItem>> lateItems = new CompletableFuture<>();
+        long start = System.currentTimeMillis();
+        List<SearchResultItem> items = searchService.searchItemsAsync("三体", Deadline.after(300), Deadline.after(5000),
+                lateItems).get(5, TimeUnit.SECONDS);
+        long elapsed = System.currentTimeMillis() - start;
+
+        // 汇聚在截止时间返回已有的结果，其余数据源继续搜索，返回后只给出新增的结果项
+        assertEquals(1, items.size());
+        assertTrue(elapsed < 1000, "汇聚应在截止时间结束: " + elapsed + "ms");
+        assertFalse(lateItems.isDone());
+        release.countDown();
+        List<SearchResultItem> late = lateItems.get(5, TimeUnit.SECONDS);
+        assertEquals(1, late.size());
+        assertFalse(items.contains(late.get(0)));
+    }
+
+    @Test
+    void testNoLateItemsWithoutLateDeadline() throws Exception {
+        when(httpClient.execute(any(Request.class), anyLong(), any(CancellationToken.class))).thenAnswer(invocation -> {
+            Request request = invocation.getArgument(0);
+            if (request.url().encodedPath().equals("/juzi")) {
+                return KKQWS_RESPONSE;
+            }
+            release.await(5, TimeUnit.SECONDS);
+            return KKQWS_RESPONSE;
+        });
+
+        CompletableFuture<List<SearchResultItem>> lateItems = new CompletableFuture<>();
+        Deadline deadline = Deadline.after(800);
+        List<SearchResultItem> items = searchService.searchItemsAsync("三体", deadline, deadline, lateItems)
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, items.size());
+        assertEquals(Collections.emptyList(), lateItems.get(1, TimeUnit.SECONDS));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> flightStats(String name) {
+        return (Map<String, Object>) searchService.getSingleFlightStats().get(name);
+    }
+
+    private static void waitUntil(AtomicInteger counter, int expected) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (counter.get() < expected && System.currentTimeMillis() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertEquals(expected, counter.get());
+    }
+}
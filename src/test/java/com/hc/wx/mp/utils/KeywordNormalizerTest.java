@@ -0,0 +1,89 @@
+package com.hc.wx.mp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 搜索关键词规范化测试类
+ */
+@Slf4j
+class KeywordNormalizerTest {
+
+    @Test
+    void testVariantsShareOneKey() {
+        String canonical = KeywordNormalizer.normalize("流浪地球2");
+
+        assertEquals("流浪地球2", canonical);
+        assertEquals(canonical, KeywordNormalizer.normalize("流浪地球 2"));
+        assertEquals(canonical, KeywordNormalizer.normalize("流浪地球２"));
+        assertEquals(canonical, KeywordNormalizer.normalize("　流浪地球　２ "));
+        assertEquals(canonical, KeywordNormalizer.normalize("流浪地球：2！"));
+    }
+
+    @Test
+    void testTraditionalToSimplified() {
+        assertEquals("复仇者联盟", KeywordNormalizer.normalize("復仇者聯盟"));
+        assertEquals("狂飙", KeywordNormalizer.normalize("狂飆"));
+        assertEquals("三体", KeywordNormalizer.normalize("三體"));
+    }
+
+    @Test
+    void testCaseFoldingAndLatinSpacing() {
+        assertEquals("iron man 3", KeywordNormalizer.normalize("Iron  Man 3"));
+        assertEquals("iron man 3", KeywordNormalizer.normalize("ＩＲＯＮ－ＭＡＮ　３"));
+        assertEquals("lost s01", KeywordNormalizer.normalize("LOST.S01"));
+    }
+
+    @Test
+    void testPunctuationOnlyIsEmpty() {
+        assertEquals("", KeywordNormalizer.normalize("！！？。。"));
+        assertEquals("", KeywordNormalizer.normalize("   "));
+        assertEquals("", KeywordNormalizer.normalize(null));
+    }
+
+    @Test
+    void testIdempotent() {
+        String[] inputs = {"復仇者聯盟４：終局之戰", "Iron Man 3", "流浪地球 2", "LOST.S01E02"};
+        for (String input : inputs) {
+            String once = KeywordNormalizer.normalize(input);
+            assertEquals(once, KeywordNormalizer.normalize(once));
+        }
+    }
+
+    @Test
+    void testFoldWidthKeepsLayout() {
+        assertEquals("01-02-03 04\n2024001", KeywordNormalizer.foldWidth(" ０１-０２-０３　０４\n2024001 "));
+    }
+
+    /**
+     * 基准：每次搜索都要规范化一次，耗时应在微秒级。依赖机器负载，默认不运行，
+     * 需要时加 -Dbenchmark=true 执行
+     */
+    @Test
+    @Tag("benchmark")
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void testNormalizeCostPerQuery() {
+        String[] queries = {
+                "流浪地球2", "流浪地球 2", "流浪地球２", "復仇者聯盟４：終局之戰", "Iron Man 3",
+                "ＩＲＯＮ－ＭＡＮ　３", "權力的遊戲 第八季", "三體", "LOST.S01E02", "狂飆 全集 1080P"
+        };
+        int iterations = 200_000;
+        int checksum = 0;
+        for (int i = 0; i < iterations; i++) {
+            checksum += KeywordNormalizer.normalize(queries[i % queries.length]).length();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            checksum += KeywordNormalizer.normalize(queries[i % queries.length]).length();
+        }
+        double nanosPerQuery = (double) (System.nanoTime() - start) / iterations;
+
+        log.info("KeywordNormalizer.normalize: {} ns/次 (checksum {})", String.format("%.0f", nanosPerQuery), checksum);
+        assertTrue(nanosPerQuery < 20_000, "单次规范化应在微秒级，实际: " + nanosPerQuery + "ns");
+    }
+}